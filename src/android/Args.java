@@ -1,59 +1,217 @@
 package de.niklasmerz.cordova.biometric;
 
-import android.util.Log;
-
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The options object passed from JS, decoded once when the call arrives. Every field is checked
+ * against the known options in a single pass; unknown or mistyped fields make the whole object
+ * invalid (see getError) instead of silently falling back to defaults. Immutable after decoding.
+ */
 public class Args {
-    private static final String TAG = "ARGS";
-    private JSONArray jsonArray;
-    private JSONObject argsObject;
 
-    Args(JSONArray jsonArray) {
-        this.jsonArray = jsonArray;
+    private enum Type {
+        BOOLEAN("a boolean"),
+        STRING("a string"),
+        INT("an integer"),
+        STRING_ARRAY("an array of strings");
+
+        private final String mDescription;
+
+        Type(String description) {
+            mDescription = description;
+        }
     }
 
-    public Boolean getBoolean(String name, Boolean defaultValue) {
+    private static final Map<String, Type> OPTIONS = new HashMap<>();
+
+    static {
+        // Prompt
+        OPTIONS.put("title", Type.STRING);
+        OPTIONS.put("subtitle", Type.STRING);
+        OPTIONS.put("description", Type.STRING);
+        OPTIONS.put("fallbackButtonTitle", Type.STRING);
+        OPTIONS.put("cancelButtonTitle", Type.STRING);
+        OPTIONS.put("disableBackup", Type.BOOLEAN);
+        OPTIONS.put("confirmationRequired", Type.BOOLEAN);
+        OPTIONS.put("maxAttempts", Type.INT);
+        OPTIONS.put("inProcessPrompt", Type.BOOLEAN);
+        // Sessions and keys
+        OPTIONS.put("sessionTtlMs", Type.INT);
+        OPTIONS.put("keepUnlockedMs", Type.INT);
+        OPTIONS.put("invalidateOnEnrollment", Type.BOOLEAN);
+        OPTIONS.put("preferStrongBox", Type.BOOLEAN);
+        // Secrets, files, records and signatures
+        OPTIONS.put("secret", Type.STRING);
+        OPTIONS.put("slot", Type.STRING);
+        OPTIONS.put("slots", Type.STRING_ARRAY);
+        OPTIONS.put("inputPath", Type.STRING);
+        OPTIONS.put("outputPath", Type.STRING);
+        OPTIONS.put("records", Type.STRING_ARRAY);
+        OPTIONS.put("challenge", Type.STRING);
+        OPTIONS.put("challenges", Type.STRING_ARRAY);
+        // Action specific
+        OPTIONS.put("action", Type.STRING);
+        OPTIONS.put("requireStrongBiometrics", Type.BOOLEAN);
+        OPTIONS.put("reportKeyBacking", Type.BOOLEAN);
+        OPTIONS.put("clear", Type.BOOLEAN);
+        // iOS only, accepted so shared option objects work on both platforms
+        OPTIONS.put("clientId", Type.STRING);
+        OPTIONS.put("clientSecret", Type.STRING);
+        OPTIONS.put("localizedFallbackTitle", Type.STRING);
+        OPTIONS.put("localizedReason", Type.STRING);
+        OPTIONS.put("allowBackup", Type.BOOLEAN);
+    }
+
+    private final Map<String, Object> values;
+    private final String error;
+
+    Args(JSONArray jsonArray) {
+        Map<String, Object> decoded = new HashMap<>();
+        String decodeError = null;
         try {
-            if (getArgsObject().has(name)){
-                return getArgsObject().getBoolean(name);
+            JSONObject object = jsonArray == null || jsonArray.length() == 0 || jsonArray.isNull(0)
+                    ? null
+                    : jsonArray.getJSONObject(0);
+            if (object != null) {
+                decodeError = decode(object, decoded);
             }
         } catch (JSONException e) {
-            Log.e(TAG, "Can't parse '" + name + "'. Default will be used.", e);
+            decodeError = "Options must be an object";
         }
-        return defaultValue;
+        this.values = decodeError == null ? decoded : Collections.<String, Object>emptyMap();
+        this.error = decodeError;
     }
 
+    /**
+     * Why the options were rejected, or null if they are valid. Invalid options read as empty.
+     */
+    String getError() {
+        return error;
+    }
+
+    public Boolean getBoolean(String name, Boolean defaultValue) {
+        Object value = values.get(name);
+        return value == null ? defaultValue : (Boolean) value;
+    }
+
+    /**
+     * An empty string counts as not set.
+     */
     public String getString(String name, String defaultValue) {
-        try {
-            if (getArgsObject().optString(name) != null
-                && !getArgsObject().optString(name).isEmpty()){
-                return getArgsObject().getString(name);
+        Object value = values.get(name);
+        return value == null || ((String) value).isEmpty() ? defaultValue : (String) value;
+    }
+
+    public Integer getInt(String name, Integer defaultValue) {
+        Object value = values.get(name);
+        return value == null ? defaultValue : (Integer) value;
+    }
+
+    public String[] getStringArray(String name, String[] defaultValue) {
+        Object value = values.get(name);
+        return value == null ? defaultValue : ((String[]) value).clone();
+    }
+
+    /**
+     * Options are equal if they decoded to the same values, regardless of the order in the JSON.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Args)) {
+            return false;
+        }
+        Map<String, Object> otherValues = ((Args) other).values;
+        if (values.size() != otherValues.size()) {
+            return false;
+        }
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            Object otherValue = otherValues.get(entry.getKey());
+            boolean same = value instanceof String[]
+                    ? otherValue instanceof String[] && Arrays.equals((String[]) value, (String[]) otherValue)
+                    : value.equals(otherValue);
+            if (!same) {
+                return false;
             }
-        } catch (JSONException e) {
-            Log.e(TAG, "Can't parse '" + name + "'. Default will be used.", e);
         }
-        return defaultValue;
+        return true;
     }
 
-    public Integer getInt(String name, Integer defaultValue) {
-        try {
-            if (getArgsObject().has(name)) {
-                return getArgsObject().getInt(name);
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            int valueHash = value instanceof String[] ? Arrays.hashCode((String[]) value) : value.hashCode();
+            hash += entry.getKey().hashCode() ^ valueHash;
+        }
+        return hash;
+    }
+
+    private static String decode(JSONObject object, Map<String, Object> decoded) throws JSONException {
+        Iterator<String> names = object.keys();
+        while (names.hasNext()) {
+            String name = names.next();
+            Type type = OPTIONS.get(name);
+            if (type == null) {
+                return "Unknown option '" + name + "'";
             }
-        } catch (JSONException e) {
-            Log.e(TAG, "Can't parse '" + name + "'. Default will be used.", e);
+            Object raw = object.get(name);
+            if (raw == JSONObject.NULL) {
+                continue;
+            }
+            Object value = convert(raw, type);
+            if (value == null) {
+                return "Option '" + name + "' must be " + type.mDescription;
+            }
+            decoded.put(name, value);
         }
-        return defaultValue;
+        return null;
     }
 
-    private JSONObject getArgsObject() throws JSONException {
-        if (this.argsObject != null) {
-            return this.argsObject;
+    /**
+     * The value as the Java type of the option, or null if it has a different JSON type.
+     */
+    private static Object convert(Object raw, Type type) throws JSONException {
+        switch (type) {
+            case BOOLEAN:
+                return raw instanceof Boolean ? raw : null;
+            case STRING:
+                return raw instanceof String ? raw : null;
+            case INT:
+                if (raw instanceof Number) {
+                    double number = ((Number) raw).doubleValue();
+                    if (number == Math.rint(number) && number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) {
+                        return (int) number;
+                    }
+                }
+                return null;
+            case STRING_ARRAY:
+                if (!(raw instanceof JSONArray)) {
+                    return null;
+                }
+                JSONArray array = (JSONArray) raw;
+                String[] strings = new String[array.length()];
+                for (int i = 0; i < strings.length; i++) {
+                    Object element = array.get(i);
+                    if (!(element instanceof String)) {
+                        return null;
+                    }
+                    strings[i] = (String) element;
+                }
+                return strings;
         }
-        this.argsObject = jsonArray.getJSONObject(0);
-        return this.argsObject;
+        return null;
     }
 }
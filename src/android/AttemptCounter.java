@@ -0,0 +1,83 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+/**
+ * Failed biometric attempts shared by all prompts, so the maxAttempts limit cannot be reset by
+ * dismissing the prompt and calling again. The count is persisted, cleared by a successful
+ * authentication, and forgotten once no attempt failed for DECAY_WINDOW_MS.
+ */
+final class AttemptCounter {
+
+    private static final String PREFERENCES_NAME = "__biometric-aio-attempts";
+    private static final String FAILURES_KEY = "failures";
+    private static final String LAST_FAILURE_KEY = "lastFailureAt";
+    // Same as the timed lockout of the platform after too many failures
+    private static final long DECAY_WINDOW_MS = 30000;
+
+    private static AttemptCounter sInstance;
+
+    private final SharedPreferences mPreferences;
+    private int mFailures;
+    private long mLastFailureAt;
+
+    private AttemptCounter(Context context) {
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mFailures = mPreferences.getInt(FAILURES_KEY, 0);
+        mLastFailureAt = mPreferences.getLong(LAST_FAILURE_KEY, 0);
+    }
+
+    static synchronized AttemptCounter get(Context context) {
+        if (sInstance == null) {
+            sInstance = new AttemptCounter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Failures within the decay window.
+     */
+    synchronized int getFailures() {
+        long sinceLastFailure = SystemClock.elapsedRealtime() - mLastFailureAt;
+        // Negative after a reboot, which requires the device credential anyway
+        if (mFailures > 0 && (sinceLastFailure < 0 || sinceLastFailure >= DECAY_WINDOW_MS)) {
+            reset();
+        }
+        return mFailures;
+    }
+
+    /**
+     * Whether the given maxAttempts limit was reached. A limit of 0 or less means no limit.
+     */
+    boolean isExhausted(int maxAttempts) {
+        return maxAttempts > 0 && getFailures() >= maxAttempts;
+    }
+
+    /**
+     * Records a failure and returns the failures within the decay window, including this one.
+     */
+    synchronized int recordFailure() {
+        mFailures = getFailures() + 1;
+        mLastFailureAt = SystemClock.elapsedRealtime();
+        persist();
+        return mFailures;
+    }
+
+    synchronized void reset() {
+        if (mFailures == 0) {
+            return;
+        }
+        mFailures = 0;
+        mLastFailureAt = 0;
+        persist();
+    }
+
+    private void persist() {
+        mPreferences.edit()
+                .putInt(FAILURES_KEY, mFailures)
+                .putLong(LAST_FAILURE_KEY, mLastFailureAt)
+                .apply();
+    }
+}
@@ -0,0 +1,105 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.os.SystemClock;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory ring buffer of timestamps for each phase a request passes through, from the plugin
+ * call to the result handed back to JS. Read with the getMetrics action.
+ */
+final class AuthMetrics {
+
+    enum Phase {
+        EXECUTE_RECEIVED("executeReceived"),
+        CAN_AUTHENTICATE("canAuthenticate"),
+        INTENT_BUILT("intentBuilt"),
+        ACTIVITY_CREATED("activityCreated"),
+        CIPHER_READY("cipherReady"),
+        PROMPT_SHOWN("promptShown"),
+        CALLBACK_FIRED("callbackFired"),
+        HANDOFF_SCHEDULED("handoffScheduled"),
+        KEYGUARD_LAUNCHED("keyguardLaunched"),
+        CRYPTO_DONE("cryptoDone"),
+        // The record was handed to the background writer, not yet on disk
+        STORE_QUEUED("storeQueued"),
+        STORE_WRITTEN("storeWritten"),
+        RESULT_DELIVERED("resultDelivered");
+
+        private final String mName;
+
+        Phase(String name) {
+            mName = name;
+        }
+
+        String getName() {
+            return mName;
+        }
+    }
+
+    private static final int CAPACITY = 512;
+
+    private static final int[] sRequestIds = new int[CAPACITY];
+    private static final Phase[] sPhases = new Phase[CAPACITY];
+    private static final long[] sTimesNanos = new long[CAPACITY];
+    private static final String[] sDetails = new String[CAPACITY];
+    private static int sNext = 0;
+    private static int sCount = 0;
+
+    private AuthMetrics() {
+    }
+
+    static void record(int requestId, Phase phase) {
+        record(requestId, phase, null);
+    }
+
+    static synchronized void record(int requestId, Phase phase, String detail) {
+        sRequestIds[sNext] = requestId;
+        sPhases[sNext] = phase;
+        sTimesNanos[sNext] = SystemClock.elapsedRealtimeNanos();
+        sDetails[sNext] = detail;
+        sNext = (sNext + 1) % CAPACITY;
+        sCount = Math.min(sCount + 1, CAPACITY);
+    }
+
+    static synchronized void clear() {
+        sNext = 0;
+        sCount = 0;
+    }
+
+    /**
+     * All buffered events, oldest first. Times are milliseconds since boot; "sinceStart" is
+     * relative to the request's executeReceived event if that is still in the buffer.
+     */
+    static synchronized JSONArray toJson() throws JSONException {
+        JSONArray events = new JSONArray();
+        Map<Integer, Long> startTimes = new HashMap<>();
+        int first = (sNext - sCount + CAPACITY) % CAPACITY;
+        for (int i = 0; i < sCount; i++) {
+            int index = (first + i) % CAPACITY;
+            int requestId = sRequestIds[index];
+            long time = sTimesNanos[index];
+            if (sPhases[index] == Phase.EXECUTE_RECEIVED) {
+                startTimes.put(requestId, time);
+            }
+            JSONObject event = new JSONObject();
+            event.put("requestId", requestId);
+            event.put("phase", sPhases[index].getName());
+            event.put("time", time / 1e6);
+            Long start = startTimes.get(requestId);
+            if (start != null) {
+                event.put("sinceStart", (time - start) / 1e6);
+            }
+            if (sDetails[index] != null) {
+                event.put("detail", sDetails[index]);
+            }
+            events.put(event);
+        }
+        return events;
+    }
+}
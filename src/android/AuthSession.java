@@ -0,0 +1,115 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.Arrays;
+
+/**
+ * Process-wide record of the last successful authentication for calls that opt in with
+ * sessionTtlMs. While a session is active authenticate resolves without a prompt, and named slots
+ * can be decrypted with the vault data key kept from the authentication that started it.
+ */
+final class AuthSession {
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    private static long sAuthenticatedAt = 0;
+    private static long sExpiresAt = 0;
+    private static byte[] sDataKey = null;
+    // Data key unlocked by an UNLOCK_DATA_KEY prompt, waiting to be picked up by its request
+    private static int sHandOffRequestId = 0;
+    private static byte[] sHandOffKey = null;
+
+    private AuthSession() {
+    }
+
+    static void start(long ttlMs) {
+        start(ttlMs, null);
+    }
+
+    /**
+     * Starts a new session. The data key is copied, so the caller can zero its own buffer.
+     */
+    static synchronized void start(long ttlMs, byte[] dataKey) {
+        if (ttlMs <= 0) {
+            return;
+        }
+        clear();
+        sAuthenticatedAt = SystemClock.elapsedRealtime();
+        sExpiresAt = sAuthenticatedAt + ttlMs;
+        if (dataKey != null) {
+            sDataKey = Arrays.copyOf(dataKey, dataKey.length);
+        }
+        sHandler.postDelayed(AuthSession::clearIfExpired, ttlMs);
+    }
+
+    /**
+     * Whether a session exists that is younger than the window requested by the caller.
+     */
+    static synchronized boolean isActive(long ttlMs) {
+        if (ttlMs <= 0 || sExpiresAt == 0) {
+            return false;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (now >= sExpiresAt) {
+            clear();
+            return false;
+        }
+        return now - sAuthenticatedAt < ttlMs;
+    }
+
+    /**
+     * A copy of the session's data key, or null if there is none. Callers must zero the copy.
+     */
+    static synchronized byte[] getDataKey(long ttlMs) {
+        if (!isActive(ttlMs) || sDataKey == null) {
+            return null;
+        }
+        return Arrays.copyOf(sDataKey, sDataKey.length);
+    }
+
+    static synchronized void clear() {
+        if (sDataKey != null) {
+            Arrays.fill(sDataKey, (byte) 0);
+            sDataKey = null;
+        }
+        sAuthenticatedAt = 0;
+        sExpiresAt = 0;
+    }
+
+    /**
+     * Passes a data key unlocked by BiometricActivity to the plugin call that requested it,
+     * independent of any session. The key is copied.
+     */
+    static synchronized void handOff(int requestId, byte[] dataKey) {
+        if (sHandOffKey != null) {
+            Arrays.fill(sHandOffKey, (byte) 0);
+        }
+        sHandOffRequestId = requestId;
+        sHandOffKey = Arrays.copyOf(dataKey, dataKey.length);
+    }
+
+    /**
+     * The key handed off for the request, or null. A key left by another request is zeroed.
+     * Callers must zero the returned key.
+     */
+    static synchronized byte[] takeHandOff(int requestId) {
+        byte[] dataKey = sHandOffKey;
+        boolean matches = sHandOffRequestId == requestId;
+        sHandOffKey = null;
+        sHandOffRequestId = 0;
+        if (dataKey != null && !matches) {
+            Arrays.fill(dataKey, (byte) 0);
+            return null;
+        }
+        return dataKey;
+    }
+
+    private static synchronized void clearIfExpired() {
+        if (sExpiresAt != 0 && SystemClock.elapsedRealtime() >= sExpiresAt) {
+            clear();
+        }
+    }
+}
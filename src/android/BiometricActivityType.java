@@ -3,7 +3,10 @@ package de.niklasmerz.cordova.biometric;
 public enum BiometricActivityType {
     JUST_AUTHENTICATE(1),
     REGISTER_SECRET(2),
-    LOAD_SECRET(3);
+    LOAD_SECRET(3),
+    UNLOCK_DATA_KEY(4),
+    SIGN(5),
+    ROTATE_VAULT_KEY(6);
 
     private int value;
 
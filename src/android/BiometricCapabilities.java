@@ -0,0 +1,83 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.content.Context;
+
+import androidx.biometric.BiometricManager;
+
+/**
+ * Snapshot of what the device can authenticate with. Every canAuthenticate call is a binder call
+ * into the biometric service, so the snapshot is computed once and shared by Fingerprint and
+ * BiometricActivity. Fingerprint drops it when the app pauses, since the user may change
+ * enrollments or the lock screen while it is in the background, and computes the next one ahead
+ * of time when the app resumes. A call arriving before that finished computes it synchronously,
+ * so it is never answered from the state before the pause.
+ */
+final class BiometricCapabilities {
+
+    // compat for BiometricManager lockout codes (not in older library versions)
+    private static final int BM_ERROR_LOCKOUT = 7;
+    private static final int BM_ERROR_LOCKOUT_PERMANENT = 9;
+
+    private static BiometricCapabilities sSnapshot;
+    // Bumped by invalidate, so a refresh started before it cannot store its outdated result
+    private static int sGeneration = 0;
+
+    private final int mStrongStatus;
+    private final int mWeakStatus;
+
+    private BiometricCapabilities(int strongStatus, int weakStatus) {
+        mStrongStatus = strongStatus;
+        mWeakStatus = weakStatus;
+    }
+
+    static synchronized BiometricCapabilities get(Context context) {
+        if (sSnapshot == null) {
+            sSnapshot = compute(context);
+        }
+        return sSnapshot;
+    }
+
+    static BiometricCapabilities refresh(Context context) {
+        int generation;
+        synchronized (BiometricCapabilities.class) {
+            generation = sGeneration;
+        }
+        BiometricCapabilities snapshot = compute(context);
+        synchronized (BiometricCapabilities.class) {
+            if (generation == sGeneration) {
+                sSnapshot = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drops the snapshot, the next get computes a fresh one.
+     */
+    static synchronized void invalidate() {
+        sSnapshot = null;
+        sGeneration++;
+    }
+
+    private static BiometricCapabilities compute(Context context) {
+        BiometricManager biometricManager = BiometricManager.from(context);
+        return new BiometricCapabilities(
+                biometricManager.canAuthenticate(BiometricManager.Authenticators.BIOMETRIC_STRONG),
+                biometricManager.canAuthenticate(BiometricManager.Authenticators.BIOMETRIC_WEAK));
+    }
+
+    /**
+     * The BiometricManager status for Class 3 (strong) or Class 2 (weak) biometrics.
+     */
+    int getStatus(boolean requireStrongBiometrics) {
+        return requireStrongBiometrics ? mStrongStatus : mWeakStatus;
+    }
+
+    boolean isStrongAvailable() {
+        return mStrongStatus == BiometricManager.BIOMETRIC_SUCCESS;
+    }
+
+    boolean isLockedOut() {
+        return mWeakStatus == BM_ERROR_LOCKOUT || mWeakStatus == BM_ERROR_LOCKOUT_PERMANENT;
+    }
+}
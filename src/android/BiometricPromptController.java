@@ -0,0 +1,664 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.app.Activity;
+import android.app.KeyguardManager;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Base64;
+import androidx.annotation.NonNull;
+import androidx.biometric.BiometricManager;
+import androidx.biometric.BiometricPrompt;
+import androidx.core.content.ContextCompat;
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
+import androidx.fragment.app.FragmentManager;
+import android.util.Log;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import javax.crypto.Cipher;
+
+/**
+ * Runs one biometric prompt, including the crypto around it and the fallback to the device
+ * credential (Keyguard). It is hosted either by BiometricActivity or, for inProcessPrompt calls,
+ * directly on the Cordova activity by Fingerprint. Must be used on the UI thread.
+ */
+class BiometricPromptController {
+
+    /**
+     * Where the prompt is shown and where its result goes. Exactly one of onSuccess and onError
+     * is called per prompt.
+     */
+    interface Host {
+        FragmentActivity getActivity();
+
+        /**
+         * Starts the Keyguard confirmation; its result must be passed to onActivityResult.
+         */
+        void startActivityForResult(Intent intent, int requestCode);
+
+        /**
+         * @param result the signature for SIGN, otherwise null. Decrypted secrets are left in SecretRegistry
+         */
+        void onSuccess(Intent result);
+
+        void onError(int code, String message);
+    }
+
+    static final int REQUEST_CODE_CONFIRM_DEVICE_CREDENTIALS = 2;
+    private static final String TAG = "FAIO";
+    // Tag androidx.biometric adds its headless fragment with while a prompt is showing
+    private static final String BIOMETRIC_FRAGMENT_TAG = "androidx.biometric.BiometricFragment";
+    private static final long HANDOFF_SAFETY_TIMEOUT_MS = 1500;
+    // Disk and keystore work that must not run in the authentication callback
+    private static final Executor sBackground = Executors.newSingleThreadExecutor();
+
+    // Replaced by attach when the host is recreated after a configuration change
+    private Host mHost;
+    private FragmentActivity mActivity;
+    private BiometricPrompt mBiometricPrompt;
+    private final PromptInfo mPromptInfo;
+    private final CryptographyManager mCryptographyManager;
+    private final Handler mUi = new Handler(Looper.getMainLooper());
+    private boolean mLaunchingDeviceCredential = false;
+    private boolean mSuppressCancelError = false; // ERROR_CANCELED while handing off to Keyguard means the prompt is gone
+    private final AttemptCounter mAttempts; // counts both face + fingerprint failures, across prompts
+    // Handoff guard (avoid double-Launching Keyguard)
+    private boolean mHandoffScheduled = false;
+    private long mHandoffScheduledAt = 0;
+    private boolean mFinished = false;
+    // Vault records for named slots, resolved together with the cipher
+    private EncryptedData mWrappedDataKey;
+    private Map<String, EncryptedData> mEntries;
+
+    BiometricPromptController(Host host, PromptInfo promptInfo) {
+        mHost = host;
+        mActivity = host.getActivity();
+        mPromptInfo = promptInfo;
+        mCryptographyManager = new CryptographyManagerImpl(promptInfo.preferStrongBox());
+        mAttempts = AttemptCounter.get(mActivity);
+        mBiometricPrompt = createBiometricPrompt();
+    }
+
+    private BiometricPrompt createBiometricPrompt() {
+        Executor executor = mUi::post;
+        return new BiometricPrompt(mActivity, executor, mAuthenticationCallback);
+    }
+
+    /**
+     * Moves an in-flight prompt to a host recreated after a configuration change. androidx.biometric
+     * keeps showing the prompt across the change; creating a BiometricPrompt on the new activity
+     * reconnects its callback, while this controller keeps the attempts, handoff state and cipher.
+     */
+    void attach(Host host) {
+        mHost = host;
+        mActivity = host.getActivity();
+        mBiometricPrompt = createBiometricPrompt();
+        if (isWaitingForDismissal()) {
+            mActivity.getSupportFragmentManager().registerFragmentLifecycleCallbacks(mPromptWatcher, false);
+        }
+    }
+
+    /**
+     * Called before the host is destroyed for a configuration change. The prompt fragment detaches
+     * with the old activity, which must not be taken for a dismissal.
+     */
+    void detach() {
+        mActivity.getSupportFragmentManager().unregisterFragmentLifecycleCallbacks(mPromptWatcher);
+    }
+
+    void start() {
+        if (mAttempts.isExhausted(mPromptInfo.getMaxAttempts())) {
+            // The limit was reached by earlier prompts, don't grant a fresh set of attempts
+            Log.d(TAG, "attempts exhausted -> skip biometric prompt");
+            if (mPromptInfo.isDeviceCredentialAllowed()) {
+                scheduleHandoffToKeyguard();
+            } else {
+                finishWithError(PluginError.BIOMETRIC_LOCKED_OUT);
+            }
+            return;
+        }
+        try {
+            authenticate();
+        } catch (CryptoException e) {
+            finishWithError(e);
+        } catch (Exception e) {
+            finishWithError(PluginError.BIOMETRIC_UNKNOWN_ERROR, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns true if the result belonged to the Keyguard confirmation started by this prompt.
+     */
+    boolean onActivityResult(int requestCode, int resultCode) {
+        if (requestCode != REQUEST_CODE_CONFIRM_DEVICE_CREDENTIALS) {
+            return false;
+        }
+        Log.d(TAG, "Keyguard result=" + (resultCode == Activity.RESULT_OK ? "OK" : "CANCELED"));
+        if (resultCode == Activity.RESULT_OK) {
+            finishWithSuccess();
+        } else {
+            finishWithError(PluginError.BIOMETRIC_PIN_OR_PATTERN_DISMISSED);
+        }
+        // We're done with the handoff; re-enable normal cancel handling.
+        mLaunchingDeviceCredential = false;
+        mSuppressCancelError = false;
+        mHandoffScheduled = false;
+        return true;
+    }
+
+    /**
+     * Dismisses the prompt without reporting a result, e.g. when the page reloads.
+     */
+    void cancel() {
+        mFinished = true;
+        release();
+        try { mBiometricPrompt.cancelAuthentication(); } catch (Exception ignored) {}
+    }
+
+    private void authenticate() throws CryptoException {
+        switch (mPromptInfo.getType()) {
+          case JUST_AUTHENTICATE:
+            justAuthenticate();
+            return;
+          case REGISTER_SECRET:
+            authenticateToEncrypt();
+            return;
+          case LOAD_SECRET:
+          case UNLOCK_DATA_KEY:
+          case ROTATE_VAULT_KEY:
+            authenticateWithCrypto();
+            return;
+          case SIGN:
+            authenticateToSign();
+            return;
+        }
+        throw new CryptoException(PluginError.BIOMETRIC_ARGS_PARSING_FAILED);
+    }
+
+    private void authenticateToEncrypt() throws CryptoException {
+        if (mPromptInfo.getSecret() == null) {
+            throw new CryptoException(PluginError.BIOMETRIC_ARGS_PARSING_FAILED);
+        }
+        authenticateWithCrypto();
+    }
+
+    private void authenticateToSign() throws CryptoException {
+        String[] challenges = mPromptInfo.getChallenges();
+        if (challenges == null ? mPromptInfo.getChallenge() == null : challenges.length == 0) {
+            throw new CryptoException(PluginError.BIOMETRIC_ARGS_PARSING_FAILED);
+        }
+        Signature signature = mCryptographyManager.getInitializedSignature(SecretVault.SIGNING_KEY);
+        mark(AuthMetrics.Phase.CIPHER_READY, "signature");
+        mBiometricPrompt.authenticate(createPromptInfo(), new BiometricPrompt.CryptoObject(signature));
+        mark(AuthMetrics.Phase.PROMPT_SHOWN);
+    }
+
+    private void justAuthenticate() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R && precheckLegacyLockoutAndHandoffIfNeeded()) {
+            return;
+        }
+        mBiometricPrompt.authenticate(createPromptInfo());
+        mark(AuthMetrics.Phase.PROMPT_SHOWN);
+    }
+
+    /**
+     * Uses the cipher prepared ahead of time by the prepare action if it matches this request,
+     * otherwise initializes it now.
+     */
+    private void authenticateWithCrypto() throws CryptoException {
+        PreparedCrypto prepared = PreparedCrypto.take(mPromptInfo, mActivity);
+        if (prepared == null) {
+            prepared = PreparedCrypto.prepare(mPromptInfo, mCryptographyManager, mActivity);
+            mark(AuthMetrics.Phase.CIPHER_READY, "cold");
+        } else {
+            mark(AuthMetrics.Phase.CIPHER_READY, "prepared");
+        }
+        mWrappedDataKey = prepared.getWrappedDataKey();
+        mEntries = prepared.getEntries();
+        mBiometricPrompt.authenticate(createPromptInfo(), new BiometricPrompt.CryptoObject(prepared.getCipher()));
+        mark(AuthMetrics.Phase.PROMPT_SHOWN);
+    }
+
+    private void mark(AuthMetrics.Phase phase) {
+        mark(phase, null);
+    }
+
+    private void mark(AuthMetrics.Phase phase, String detail) {
+        AuthMetrics.record(mPromptInfo.getRequestId(), phase, detail);
+        PluginEvents.progress(mPromptInfo.getRequestId(), phase, detail);
+    }
+
+    private boolean precheckLegacyLockoutAndHandoffIfNeeded() {
+        if (!mPromptInfo.isDeviceCredentialAllowed()) {
+            return false;
+        }
+        if (BiometricCapabilities.get(mActivity).isLockedOut()) {
+            Log.d(TAG, "precheck: locked out -> handoff to Keyguard");
+            scheduleHandoffToKeyguard();
+            return true;
+        }
+        return false;
+    }
+
+    private BiometricPrompt.PromptInfo createPromptInfo() {
+        BiometricPrompt.PromptInfo.Builder builder = new BiometricPrompt.PromptInfo.Builder()
+                .setTitle(mPromptInfo.getTitle())
+                .setSubtitle(mPromptInfo.getSubtitle())
+                .setConfirmationRequired(mPromptInfo.getConfirmationRequired())
+                .setDescription(mPromptInfo.getDescription());
+
+        boolean backup = mPromptInfo.isDeviceCredentialAllowed();
+        boolean justAuth = mPromptInfo.getType() == BiometricActivityType.JUST_AUTHENTICATE;
+        boolean addNegative = true;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            int authenticators = mPromptInfo.getAuthenticators();
+            builder.setAllowedAuthenticators(authenticators);
+            if ((authenticators & BiometricManager.Authenticators.DEVICE_CREDENTIAL) != 0) {
+                addNegative = false;
+            } else {
+                backup = false;
+            }
+        } else {
+            if (justAuth && backup && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                // NOTE: This mode forbids a negative button.
+                //noinspection deprecation
+                builder.setDeviceCredentialAllowed(true);
+                addNegative = false;
+            }
+        }
+
+        if (addNegative) {
+            String negativeText = backup
+                    ? mPromptInfo.getFallbackButtonTitle()
+                    : mPromptInfo.getCancelButtonTitle();
+            builder.setNegativeButtonText(negativeText);
+        }
+
+        return builder.build();
+    }
+
+    private BiometricPrompt.AuthenticationCallback mAuthenticationCallback =
+            new BiometricPrompt.AuthenticationCallback() {
+
+                @Override
+                public void onAuthenticationError(int errorCode, @NonNull CharSequence errString) {
+                        Log.d(TAG, "onError code=" + errorCode + " msg=" + String.valueOf(errString)
+                                + " launchingKeyguard=" + mLaunchingDeviceCredential
+                                + " suppress=" + mSuppressCancelError);
+                    mark(AuthMetrics.Phase.CALLBACK_FIRED, "error " + errorCode);
+                    super.onAuthenticationError(errorCode, errString);
+                    onError(errorCode, errString);
+                }
+
+                @Override
+                public void onAuthenticationSucceeded(@NonNull BiometricPrompt.AuthenticationResult result) {
+                    super.onAuthenticationSucceeded(result);
+                    mark(AuthMetrics.Phase.CALLBACK_FIRED, "succeeded");
+                    mAttempts.reset();
+                    try {
+                        finishWithSuccess(result.getCryptoObject());
+                    } catch (CryptoException e) {
+                        finishWithError(e);
+                    }
+                }
+
+                @Override
+                public void onAuthenticationFailed() {
+                    super.onAuthenticationFailed();
+                    mark(AuthMetrics.Phase.CALLBACK_FIRED, "failed");
+                    int failures = mAttempts.recordFailure();
+                    int limit = mPromptInfo.getMaxAttempts();
+                    PluginEvents.attemptFailed(mPromptInfo.getRequestId(), failures, limit);
+                    Log.d(TAG, "failed++ -> " + failures + " / limit=" + limit);
+                    if (limit > 0 && failures >= limit) {
+                        Log.d(TAG, "limit reached -> schedule handoff to Keyguard");
+                        if (mPromptInfo.isDeviceCredentialAllowed()) {
+                            scheduleHandoffToKeyguard();
+                        } else {
+                            finishWithError(PluginError.BIOMETRIC_LOCKED_OUT);
+                        }
+                    }
+                }
+            };
+
+    /**
+     * Dismiss BiometricPrompt and launch Keyguard (PIN/Pattern/Password) once the prompt is gone,
+     * avoiding double-launch. The prompt is gone when its fragment detaches or when it reports
+     * ERROR_CANCELED, whichever comes first; the timeout only covers OEM prompts that send neither.
+     */
+    private void scheduleHandoffToKeyguard() {
+        if (mHandoffScheduled) return;
+        mHandoffScheduled = true;
+        mSuppressCancelError = true;
+        mHandoffScheduledAt = SystemClock.elapsedRealtime();
+        mark(AuthMetrics.Phase.HANDOFF_SCHEDULED);
+        if (mActivity.getSupportFragmentManager().findFragmentByTag(BIOMETRIC_FRAGMENT_TAG) == null) {
+            // No prompt showing (e.g. lockout precheck), nothing to wait for
+            onPromptDismissed("immediate");
+            return;
+        }
+        mActivity.getSupportFragmentManager().registerFragmentLifecycleCallbacks(mPromptWatcher, false);
+        try { mBiometricPrompt.cancelAuthentication(); } catch (Exception ignored) {}
+        mUi.postDelayed(mHandoffTimeout, HANDOFF_SAFETY_TIMEOUT_MS);
+    }
+
+    private final FragmentManager.FragmentLifecycleCallbacks mPromptWatcher =
+            new FragmentManager.FragmentLifecycleCallbacks() {
+                @Override
+                public void onFragmentDetached(@NonNull FragmentManager fm, @NonNull Fragment f) {
+                    if (BIOMETRIC_FRAGMENT_TAG.equals(f.getTag())) {
+                        // Let the fragment transaction finish before starting an activity
+                        mUi.post(() -> onPromptDismissed("detached"));
+                    }
+                }
+            };
+
+    private final Runnable mHandoffTimeout = () -> onPromptDismissed("timeout");
+
+    private boolean isWaitingForDismissal() {
+        return mHandoffScheduled && !mLaunchingDeviceCredential && !mFinished;
+    }
+
+    private void onPromptDismissed(String signal) {
+        if (!isWaitingForDismissal()) {
+            return;
+        }
+        stopWatchingPrompt();
+        long latencyMs = SystemClock.elapsedRealtime() - mHandoffScheduledAt;
+        Log.d(TAG, "handoff->Keyguard after " + signal + " in " + latencyMs + "ms");
+        mark(AuthMetrics.Phase.KEYGUARD_LAUNCHED, signal + " " + latencyMs + "ms");
+        launchDeviceCredential();
+    }
+
+    private void stopWatchingPrompt() {
+        mUi.removeCallbacks(mHandoffTimeout);
+        mActivity.getSupportFragmentManager().unregisterFragmentLifecycleCallbacks(mPromptWatcher);
+    }
+
+    private void launchDeviceCredential() {
+        Log.d(TAG, "launchDeviceCredential()");
+        KeyguardManager keyguardManager = ContextCompat
+                .getSystemService(mActivity, KeyguardManager.class);
+        if (keyguardManager == null
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            finishWithError(PluginError.BIOMETRIC_UNKNOWN_ERROR);
+            return;
+        }
+        if (!keyguardManager.isKeyguardSecure()) {
+            finishWithError(PluginError.BIOMETRIC_SCREEN_GUARD_UNSECURED);
+            return;
+        }
+        Intent intent = keyguardManager
+                .createConfirmDeviceCredentialIntent(mPromptInfo.getTitle(), mPromptInfo.getDescription());
+        if (intent != null) {
+            mLaunchingDeviceCredential = true; // already transitioning
+            mHost.startActivityForResult(intent, REQUEST_CODE_CONFIRM_DEVICE_CREDENTIALS);
+        } else {
+            finishWithError(PluginError.BIOMETRIC_UNKNOWN_ERROR);
+        }
+    }
+
+    private void onError(int errorCode, @NonNull CharSequence errString) {
+
+        switch (errorCode) {
+            case BiometricPrompt.ERROR_USER_CANCELED:
+            case BiometricPrompt.ERROR_CANCELED:
+                // If we intentionally canceled to launch Keyguard, the prompt is on its way out.
+                if (mSuppressCancelError || mLaunchingDeviceCredential) {
+                    onPromptDismissed("canceled");
+                    return;
+                } else {
+                    finishWithError(PluginError.BIOMETRIC_DISMISSED);
+                    return;
+                }
+            case BiometricPrompt.ERROR_TIMEOUT:
+                // Count face timeouts as failed attempts to progress toward fallback
+                Log.d(TAG, "timeout -> count as failed");
+                mAuthenticationCallback.onAuthenticationFailed();
+                return;
+            case BiometricPrompt.ERROR_NEGATIVE_BUTTON:
+                if (mPromptInfo.isDeviceCredentialAllowed()) {
+                    scheduleHandoffToKeyguard();
+                    return;
+                }
+                finishWithError(PluginError.BIOMETRIC_DISMISSED);
+                return;
+            case BiometricPrompt.ERROR_LOCKOUT:
+            case BiometricPrompt.ERROR_LOCKOUT_PERMANENT:
+                if (mPromptInfo.isDeviceCredentialAllowed()) {
+                    scheduleHandoffToKeyguard();
+                    return;
+                }
+                if (errorCode == BiometricPrompt.ERROR_LOCKOUT) {
+                    finishWithError(PluginError.BIOMETRIC_LOCKED_OUT.getValue(), errString.toString());
+                } else {
+                    finishWithError(PluginError.BIOMETRIC_LOCKED_OUT_PERMANENT.getValue(), errString.toString());
+                }
+                return;
+            default:
+                finishWithError(errorCode, errString.toString());
+        }
+    }
+
+    private void finishWithSuccess() {
+        if (mPromptInfo.getType() != BiometricActivityType.JUST_AUTHENTICATE) {
+            // Never offered for CryptoObject prompts, the Keyguard cannot unlock their keys
+            finishWithError(PluginError.BIOMETRIC_UNKNOWN_ERROR, "Device credential cannot authorize key use");
+            return;
+        }
+        mAttempts.reset();
+        AuthSession.start(mPromptInfo.getSessionTtlMs());
+        finish(null);
+    }
+
+    private void finishWithSuccess(BiometricPrompt.CryptoObject cryptoObject) throws CryptoException {
+        Intent intent = null;
+        switch (mPromptInfo.getType()) {
+          case REGISTER_SECRET:
+            encrypt(cryptoObject);
+            break;
+          case LOAD_SECRET:
+            depositDecryptedSecrets(cryptoObject);
+            break;
+          case UNLOCK_DATA_KEY:
+            handOffDataKey(cryptoObject);
+            break;
+          case SIGN:
+            intent = getSignatureIntent(cryptoObject);
+            break;
+          case ROTATE_VAULT_KEY:
+            // Finishes once the rotation is on disk
+            rotateVaultKey(cryptoObject);
+            return;
+          default:
+            AuthSession.start(mPromptInfo.getSessionTtlMs());
+        }
+        finish(intent);
+    }
+
+    private void encrypt(BiometricPrompt.CryptoObject cryptoObject) throws CryptoException {
+        String text = mPromptInfo.getSecret();
+        if (!SecretVault.isWrapped(mPromptInfo.getSlot())) {
+            EncryptedData encryptedData = mCryptographyManager.encryptData(text, cryptoObject.getCipher());
+            mark(AuthMetrics.Phase.CRYPTO_DONE);
+            SecretVault.get(mActivity).save(mPromptInfo.getSlot(), encryptedData);
+            mark(AuthMetrics.Phase.STORE_QUEUED);
+            AuthSession.start(mPromptInfo.getSessionTtlMs());
+            return;
+        }
+        byte[] dataKey = unlockDataKey(cryptoObject.getCipher());
+        try {
+            EncryptedData encryptedData = mCryptographyManager.encryptData(text, dataKey);
+            mark(AuthMetrics.Phase.CRYPTO_DONE);
+            SecretVault.get(mActivity).save(mPromptInfo.getSlot(), encryptedData);
+            mark(AuthMetrics.Phase.STORE_QUEUED);
+            AuthSession.start(mPromptInfo.getSessionTtlMs(), dataKey);
+            DataKeyHolder.hold(dataKey, mPromptInfo.getKeepUnlockedMs());
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    /**
+     * The plugin does the actual work with the key (e.g. file encryption) off the UI thread.
+     */
+    private void handOffDataKey(BiometricPrompt.CryptoObject cryptoObject) throws CryptoException {
+        byte[] dataKey = unlockDataKey(cryptoObject.getCipher());
+        try {
+            AuthSession.handOff(mPromptInfo.getRequestId(), dataKey);
+            AuthSession.start(mPromptInfo.getSessionTtlMs(), dataKey);
+            DataKeyHolder.hold(dataKey, mPromptInfo.getKeepUnlockedMs());
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    /**
+     * Wraps the data key that is still unlocked from an earlier prompt with the next vault key and
+     * deletes the previous one. Every slot and file stays encrypted with the same data key. The
+     * store write is waited for and the old key deleted on a background thread, the prompt result
+     * is delivered on the UI thread afterwards.
+     */
+    private void rotateVaultKey(BiometricPrompt.CryptoObject cryptoObject) throws CryptoException {
+        byte[] dataKey = DataKeyHolder.acquire();
+        if (dataKey == null) {
+            dataKey = AuthSession.getDataKey(mPromptInfo.getSessionTtlMs());
+        }
+        if (dataKey == null) {
+            throw new CryptoException(PluginError.BIOMETRIC_DATA_KEY_LOCKED);
+        }
+        final EncryptedData wrappedDataKey;
+        try {
+            wrappedDataKey = mCryptographyManager.wrapDataKey(dataKey, cryptoObject.getCipher());
+            mark(AuthMetrics.Phase.CRYPTO_DONE);
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+        final SecretVault vault = SecretVault.get(mActivity);
+        sBackground.execute(() -> {
+            String previousAlias;
+            try {
+                // Throws if the store could not be written, the previous key then stays in use
+                previousAlias = vault.rotateWrappedDataKey(wrappedDataKey);
+            } catch (CryptoException e) {
+                mUi.post(() -> finishWithError(e));
+                return;
+            }
+            mark(AuthMetrics.Phase.STORE_WRITTEN);
+            try {
+                mCryptographyManager.deleteKey(previousAlias);
+            } catch (CryptoException e) {
+                // Nothing is wrapped with it anymore, a leftover entry is harmless
+                Log.e(TAG, "Failed to delete previous vault key " + previousAlias, e);
+            }
+            mUi.post(() -> finish(null));
+        });
+    }
+
+    private byte[] unlockDataKey(Cipher cipher) throws CryptoException {
+        if (mWrappedDataKey != null) {
+            return mCryptographyManager.unwrapDataKey(mWrappedDataKey, cipher);
+        }
+        byte[] dataKey = mCryptographyManager.generateDataKey();
+        SecretVault.get(mActivity).saveWrappedDataKey(mCryptographyManager.wrapDataKey(dataKey, cipher));
+        return dataKey;
+    }
+
+    /**
+     * Leaves the decrypted secrets in SecretRegistry for the plugin call instead of the result
+     * Intent, so they are never turned into Strings or parceled.
+     */
+    private void depositDecryptedSecrets(BiometricPrompt.CryptoObject cryptoObject) throws CryptoException {
+        Map<String, byte[]> secrets;
+        if (mEntries != null) {
+            secrets = decryptSlots(cryptoObject);
+        } else {
+            byte[] ciphertext = SecretVault.get(mActivity).load(mPromptInfo.getSlot()).getCiphertext();
+            secrets = new LinkedHashMap<>();
+            secrets.put(mPromptInfo.getSlot(), mCryptographyManager.decryptData(ciphertext, cryptoObject.getCipher()));
+            mark(AuthMetrics.Phase.CRYPTO_DONE);
+            AuthSession.start(mPromptInfo.getSessionTtlMs());
+        }
+        SecretRegistry.put(mPromptInfo.getRequestId(), secrets);
+    }
+
+    private Map<String, byte[]> decryptSlots(BiometricPrompt.CryptoObject cryptoObject) throws CryptoException {
+        byte[] dataKey = mCryptographyManager.unwrapDataKey(mWrappedDataKey, cryptoObject.getCipher());
+        try {
+            Map<String, byte[]> secrets = mCryptographyManager.decryptData(mEntries, dataKey);
+            mark(AuthMetrics.Phase.CRYPTO_DONE);
+            AuthSession.start(mPromptInfo.getSessionTtlMs(), dataKey);
+            DataKeyHolder.hold(dataKey, mPromptInfo.getKeepUnlockedMs());
+            return secrets;
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    private Intent getSignatureIntent(BiometricPrompt.CryptoObject cryptoObject) throws CryptoException {
+        byte[] signature;
+        String[] challenges = mPromptInfo.getChallenges();
+        if (challenges != null) {
+            // An auth-per-use key allows a single signing operation per prompt
+            byte[][] payloads = new byte[challenges.length][];
+            for (int i = 0; i < challenges.length; i++) {
+                payloads[i] = challenges[i].getBytes(StandardCharsets.UTF_8);
+            }
+            signature = mCryptographyManager.signAll(payloads, cryptoObject.getSignature());
+        } else {
+            byte[] challenge = mPromptInfo.getChallenge().getBytes(StandardCharsets.UTF_8);
+            signature = mCryptographyManager.sign(challenge, cryptoObject.getSignature());
+        }
+        mark(AuthMetrics.Phase.CRYPTO_DONE);
+        AuthSession.start(mPromptInfo.getSessionTtlMs());
+        Intent intent = new Intent();
+        intent.putExtra(PromptInfo.SIGNATURE_EXTRA, Base64.encodeToString(signature, Base64.NO_WRAP));
+        return intent;
+    }
+
+    private void finish(Intent result) {
+        if (mFinished) {
+            return;
+        }
+        mFinished = true;
+        release();
+        mHost.onSuccess(result);
+    }
+
+    private void finishWithError(CryptoException e) {
+        finishWithError(e.getError().getValue(), e.getMessage());
+    }
+
+    private void finishWithError(PluginError error) {
+        finishWithError(error.getValue(), error.getMessage());
+    }
+
+    private void finishWithError(PluginError error, String message) {
+        finishWithError(error.getValue(), message);
+    }
+
+    private void finishWithError(int code, String message) {
+        if (mFinished) {
+            return;
+        }
+        mFinished = true;
+        release();
+        mHost.onError(code, message);
+    }
+
+    private void release() {
+        mUi.removeCallbacksAndMessages(null);
+        mActivity.getSupportFragmentManager().unregisterFragmentLifecycleCallbacks(mPromptWatcher);
+    }
+}
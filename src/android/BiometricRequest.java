@@ -0,0 +1,76 @@
+package de.niklasmerz.cordova.biometric;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single plugin call and the callbacks waiting for its result. Requests that need a prompt are
+ * queued by Fingerprint and run one at a time; identical authenticate calls that arrive while one
+ * is pending share its prompt and its result.
+ */
+final class BiometricRequest {
+
+    private static final AtomicInteger sNextId = new AtomicInteger(1);
+
+    private final int mId = sNextId.getAndIncrement();
+    private final String mAction;
+    private final Args mArgs;
+    private final BiometricActivityType mType;
+    private final List<CallbackContext> mCallbacks = new ArrayList<>(1);
+
+    BiometricRequest(String action, Args args, BiometricActivityType type, CallbackContext callbackContext) {
+        mAction = action;
+        mArgs = args;
+        mType = type;
+        mCallbacks.add(callbackContext);
+        AuthMetrics.record(mId, AuthMetrics.Phase.EXECUTE_RECEIVED, action);
+    }
+
+    int getId() {
+        return mId;
+    }
+
+    String getAction() {
+        return mAction;
+    }
+
+    Args getArgs() {
+        return mArgs;
+    }
+
+    /**
+     * The prompt this request runs, or null for calls that never show one.
+     */
+    BiometricActivityType getType() {
+        return mType;
+    }
+
+    /**
+     * Only plain authenticate calls with identical options can share a prompt. Secret operations
+     * always get their own.
+     */
+    boolean canCoalesce(BiometricRequest other) {
+        return mType == BiometricActivityType.JUST_AUTHENTICATE
+                && other.mType == BiometricActivityType.JUST_AUTHENTICATE
+                && mArgs.equals(other.mArgs);
+    }
+
+    synchronized void coalesce(BiometricRequest other) {
+        mCallbacks.addAll(other.mCallbacks);
+    }
+
+    synchronized void sendPluginResult(PluginResult result) {
+        for (CallbackContext callbackContext : mCallbacks) {
+            callbackContext.sendPluginResult(result);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "#" + mId + " " + mAction;
+    }
+}
@@ -0,0 +1,133 @@
+package de.niklasmerz.cordova.biometric;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Chunked AES-GCM format used by encryptFile and decryptFile.
+ *
+ * Layout: a 4 byte magic, a 1 byte format version and the nonce prefix, then chunks of
+ * [final flag][length][ciphertext]. Each chunk has its own GCM nonce (prefix + chunk index) and
+ * authenticates its final flag, so reordered, truncated or extended streams fail to decrypt. Only
+ * plain JCA, the data key never touches the keystore.
+ */
+final class ChunkedStream {
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int MAGIC = 0x4241494F; // "BAIO"
+    private static final int VERSION = 1;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int GCM_TAG_LENGTH = 128;
+    private static final int GCM_TAG_BYTES = GCM_TAG_LENGTH / 8;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int NONCE_PREFIX_LENGTH = GCM_IV_LENGTH - 4;
+
+    private ChunkedStream() {
+    }
+
+    static void encrypt(InputStream in, OutputStream out, byte[] dataKey, SecureRandom random)
+            throws IOException, GeneralSecurityException {
+        byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        random.nextBytes(noncePrefix);
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.write(noncePrefix);
+
+        SecretKeySpec key = new SecretKeySpec(dataKey, "AES");
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        byte[] chunk = new byte[CHUNK_SIZE];
+        byte[] next = new byte[CHUNK_SIZE];
+        byte[] ciphertext = new byte[CHUNK_SIZE + GCM_TAG_BYTES];
+        // Reads one chunk ahead to know which chunk is the last one
+        int length = readChunk(in, chunk);
+        int index = 0;
+        while (true) {
+            int nextLength = length < CHUNK_SIZE ? 0 : readChunk(in, next);
+            boolean last = nextLength == 0;
+            cipher.init(Cipher.ENCRYPT_MODE, key, nonce(noncePrefix, index++));
+            cipher.updateAAD(new byte[]{(byte) (last ? 1 : 0)});
+            int ciphertextLength = cipher.doFinal(chunk, 0, length, ciphertext, 0);
+            data.writeBoolean(last);
+            data.writeInt(ciphertextLength);
+            data.write(ciphertext, 0, ciphertextLength);
+            if (last) {
+                break;
+            }
+            byte[] swap = chunk;
+            chunk = next;
+            next = swap;
+            length = nextLength;
+        }
+        data.flush();
+    }
+
+    static void decrypt(InputStream in, OutputStream out, byte[] dataKey)
+            throws IOException, GeneralSecurityException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readUnsignedByte() != VERSION) {
+            throw new IOException("Not an encrypted stream");
+        }
+        byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        data.readFully(noncePrefix);
+
+        SecretKeySpec key = new SecretKeySpec(dataKey, "AES");
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        byte[] ciphertext = new byte[CHUNK_SIZE + GCM_TAG_BYTES];
+        byte[] plaintext = new byte[CHUNK_SIZE + GCM_TAG_BYTES];
+        boolean last = false;
+        for (int index = 0; !last; index++) {
+            try {
+                last = data.readBoolean();
+            } catch (EOFException e) {
+                throw new IOException("Encrypted stream is truncated", e);
+            }
+            int length = data.readInt();
+            if (length < GCM_TAG_BYTES || length > ciphertext.length) {
+                throw new IOException("Corrupt encrypted stream");
+            }
+            data.readFully(ciphertext, 0, length);
+            cipher.init(Cipher.DECRYPT_MODE, key, nonce(noncePrefix, index));
+            cipher.updateAAD(new byte[]{(byte) (last ? 1 : 0)});
+            int plaintextLength = cipher.doFinal(ciphertext, 0, length, plaintext, 0);
+            // Nothing may follow the final chunk, it would be data appended to a sealed stream
+            if (last && data.read() != -1) {
+                throw new IOException("Trailing data after encrypted stream");
+            }
+            out.write(plaintext, 0, plaintextLength);
+        }
+        out.flush();
+    }
+
+    private static GCMParameterSpec nonce(byte[] noncePrefix, int index) {
+        byte[] nonce = ByteBuffer.allocate(GCM_IV_LENGTH).put(noncePrefix).putInt(index).array();
+        return new GCMParameterSpec(GCM_TAG_LENGTH, nonce);
+    }
+
+    /**
+     * Fills the buffer unless the stream ends first. Returns the number of bytes read.
+     */
+    private static int readChunk(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+}
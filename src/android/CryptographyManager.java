@@ -2,6 +2,12 @@ package de.niklasmerz.cordova.biometric;
 
 import android.content.Context;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Map;
+
 import javax.crypto.Cipher;
 
 interface CryptographyManager {
@@ -18,14 +24,110 @@ interface CryptographyManager {
      */
     Cipher getInitializedCipherForDecryption(String keyName, byte[] initializationVector, Context context) throws CryptoException;
 
+    /**
+     * Generates the secret key for keyName in the keystore if it does not exist yet, so the
+     * first prompt using it does not have to wait for key generation.
+     */
+    void provisionKey(String keyName, boolean invalidateOnEnrollment, Context context) throws CryptoException;
+
+    /**
+     * Whether the key for keyName exists and can still decrypt data with the given IV. A key that
+     * was permanently invalidated is deleted. Never creates a key and needs no authentication.
+     */
+    boolean isKeyUsable(String keyName, byte[] initializationVector) throws CryptoException;
+
+    /**
+     * Deletes the key for keyName from the keystore. Does nothing if it does not exist.
+     */
+    void deleteKey(String keyName) throws CryptoException;
+
+    /**
+     * Where the key for keyName lives: "strongBox", "tee" or "software". Null if it does not exist
+     * or the keystore cannot tell.
+     */
+    String getKeyBacking(String keyName) throws CryptoException;
+
     /**
      * The Cipher created with [getInitializedCipherForEncryption] is used here
      */
     EncryptedData encryptData(String plaintext, Cipher cipher) throws CryptoException;
 
+    /**
+     * The Cipher created with [getInitializedCipherForDecryption] is used here. Returns the UTF-8
+     * bytes of the secret, which the caller zeroes once consumed.
+     */
+    byte[] decryptData(byte[] ciphertext, Cipher cipher) throws CryptoException;
+
+    /**
+     * Generates a random software data key. It is only ever persisted wrapped by [wrapDataKey].
+     */
+    byte[] generateDataKey() throws CryptoException;
+
+    /**
+     * The Cipher created with [getInitializedCipherForEncryption] is used here
+     */
+    EncryptedData wrapDataKey(byte[] dataKey, Cipher cipher) throws CryptoException;
+
     /**
      * The Cipher created with [getInitializedCipherForDecryption] is used here
      */
-    String decryptData(byte[] ciphertext, Cipher cipher) throws CryptoException;
+    byte[] unwrapDataKey(EncryptedData wrappedDataKey, Cipher cipher) throws CryptoException;
+
+    /**
+     * Encrypts with a data key returned by [generateDataKey] or [unwrapDataKey]
+     */
+    EncryptedData encryptData(String plaintext, byte[] dataKey) throws CryptoException;
+
+    /**
+     * Batch variant of [decryptData]: decrypts every entry with a data key returned by
+     * [unwrapDataKey], keeping the order of the given map.
+     */
+    Map<String, byte[]> decryptData(Map<String, EncryptedData> entries, byte[] dataKey) throws CryptoException;
+
+    /**
+     * Batch variant of [encryptData] with a data key: every plaintext gets its own IV, the key
+     * schedule is set up once.
+     */
+    EncryptedData[] encryptData(String[] plaintexts, byte[] dataKey) throws CryptoException;
+
+    /**
+     * Reverses the array variant of [encryptData], keeping the order.
+     */
+    String[] decryptData(EncryptedData[] records, byte[] dataKey) throws CryptoException;
+
+    /**
+     * Encrypts a stream of any length with a data key in fixed-size chunks, so memory use does not
+     * grow with the payload. Neither stream is closed.
+     */
+    void encryptStream(InputStream in, OutputStream out, byte[] dataKey) throws CryptoException;
+
+    /**
+     * Reverses [encryptStream]. Fails if any chunk was modified, reordered or cut off, or if data
+     * follows the final chunk.
+     */
+    void decryptStream(InputStream in, OutputStream out, byte[] dataKey) throws CryptoException;
+
+    /**
+     * Returns the public half of the EC signing key pair, generating the pair in the keystore first
+     * if it does not exist yet. The private key can only be used after a strong biometric prompt.
+     */
+    PublicKey getOrCreateSigningKey(String keyName, boolean invalidateOnEnrollment) throws CryptoException;
+
+    /**
+     * Initializes a Signature with the private signing key, to be unlocked by a prompt.
+     */
+    Signature getInitializedSignature(String keyName) throws CryptoException;
+
+    /**
+     * The Signature created with [getInitializedSignature] is used here
+     */
+    byte[] sign(byte[] data, Signature signature) throws CryptoException;
+
+    /**
+     * Signs a batch with the single operation a prompt unlocks: the signed message is the SHA-256
+     * digests of all payloads concatenated in order, which the verifier can rebuild from the
+     * payloads it issued.
+     */
+    byte[] signAll(byte[][] payloads, Signature signature) throws CryptoException;
 
 }
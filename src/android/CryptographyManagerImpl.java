@@ -6,33 +6,87 @@ import android.security.KeyPairGeneratorSpec;
 import android.security.keystore.KeyGenParameterSpec;
 import android.security.keystore.KeyPermanentlyInvalidatedException;
 import android.security.keystore.KeyProperties;
+import android.security.keystore.StrongBoxUnavailableException;
+import android.util.Log;
 import androidx.annotation.RequiresApi;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
 import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.cert.Certificate;
 import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 import javax.security.auth.x500.X500Principal;
 
 class CryptographyManagerImpl implements CryptographyManager {
 
+    private static final String TAG = "CryptographyManager";
+
     private static final int KEY_SIZE = 256;
     private static final String ANDROID_KEYSTORE = "AndroidKeyStore";
     private static final String ENCRYPTION_PADDING = "NoPadding"; // KeyProperties.ENCRYPTION_PADDING_NONE
     private static final String ENCRYPTION_ALGORITHM = "AES"; // KeyProperties.KEY_ALGORITHM_AES
     private static final String KEY_ALGORITHM_AES = "AES"; // KeyProperties.KEY_ALGORITHM_AES
     private static final String ENCRYPTION_BLOCK_MODE = "GCM"; // KeyProperties.BLOCK_MODE_GCM
+    private static final int GCM_TAG_LENGTH = 128;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int DATA_KEY_SIZE = KEY_SIZE / 8;
+
+    private static final String KEY_ALGORITHM_EC = "EC"; // KeyProperties.KEY_ALGORITHM_EC
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+    private static final String MANIFEST_DIGEST_ALGORITHM = "SHA-256";
+
+    private static final String TRANSFORMATION = ENCRYPTION_ALGORITHM + "/" + ENCRYPTION_BLOCK_MODE + "/" + ENCRYPTION_PADDING;
+
+    // Process-wide cache: loading the keystore and resolving keys are binder calls into keystore
+    private static KeyStore sKeyStore;
+    private static final Map<String, SecretKey> sSecretKeys = new ConcurrentHashMap<>();
+
+    private final SecureRandom mRandom = new SecureRandom();
+    // Only applies to keys generated by this instance, existing keys keep their backing
+    private final boolean mPreferStrongBox;
+
+    CryptographyManagerImpl() {
+        this(false);
+    }
+
+    CryptographyManagerImpl(boolean preferStrongBox) {
+        mPreferStrongBox = preferStrongBox;
+    }
 
     private Cipher getCipher() throws NoSuchPaddingException, NoSuchAlgorithmException {
-        String transformation = ENCRYPTION_ALGORITHM + "/" + ENCRYPTION_BLOCK_MODE + "/" + ENCRYPTION_PADDING;
-        return Cipher.getInstance(transformation);
+        return Cipher.getInstance(TRANSFORMATION);
+    }
+
+    private static synchronized KeyStore getKeyStore() throws GeneralSecurityException, IOException {
+        if (sKeyStore == null) {
+            KeyStore keyStore = KeyStore.getInstance(ANDROID_KEYSTORE);
+            keyStore.load(null); // Keystore must be loaded before it can be accessed
+            sKeyStore = keyStore;
+        }
+        return sKeyStore;
     }
 
     private SecretKey getOrCreateSecretKey(String keyName, boolean invalidateOnEnrollment, Context context) throws CryptoException {
@@ -67,15 +121,16 @@ class CryptographyManagerImpl implements CryptographyManager {
 
     @RequiresApi(api = Build.VERSION_CODES.M)
     private SecretKey getOrCreateSecretKeyNew(String keyName, boolean invalidateOnEnrollment) throws CryptoException {
+        SecretKey cachedKey = sSecretKeys.get(keyName);
+        if (cachedKey != null) {
+            return cachedKey;
+        }
         try {
             // If Secretkey was previously created for that keyName, then grab and return it.
-            KeyStore keyStore = KeyStore.getInstance(ANDROID_KEYSTORE);
-            keyStore.load(null); // Keystore must be loaded before it can be accessed
-
-
-            SecretKey key = (SecretKey) keyStore.getKey(keyName, null);
-            if (key != null) {
-                return key;
+            SecretKey storedKey = (SecretKey) getKeyStore().getKey(keyName, null);
+            if (storedKey != null) {
+                sSecretKeys.put(keyName, storedKey);
+                return storedKey;
             }
 
             // if you reach here, then a new SecretKey must be generated for that keyName
@@ -90,16 +145,49 @@ class CryptographyManagerImpl implements CryptographyManager {
                 keyGenParamsBuilder.setInvalidatedByBiometricEnrollment(invalidateOnEnrollment);
             }
 
-            KeyGenerator keyGenerator = KeyGenerator.getInstance(KEY_ALGORITHM_AES,
-                    ANDROID_KEYSTORE);
-            keyGenerator.init(keyGenParamsBuilder.build());
-
-            return keyGenerator.generateKey();
+            SecretKey key = generateSecretKey(keyGenParamsBuilder);
+            sSecretKeys.put(keyName, key);
+            return key;
         } catch (Exception e) {
             throw new CryptoException(e.getMessage(), e);
         }
     }
 
+    /**
+     * Generates the key in StrongBox if preferred and the device has one, otherwise in the TEE.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private SecretKey generateSecretKey(KeyGenParameterSpec.Builder keyGenParamsBuilder) throws GeneralSecurityException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance(KEY_ALGORITHM_AES, ANDROID_KEYSTORE);
+        if (mPreferStrongBox && Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            try {
+                keyGenerator.init(keyGenParamsBuilder.setIsStrongBoxBacked(true).build());
+                return keyGenerator.generateKey();
+            } catch (StrongBoxUnavailableException e) {
+                Log.w(TAG, "StrongBox unavailable, generating key in TEE");
+                keyGenParamsBuilder.setIsStrongBoxBacked(false);
+            }
+        }
+        keyGenerator.init(keyGenParamsBuilder.build());
+        return keyGenerator.generateKey();
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private KeyPair generateKeyPair(KeyGenParameterSpec.Builder keyGenParamsBuilder) throws GeneralSecurityException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(KEY_ALGORITHM_EC, ANDROID_KEYSTORE);
+        if (mPreferStrongBox && Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            try {
+                keyPairGenerator.initialize(keyGenParamsBuilder.setIsStrongBoxBacked(true).build());
+                return keyPairGenerator.generateKeyPair();
+            } catch (StrongBoxUnavailableException e) {
+                Log.w(TAG, "StrongBox unavailable, generating key pair in TEE");
+                keyGenParamsBuilder.setIsStrongBoxBacked(false);
+            }
+        }
+        keyPairGenerator.initialize(keyGenParamsBuilder.build());
+        return keyPairGenerator.generateKeyPair();
+    }
+
     @Override
     public Cipher getInitializedCipherForEncryption(String keyName, boolean invalidateOnEnrollment, Context context) throws CryptoException {
         try {
@@ -130,7 +218,7 @@ class CryptographyManagerImpl implements CryptographyManager {
         try {
             Cipher cipher = getCipher();
             SecretKey secretKey = getOrCreateSecretKey(keyName, true, context);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(128, initializationVector));
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(GCM_TAG_LENGTH, initializationVector));
             return cipher;
         } catch (Exception e) {
             handleException(e, keyName);
@@ -138,11 +226,120 @@ class CryptographyManagerImpl implements CryptographyManager {
         }
     }
 
+    @Override
+    public void provisionKey(String keyName, boolean invalidateOnEnrollment, Context context) throws CryptoException {
+        // The legacy path generates a fresh key on every call and would replace the existing one
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            getOrCreateSecretKeyNew(keyName, invalidateOnEnrollment);
+        }
+    }
+
+    @Override
+    public boolean isKeyUsable(String keyName, byte[] initializationVector) throws CryptoException {
+        try {
+            KeyStore keyStore = getKeyStore();
+            if (!keyStore.containsAlias(keyName)) {
+                return false;
+            }
+            Cipher cipher = getCipher();
+            cipher.init(Cipher.DECRYPT_MODE, (SecretKey) keyStore.getKey(keyName, null),
+                    new GCMParameterSpec(GCM_TAG_LENGTH, initializationVector));
+            return true;
+        } catch (Exception e) {
+            try {
+                handleException(e, keyName);
+            } catch (KeyInvalidatedException kie) {
+                return false;
+            }
+            throw new CryptoException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void deleteKey(String keyName) throws CryptoException {
+        removeKey(keyName);
+    }
+
+    @Override
+    public String getKeyBacking(String keyName) throws CryptoException {
+        try {
+            Key key = getKeyStore().getKey(keyName, null);
+            return key == null ? null : KeyBacking.of(key);
+        } catch (Exception e) {
+            throw new CryptoException(e.getMessage(), e);
+        }
+    }
+
     private void removeKey(String keyName) throws CryptoException {
+        sSecretKeys.remove(keyName);
         try {
-            KeyStore keyStore = KeyStore.getInstance(ANDROID_KEYSTORE);
-            keyStore.load(null); // Keystore must be loaded before it can be accessed
-            keyStore.deleteEntry(keyName);
+            getKeyStore().deleteEntry(keyName);
+        } catch (Exception e) {
+            throw new CryptoException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public PublicKey getOrCreateSigningKey(String keyName, boolean invalidateOnEnrollment) throws CryptoException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            throw new CryptoException(PluginError.BIOMETRIC_HARDWARE_NOT_SUPPORTED);
+        }
+        try {
+            Certificate certificate = getKeyStore().getCertificate(keyName);
+            if (certificate != null) {
+                return certificate.getPublicKey();
+            }
+            KeyGenParameterSpec.Builder keyGenParamsBuilder = new KeyGenParameterSpec.Builder(keyName,
+                    KeyProperties.PURPOSE_SIGN)
+                    .setDigests(KeyProperties.DIGEST_SHA256)
+                    .setUserAuthenticationRequired(true);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                keyGenParamsBuilder.setInvalidatedByBiometricEnrollment(invalidateOnEnrollment);
+            }
+
+            return generateKeyPair(keyGenParamsBuilder).getPublic();
+        } catch (Exception e) {
+            throw new CryptoException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Signature getInitializedSignature(String keyName) throws CryptoException {
+        try {
+            PrivateKey privateKey = (PrivateKey) getKeyStore().getKey(keyName, null);
+            if (privateKey == null) {
+                throw new CryptoException(PluginError.BIOMETRIC_NO_SECRET_FOUND);
+            }
+            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            signature.initSign(privateKey);
+            return signature;
+        } catch (CryptoException e) {
+            throw e;
+        } catch (Exception e) {
+            handleException(e, keyName);
+            throw new CryptoException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public byte[] sign(byte[] data, Signature signature) throws CryptoException {
+        try {
+            signature.update(data);
+            return signature.sign();
+        } catch (Exception e) {
+            throw new CryptoException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public byte[] signAll(byte[][] payloads, Signature signature) throws CryptoException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(MANIFEST_DIGEST_ALGORITHM);
+            for (byte[] payload : payloads) {
+                signature.update(digest.digest(payload));
+            }
+            return signature.sign();
         } catch (Exception e) {
             throw new CryptoException(e.getMessage(), e);
         }
@@ -159,10 +356,120 @@ class CryptographyManagerImpl implements CryptographyManager {
     }
 
     @Override
-    public String decryptData(byte[] ciphertext, Cipher cipher) throws CryptoException {
+    public byte[] decryptData(byte[] ciphertext, Cipher cipher) throws CryptoException {
+        try {
+            return cipher.doFinal(ciphertext);
+        } catch (Exception e) {
+            throw new CryptoException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public byte[] generateDataKey() {
+        byte[] dataKey = new byte[DATA_KEY_SIZE];
+        mRandom.nextBytes(dataKey);
+        return dataKey;
+    }
+
+    @Override
+    public EncryptedData wrapDataKey(byte[] dataKey, Cipher cipher) throws CryptoException {
+        try {
+            return new EncryptedData(cipher.doFinal(dataKey), cipher.getIV());
+        } catch (Exception e) {
+            throw new CryptoException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public byte[] unwrapDataKey(EncryptedData wrappedDataKey, Cipher cipher) throws CryptoException {
+        try {
+            return cipher.doFinal(wrappedDataKey.getCiphertext());
+        } catch (Exception e) {
+            throw new CryptoException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public EncryptedData encryptData(String plaintext, byte[] dataKey) throws CryptoException {
+        try {
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            mRandom.nextBytes(iv);
+            Cipher cipher = getCipher();
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(dataKey, KEY_ALGORITHM_AES),
+                    new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+            byte[] ciphertext = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+            return new EncryptedData(ciphertext, iv);
+        } catch (Exception e) {
+            throw new CryptoException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Map<String, byte[]> decryptData(Map<String, EncryptedData> entries, byte[] dataKey) throws CryptoException {
+        try {
+            SecretKeySpec key = new SecretKeySpec(dataKey, KEY_ALGORITHM_AES);
+            Cipher cipher = getCipher();
+            Map<String, byte[]> plaintexts = new LinkedHashMap<>();
+            for (Map.Entry<String, EncryptedData> entry : entries.entrySet()) {
+                EncryptedData data = entry.getValue();
+                cipher.init(Cipher.DECRYPT_MODE, key,
+                        new GCMParameterSpec(GCM_TAG_LENGTH, data.getInitializationVector()));
+                plaintexts.put(entry.getKey(), cipher.doFinal(data.getCiphertext()));
+            }
+            return plaintexts;
+        } catch (Exception e) {
+            throw new CryptoException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public EncryptedData[] encryptData(String[] plaintexts, byte[] dataKey) throws CryptoException {
+        try {
+            SecretKeySpec key = new SecretKeySpec(dataKey, KEY_ALGORITHM_AES);
+            Cipher cipher = getCipher();
+            EncryptedData[] records = new EncryptedData[plaintexts.length];
+            for (int i = 0; i < plaintexts.length; i++) {
+                byte[] iv = new byte[GCM_IV_LENGTH];
+                mRandom.nextBytes(iv);
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+                records[i] = new EncryptedData(cipher.doFinal(plaintexts[i].getBytes(StandardCharsets.UTF_8)), iv);
+            }
+            return records;
+        } catch (Exception e) {
+            throw new CryptoException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String[] decryptData(EncryptedData[] records, byte[] dataKey) throws CryptoException {
+        try {
+            SecretKeySpec key = new SecretKeySpec(dataKey, KEY_ALGORITHM_AES);
+            Cipher cipher = getCipher();
+            String[] plaintexts = new String[records.length];
+            for (int i = 0; i < records.length; i++) {
+                cipher.init(Cipher.DECRYPT_MODE, key,
+                        new GCMParameterSpec(GCM_TAG_LENGTH, records[i].getInitializationVector()));
+                plaintexts[i] = new String(cipher.doFinal(records[i].getCiphertext()), StandardCharsets.UTF_8);
+            }
+            return plaintexts;
+        } catch (Exception e) {
+            throw new CryptoException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void encryptStream(InputStream in, OutputStream out, byte[] dataKey) throws CryptoException {
+        try {
+            ChunkedStream.encrypt(in, out, dataKey, mRandom);
+        } catch (Exception e) {
+            throw new CryptoException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void decryptStream(InputStream in, OutputStream out, byte[] dataKey) throws CryptoException {
         try {
-            byte[] plaintext = cipher.doFinal(ciphertext);
-            return new String(plaintext, StandardCharsets.UTF_8);
+            ChunkedStream.decrypt(in, out, dataKey);
         } catch (Exception e) {
             throw new CryptoException(e.getMessage(), e);
         }
@@ -0,0 +1,82 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the unwrapped vault data key in memory after a prompt for calls that opt in with
+ * keepUnlockedMs, so any number of records or files can be encrypted without another prompt.
+ * Unlike AuthSession the window is an idle timeout: every use extends it. The key is zeroed when
+ * it expires or is locked.
+ */
+final class DataKeyHolder {
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+    private static final Runnable sExpiryCheck = DataKeyHolder::clearIfIdle;
+
+    private static byte[] sDataKey = null;
+    private static long sIdleTimeoutMs = 0;
+    private static long sLastUsedAt = 0;
+
+    private DataKeyHolder() {
+    }
+
+    /**
+     * Holds a copy of the key, replacing any key held before.
+     */
+    static synchronized void hold(byte[] dataKey, long idleTimeoutMs) {
+        if (idleTimeoutMs <= 0) {
+            return;
+        }
+        clear();
+        sDataKey = Arrays.copyOf(dataKey, dataKey.length);
+        sIdleTimeoutMs = idleTimeoutMs;
+        sLastUsedAt = SystemClock.elapsedRealtime();
+        sHandler.postDelayed(sExpiryCheck, idleTimeoutMs);
+    }
+
+    /**
+     * A copy of the held key, or null if none is held. Counts as a use. Callers must zero the copy.
+     */
+    static synchronized byte[] acquire() {
+        if (sDataKey == null) {
+            return null;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (now - sLastUsedAt >= sIdleTimeoutMs) {
+            clear();
+            return null;
+        }
+        sLastUsedAt = now;
+        return Arrays.copyOf(sDataKey, sDataKey.length);
+    }
+
+    static synchronized boolean isUnlocked() {
+        return sDataKey != null && SystemClock.elapsedRealtime() - sLastUsedAt < sIdleTimeoutMs;
+    }
+
+    static synchronized void clear() {
+        sHandler.removeCallbacks(sExpiryCheck);
+        if (sDataKey != null) {
+            Arrays.fill(sDataKey, (byte) 0);
+            sDataKey = null;
+        }
+        sIdleTimeoutMs = 0;
+        sLastUsedAt = 0;
+    }
+
+    private static synchronized void clearIfIdle() {
+        if (sDataKey == null) {
+            return;
+        }
+        long idle = SystemClock.elapsedRealtime() - sLastUsedAt;
+        if (idle >= sIdleTimeoutMs) {
+            clear();
+        } else {
+            sHandler.postDelayed(sExpiryCheck, sIdleTimeoutMs - idle);
+        }
+    }
+}
@@ -1,14 +1,13 @@
 package de.niklasmerz.cordova.biometric;
 
-import android.content.Context;
-import android.content.SharedPreferences;
-import android.preference.PreferenceManager;
 import android.util.Base64;
 
+import java.util.Arrays;
+
 class EncryptedData {
 
-    private static final String CIPHERTEXT_KEY_NAME = "__biometric-aio-ciphertext";
-    private static final String IV_KEY_NAME = "__biometric-aio-iv";
+    // IV length of records encrypted with the software data key
+    private static final int RECORD_IV_LENGTH = 12;
 
     private byte[] ciphertext;
     private byte[] initializationVector;
@@ -18,30 +17,33 @@ class EncryptedData {
         this.initializationVector = initializationVector;
     }
 
-    static byte[] loadInitializationVector(Context context) throws CryptoException {
-        return load(IV_KEY_NAME, context);
-    }
-
-    static byte[] loadCiphertext(Context context) throws CryptoException {
-        return load(CIPHERTEXT_KEY_NAME, context);
+    byte[] getCiphertext() {
+        return ciphertext;
     }
 
-    void save(Context context) {
-        save(IV_KEY_NAME, initializationVector, context);
-        save(CIPHERTEXT_KEY_NAME, ciphertext, context);
+    byte[] getInitializationVector() {
+        return initializationVector;
     }
 
-    private void save(String key, byte[] value, Context context) {
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
-        preferences.edit()
-                .putString(key, Base64.encodeToString(value, Base64.DEFAULT))
-                .apply();
+    /**
+     * Single-string form handed to JS by encryptRecords: Base64 of the IV followed by the ciphertext.
+     */
+    String toRecord() {
+        byte[] record = Arrays.copyOf(initializationVector, initializationVector.length + ciphertext.length);
+        System.arraycopy(ciphertext, 0, record, initializationVector.length, ciphertext.length);
+        return Base64.encodeToString(record, Base64.NO_WRAP);
     }
 
-    private static byte[] load(String key, Context context) throws CryptoException {
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
-        String res = preferences.getString(key, null);
-        if (res == null) throw new CryptoException(PluginError.BIOMETRIC_NO_SECRET_FOUND);
-        return Base64.decode(res, Base64.DEFAULT);
+    /**
+     * @throws IllegalArgumentException if the record is not valid Base64 or too short
+     */
+    static EncryptedData fromRecord(String record) {
+        byte[] bytes = Base64.decode(record, Base64.NO_WRAP);
+        if (bytes.length <= RECORD_IV_LENGTH) {
+            throw new IllegalArgumentException("Record too short");
+        }
+        return new EncryptedData(
+                Arrays.copyOfRange(bytes, RECORD_IV_LENGTH, bytes.length),
+                Arrays.copyOf(bytes, RECORD_IV_LENGTH));
     }
 }
@@ -0,0 +1,73 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds stored secrets whose keystore key was invalidated, by a new biometric enrollment with
+ * invalidateOnEnrollment or by removing the lock screen, before a prompt runs into it. Initializing
+ * a decryption cipher needs no authentication but fails right away for an invalidated key, so
+ * probing costs a keystore call per key and shows nothing to the user. A key that is gone while
+ * its ciphertext is still stored, e.g. deleted by an earlier failed prompt, counts as invalidated.
+ */
+final class EnrollmentProbe {
+
+    private static final String TAG = "EnrollmentProbe";
+
+    private EnrollmentProbe() {
+    }
+
+    /**
+     * Probes the default slot key and the vault key and removes the slots they can no longer
+     * decrypt. Returns the removed slots, empty if everything is still readable. Blocks on the
+     * keystore, so call it off the UI thread.
+     */
+    static List<String> run(Context context) {
+        List<String> invalidated = new ArrayList<>();
+        // Keys can only be invalidated from M on
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return invalidated;
+        }
+        SecretVault vault = SecretVault.get(context);
+        CryptographyManager cryptographyManager = new CryptographyManagerImpl();
+        // Every vault write bumps the revision. Reading it before the state that is probed and
+        // clearing only if it is unchanged keeps a concurrent rotation, which deletes the previous
+        // alias right after replacing it, from being mistaken for an invalidated key.
+        long revision = vault.getRevision();
+        if (vault.contains(SecretVault.DEFAULT_SLOT)) {
+            try {
+                EncryptedData data = vault.load(SecretVault.DEFAULT_SLOT);
+                if (isInvalidated(cryptographyManager, vault.keyAlias(SecretVault.DEFAULT_SLOT), data)
+                        && vault.removeIfUnchanged(SecretVault.DEFAULT_SLOT, revision)) {
+                    invalidated.add(SecretVault.DEFAULT_SLOT);
+                }
+            } catch (CryptoException e) {
+                Log.e(TAG, "Failed to probe the default slot", e);
+            }
+        }
+        revision = vault.getRevision();
+        EncryptedData wrappedDataKey = vault.loadWrappedDataKey();
+        String vaultKeyAlias = vault.getVaultKeyAlias();
+        if (wrappedDataKey != null && isInvalidated(cryptographyManager, vaultKeyAlias, wrappedDataKey)) {
+            List<String> removed = vault.clearWrappedSlotsIfUnchanged(revision);
+            if (removed != null) {
+                invalidated.addAll(removed);
+            }
+        }
+        return invalidated;
+    }
+
+    private static boolean isInvalidated(CryptographyManager cryptographyManager, String keyName,
+                                         EncryptedData data) {
+        try {
+            return !cryptographyManager.isKeyUsable(keyName, data.getInitializationVector());
+        } catch (CryptoException e) {
+            Log.e(TAG, "Failed to probe " + keyName, e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package de.niklasmerz.cordova.biometric;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+/**
+ * Encrypts and decrypts files with the vault data key for the encryptFile and decryptFile
+ * actions. Files are streamed through CryptographyManager in chunks, so their size is not limited
+ * by the heap, and only paths cross the Cordova bridge.
+ */
+final class FileCrypto {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final CryptographyManager mCryptographyManager;
+
+    FileCrypto(CryptographyManager cryptographyManager) {
+        mCryptographyManager = cryptographyManager;
+    }
+
+    /**
+     * Accepts plain paths as well as file:// URLs.
+     */
+    static File toFile(String path) {
+        if (path.startsWith("file:")) {
+            return new File(URI.create(path));
+        }
+        return new File(path);
+    }
+
+    void encrypt(File input, File output, byte[] dataKey) throws CryptoException {
+        process(input, output, dataKey, true);
+    }
+
+    void decrypt(File input, File output, byte[] dataKey) throws CryptoException {
+        process(input, output, dataKey, false);
+    }
+
+    /**
+     * Writes next to the output and renames on success, so a failed or tampered decryption never
+     * leaves partial plaintext at the output path.
+     */
+    private void process(File input, File output, byte[] dataKey, boolean encrypt) throws CryptoException {
+        File temp = new File(output.getPath() + TEMP_SUFFIX);
+        try {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(input), BUFFER_SIZE);
+                 OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE)) {
+                if (encrypt) {
+                    mCryptographyManager.encryptStream(in, out, dataKey);
+                } else {
+                    mCryptographyManager.decryptStream(in, out, dataKey);
+                }
+            }
+            if (!temp.renameTo(output)) {
+                throw new IOException("Cannot write " + output);
+            }
+        } catch (IOException e) {
+            throw new CryptoException(e.getMessage(), e);
+        } finally {
+            if (temp.exists() && !temp.delete()) {
+                temp.deleteOnExit();
+            }
+        }
+    }
+}
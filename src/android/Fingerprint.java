@@ -7,10 +7,12 @@ import android.app.Activity;
 import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
+import android.util.Base64;
 import android.util.Log;
 
 
 import androidx.biometric.BiometricManager;
+import androidx.fragment.app.FragmentActivity;
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaPlugin;
@@ -20,150 +22,824 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
 public class Fingerprint extends CordovaPlugin {
 
     private static final String TAG = "Fingerprint";
     private static final int REQUEST_CODE_BIOMETRIC = 1;
 
-    private CallbackContext mCallbackContext = null;
-    private PromptInfo.Builder mPromptInfoBuilder;
+    // Read once, every prompt gets a fresh PromptInfo.Builder so no option leaks into the next call
+    private String mApplicationLabel;
+    // Prompt requests run one at a time in arrival order; the active one owns BiometricActivity
+    private final Deque<BiometricRequest> mPendingRequests = new ArrayDeque<>();
+    private BiometricRequest mActiveRequest = null;
+    // Set while the active request's prompt is hosted on the Cordova activity itself
+    private BiometricPromptController mActiveController = null;
 
     public void initialize(CordovaInterface cordova, CordovaWebView webView) {
         super.initialize(cordova, webView);
         Log.v(TAG, "Init Fingerprint");
-        mPromptInfoBuilder = new PromptInfo.Builder(
-            this.getApplicationLabel(cordova.getActivity())
-        );
+        mApplicationLabel = getApplicationLabel(cordova.getActivity());
     }
 
-    public boolean execute(final String action, JSONArray args, CallbackContext callbackContext) {
+    public boolean execute(final String action, JSONArray jsonArgs, CallbackContext callbackContext) {
 
-        this.mCallbackContext = callbackContext;
         Log.v(TAG, "Fingerprint action: " + action);
 
+        Args args = new Args(jsonArgs);
+        if (args.getError() != null) {
+            Log.e(TAG, "Rejecting " + action + ": " + args.getError());
+            sendError(new BiometricRequest(action, args, null, callbackContext),
+                    PluginError.BIOMETRIC_ARGS_PARSING_FAILED.getValue(), args.getError());
+            return true;
+        }
+
         if ("authenticate".equals(action)) {
-            executeAuthenticate(args);
+            executeAuthenticate(new BiometricRequest(action, args,
+                    BiometricActivityType.JUST_AUTHENTICATE, callbackContext));
             return true;
 
         } else if ("registerBiometricSecret".equals(action)) {
-             executeRegisterBiometricSecret(args);
+             executeRegisterBiometricSecret(new BiometricRequest(action, args,
+                     BiometricActivityType.REGISTER_SECRET, callbackContext));
              return true;
 
          } else if ("loadBiometricSecret".equals(action)) {
-             executeLoadBiometricSecret(args);
+             executeLoadBiometricSecret(new BiometricRequest(action, args,
+                     BiometricActivityType.LOAD_SECRET, callbackContext));
              return true;
 
          } else if ("isAvailable".equals(action)) {
-            executeIsAvailable(args);
+            executeIsAvailable(new BiometricRequest(action, args, null, callbackContext));
+            return true;
+
+        } else if ("prepare".equals(action)) {
+            executePrepare(new BiometricRequest(action, args, null, callbackContext));
+            return true;
+
+        } else if ("encryptFile".equals(action) || "decryptFile".equals(action)
+                || "encryptRecords".equals(action) || "decryptRecords".equals(action)
+                || "unlockDataKey".equals(action)) {
+            executeWithDataKey(new BiometricRequest(action, args,
+                    BiometricActivityType.UNLOCK_DATA_KEY, callbackContext));
+            return true;
+
+        } else if ("lockDataKey".equals(action)) {
+            DataKeyHolder.clear();
+            callbackContext.success("locked");
+            return true;
+
+        } else if ("createSigningKey".equals(action)) {
+            executeCreateSigningKey(new BiometricRequest(action, args, null, callbackContext));
+            return true;
+
+        } else if ("signChallenge".equals(action)) {
+            executeSignChallenge(new BiometricRequest(action, args,
+                    BiometricActivityType.SIGN, callbackContext));
+            return true;
+
+        } else if ("provisionKeys".equals(action)) {
+            executeProvisionKeys(new BiometricRequest(action, args, null, callbackContext));
+            return true;
+
+        } else if ("rotateKeys".equals(action)) {
+            executeRotateKeys(new BiometricRequest(action, args,
+                    BiometricActivityType.ROTATE_VAULT_KEY, callbackContext));
+            return true;
+
+        } else if ("getMetrics".equals(action)) {
+            executeGetMetrics(args, callbackContext);
+            return true;
+
+        } else if ("checkSecrets".equals(action)) {
+            executeCheckSecrets(new BiometricRequest(action, args, null, callbackContext));
+            return true;
+
+        } else if ("setEventListener".equals(action)) {
+            PluginEvents.setListener(callbackContext);
             return true;
 
         }
         return false;
     }
 
-    private void executeIsAvailable(JSONArray args) {
-        boolean requireStrongBiometrics = new Args(args).getBoolean("requireStrongBiometrics", false);
+    private void executeIsAvailable(BiometricRequest request) {
+        Args args = request.getArgs();
+        boolean requireStrongBiometrics = args.getBoolean("requireStrongBiometrics", false);
         PluginError error = canAuthenticate(requireStrongBiometrics);
+        String type = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P ? "biometric" : "finger";
         if (error != null) {
-            sendError(error);
-        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P){
-            sendSuccess("biometric");
+            sendError(request, error);
+        } else if (args.getBoolean("reportKeyBacking", false)) {
+            cordova.getThreadPool().execute(() -> sendKeyBacking(request, type));
         } else {
-            sendSuccess("finger");
+            sendSuccess(request, type);
         }
     }
-    private void executeRegisterBiometricSecret(JSONArray args) {
+
+    /**
+     * Reports where the plugin's keys live and the measured keystore latency, so the app can
+     * decide per key whether to pass preferStrongBox.
+     */
+    private void sendKeyBacking(BiometricRequest request, String type) {
+        Context context = cordova.getActivity().getApplicationContext();
+        SecretVault vault = SecretVault.get(context);
+        CryptographyManager cryptographyManager = new CryptographyManagerImpl();
+        try {
+            JSONObject keys = new JSONObject();
+            keys.putOpt("secret", cryptographyManager.getKeyBacking(vault.keyAlias(SecretVault.DEFAULT_SLOT)));
+            keys.putOpt("vault", cryptographyManager.getKeyBacking(vault.getVaultKeyAlias()));
+            keys.putOpt("signing", cryptographyManager.getKeyBacking(SecretVault.SIGNING_KEY));
+            JSONObject result = new JSONObject();
+            result.put("type", type);
+            result.put("strongBox", KeyBacking.isStrongBoxAvailable(context));
+            result.put("keys", keys);
+            result.put("latency", KeyBacking.measureLatency(context));
+            sendSuccess(request, result);
+        } catch (CryptoException e) {
+            sendError(request, e.getError().getValue(), e.getMessage());
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage(), e);
+            sendError(request, PluginError.BIOMETRIC_UNKNOWN_ERROR);
+        }
+    }
+    private void executeRegisterBiometricSecret(BiometricRequest request) {
         // should at least contains the secret
-        if (args == null) {
-            sendError(PluginError.BIOMETRIC_ARGS_PARSING_FAILED);
+        if (request.getArgs().getString("secret", null) == null) {
+            sendError(request, PluginError.BIOMETRIC_ARGS_PARSING_FAILED);
             return;
         }
-        this.runBiometricActivity(args, BiometricActivityType.REGISTER_SECRET);
+        enqueue(request);
     }
 
-    private void executeLoadBiometricSecret(JSONArray args) {
-        this.runBiometricActivity(args, BiometricActivityType.LOAD_SECRET);
+    private void executeLoadBiometricSecret(BiometricRequest request) {
+        if (hasEmptySlots(request.getArgs())) {
+            sendError(request, PluginError.BIOMETRIC_ARGS_PARSING_FAILED);
+            return;
+        }
+        if (loadBiometricSecretFromSession(request)) {
+            return;
+        }
+        enqueue(request);
     }
 
-    private void executeAuthenticate(JSONArray args) {
-        this.runBiometricActivity(args, BiometricActivityType.JUST_AUTHENTICATE);
+    /**
+     * A batch needs at least one slot; an empty one would have no key to build the cipher with.
+     */
+    private boolean hasEmptySlots(Args args) {
+        String[] slots = args.getStringArray("slots", null);
+        return slots != null && slots.length == 0;
     }
 
-    private boolean determineStrongBiometricsRequired(BiometricActivityType type) {
-        return type == BiometricActivityType.REGISTER_SECRET || type == BiometricActivityType.LOAD_SECRET;
+    /**
+     * Calls that work with the vault data key use the key kept unlocked by keepUnlockedMs or an
+     * active session, and only prompt if neither is available.
+     */
+    private void executeWithDataKey(BiometricRequest request) {
+        Args args = request.getArgs();
+        if (!hasDataKeyArgs(request.getAction(), args)) {
+            sendError(request, PluginError.BIOMETRIC_ARGS_PARSING_FAILED);
+            return;
+        }
+        byte[] dataKey = DataKeyHolder.acquire();
+        if (dataKey == null) {
+            dataKey = AuthSession.getDataKey(args.getInt("sessionTtlMs", 0));
+        }
+        if (dataKey != null) {
+            runWithDataKey(request, dataKey);
+            return;
+        }
+        enqueue(request);
     }
 
-    private JSONArray applyDefaultMaxAttempts(JSONArray args) {
-        int defaultAttempts = 5;
-        try {
-            if (args == null) {
-                args = new JSONArray();
+    private boolean hasDataKeyArgs(String action, Args args) {
+        switch (action) {
+            case "encryptFile":
+            case "decryptFile":
+                return args.getString("inputPath", null) != null
+                        && args.getString("outputPath", null) != null;
+            case "encryptRecords":
+            case "decryptRecords":
+                return args.getStringArray("records", null) != null;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Does the work of a data key request. Takes ownership of the key and zeroes it.
+     */
+    private void runWithDataKey(BiometricRequest request, byte[] dataKey) {
+        switch (request.getAction()) {
+            case "encryptFile":
+            case "decryptFile":
+                runFileCrypto(request, dataKey);
+                return;
+            case "encryptRecords":
+            case "decryptRecords":
+                runRecordCrypto(request, dataKey);
+                return;
+            default:
+                Arrays.fill(dataKey, (byte) 0);
+                sendSuccess(request, "unlocked");
+        }
+    }
+
+    /**
+     * Encrypts or decrypts a list of strings with the data key in software, on the thread pool.
+     * Encrypted records are single Base64 strings that can be stored anywhere, e.g. a database.
+     */
+    private void runRecordCrypto(BiometricRequest request, byte[] dataKey) {
+        String[] records = request.getArgs().getStringArray("records", new String[0]);
+        boolean encrypt = "encryptRecords".equals(request.getAction());
+        cordova.getThreadPool().execute(() -> {
+            try {
+                CryptographyManager cryptographyManager = new CryptographyManagerImpl();
+                String[] results;
+                if (encrypt) {
+                    EncryptedData[] encrypted = cryptographyManager.encryptData(records, dataKey);
+                    results = new String[encrypted.length];
+                    for (int i = 0; i < encrypted.length; i++) {
+                        results[i] = encrypted[i].toRecord();
+                    }
+                } else {
+                    EncryptedData[] encrypted = new EncryptedData[records.length];
+                    for (int i = 0; i < records.length; i++) {
+                        encrypted[i] = EncryptedData.fromRecord(records[i]);
+                    }
+                    results = cryptographyManager.decryptData(encrypted, dataKey);
+                }
+                AuthMetrics.record(request.getId(), AuthMetrics.Phase.CRYPTO_DONE, "records");
+                PluginEvents.progress(request.getId(), AuthMetrics.Phase.CRYPTO_DONE, "records");
+                sendSuccess(request, results);
+            } catch (CryptoException e) {
+                sendError(request, e.getError().getValue(), e.getMessage());
+            } catch (IllegalArgumentException e) {
+                sendError(request, PluginError.BIOMETRIC_ARGS_PARSING_FAILED);
+            } finally {
+                Arrays.fill(dataKey, (byte) 0);
             }
-            JSONObject obj;
-            if (args.length() > 0) {
-                obj = args.getJSONObject(0);
-            } else {
-                obj = new JSONObject();
-                args.put(obj);
+        });
+    }
+
+    /**
+     * Streams the file on the thread pool and zeroes the data key afterwards. The result is the
+     * path of the written file.
+     */
+    private void runFileCrypto(BiometricRequest request, byte[] dataKey) {
+        Args args = request.getArgs();
+        String inputPath = args.getString("inputPath", null);
+        String outputPath = args.getString("outputPath", null);
+        boolean encrypt = "encryptFile".equals(request.getAction());
+        cordova.getThreadPool().execute(() -> {
+            try {
+                File output = FileCrypto.toFile(outputPath);
+                FileCrypto fileCrypto = new FileCrypto(new CryptographyManagerImpl());
+                if (encrypt) {
+                    fileCrypto.encrypt(FileCrypto.toFile(inputPath), output, dataKey);
+                } else {
+                    fileCrypto.decrypt(FileCrypto.toFile(inputPath), output, dataKey);
+                }
+                AuthMetrics.record(request.getId(), AuthMetrics.Phase.CRYPTO_DONE, "file");
+                PluginEvents.progress(request.getId(), AuthMetrics.Phase.CRYPTO_DONE, "file");
+                sendSuccess(request, output.getAbsolutePath());
+            } catch (CryptoException e) {
+                sendError(request, e.getError().getValue(), e.getMessage());
+            } catch (IllegalArgumentException e) {
+                sendError(request, PluginError.BIOMETRIC_ARGS_PARSING_FAILED);
+            } finally {
+                Arrays.fill(dataKey, (byte) 0);
             }
-            if (!obj.has("maxAttempts")) {
-                obj.put("maxAttempts", defaultAttempts);
+        });
+    }
+
+    /**
+     * Returns the Base64 encoded X.509 public key of the signing key pair, creating the pair if
+     * needed. Key generation can take a while in secure hardware, so it runs on the thread pool.
+     */
+    private void executeCreateSigningKey(BiometricRequest request) {
+        Args args = request.getArgs();
+        boolean invalidateOnEnrollment = args.getBoolean("invalidateOnEnrollment", false);
+        boolean preferStrongBox = args.getBoolean("preferStrongBox", false);
+        cordova.getThreadPool().execute(() -> {
+            try {
+                byte[] publicKey = new CryptographyManagerImpl(preferStrongBox)
+                        .getOrCreateSigningKey(SecretVault.SIGNING_KEY, invalidateOnEnrollment)
+                        .getEncoded();
+                sendSuccess(request, Base64.encodeToString(publicKey, Base64.NO_WRAP));
+            } catch (CryptoException e) {
+                sendError(request, e.getError().getValue(), e.getMessage());
             }
-        } catch (Exception ignored) {}
-        return args;
+        });
     }
 
-    private void runBiometricActivity(JSONArray args, BiometricActivityType type) {
-        boolean requireStrongBiometrics = determineStrongBiometricsRequired(type);
-        PluginError error = canAuthenticate(requireStrongBiometrics);
-        if (error != null) {
-            sendError(error);
+    private void executeSignChallenge(BiometricRequest request) {
+        Args args = request.getArgs();
+        String[] challenges = args.getStringArray("challenges", null);
+        if ((challenges == null && args.getString("challenge", null) == null)
+                || (challenges != null && challenges.length == 0)) {
+            sendError(request, PluginError.BIOMETRIC_ARGS_PARSING_FAILED);
+            return;
+        }
+        enqueue(request);
+    }
+
+    /**
+     * Generates the keystore keys ahead of the first prompt that needs them. Key generation can
+     * take hundreds of milliseconds, especially on secure hardware.
+     */
+    private void executeProvisionKeys(BiometricRequest request) {
+        Args args = request.getArgs();
+        boolean invalidateOnEnrollment = args.getBoolean("invalidateOnEnrollment", false);
+        boolean preferStrongBox = args.getBoolean("preferStrongBox", false);
+        Context context = cordova.getActivity().getApplicationContext();
+        cordova.getThreadPool().execute(() -> {
+            SecretVault vault = SecretVault.get(context);
+            CryptographyManager cryptographyManager = new CryptographyManagerImpl(preferStrongBox);
+            try {
+                cryptographyManager.provisionKey(vault.keyAlias(SecretVault.DEFAULT_SLOT),
+                        invalidateOnEnrollment, context);
+                cryptographyManager.provisionKey(vault.getVaultKeyAlias(), invalidateOnEnrollment, context);
+                sendSuccess(request, "provisioned");
+            } catch (CryptoException e) {
+                sendError(request, e.getError().getValue(), e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Rewraps the vault data key with a new keystore key. The data key has to be unlocked already,
+     * the prompt only authorizes the new key. Its key is generated off the UI thread first.
+     */
+    private void executeRotateKeys(BiometricRequest request) {
+        Args args = request.getArgs();
+        if (!DataKeyHolder.isUnlocked() && !hasSessionDataKey(args.getInt("sessionTtlMs", 0))) {
+            sendError(request, PluginError.BIOMETRIC_DATA_KEY_LOCKED);
             return;
         }
-        final JSONArray finalArgs = applyDefaultMaxAttempts(args);
-        cordova.getActivity().runOnUiThread(() -> {
-            mPromptInfoBuilder.parseArgs(finalArgs, type);
-            Intent intent = new Intent(cordova.getActivity().getApplicationContext(), BiometricActivity.class);
-            intent.putExtras(mPromptInfoBuilder.build().getBundle());
-            this.cordova.startActivityForResult(this, intent, REQUEST_CODE_BIOMETRIC);
+        boolean invalidateOnEnrollment = args.getBoolean("invalidateOnEnrollment", false);
+        boolean preferStrongBox = args.getBoolean("preferStrongBox", false);
+        Context context = cordova.getActivity().getApplicationContext();
+        cordova.getThreadPool().execute(() -> {
+            SecretVault vault = SecretVault.get(context);
+            if (vault.loadWrappedDataKey() == null) {
+                sendError(request, PluginError.BIOMETRIC_NO_SECRET_FOUND);
+                return;
+            }
+            try {
+                new CryptographyManagerImpl(preferStrongBox)
+                        .provisionKey(vault.nextVaultKeyAlias(), invalidateOnEnrollment, context);
+            } catch (CryptoException e) {
+                sendError(request, e.getError().getValue(), e.getMessage());
+                return;
+            }
+            cordova.getActivity().runOnUiThread(() -> enqueue(request));
         });
+    }
+
+    /**
+     * Whether the session holds a data key; a session started by a plain prompt has none.
+     */
+    private boolean hasSessionDataKey(int sessionTtlMs) {
+        byte[] dataKey = AuthSession.getDataKey(sessionTtlMs);
+        if (dataKey == null) {
+            return false;
+        }
+        Arrays.fill(dataKey, (byte) 0);
+        return true;
+    }
+
+    private void executeAuthenticate(BiometricRequest request) {
+        if (AuthSession.isActive(request.getArgs().getInt("sessionTtlMs", 0))) {
+            sendSuccess(request, "biometric_success");
+            return;
+        }
+        enqueue(request);
+    }
+
+    /**
+     * Queues a prompt request. A duplicate of a pending authenticate call joins that call instead
+     * of showing a second prompt.
+     */
+    private void enqueue(BiometricRequest request) {
         PluginResult pluginResult = new PluginResult(PluginResult.Status.NO_RESULT);
         pluginResult.setKeepCallback(true);
-        this.mCallbackContext.sendPluginResult(pluginResult);
+        request.sendPluginResult(pluginResult);
+        synchronized (this) {
+            BiometricRequest pending = findCoalescableRequest(request);
+            if (pending != null) {
+                Log.v(TAG, "Request " + request + " joins " + pending);
+                pending.coalesce(request);
+                return;
+            }
+            mPendingRequests.add(request);
+        }
+        startNextRequest();
+    }
+
+    private BiometricRequest findCoalescableRequest(BiometricRequest request) {
+        if (mActiveRequest != null && mActiveRequest.canCoalesce(request)) {
+            return mActiveRequest;
+        }
+        for (BiometricRequest pending : mPendingRequests) {
+            if (pending.canCoalesce(request)) {
+                return pending;
+            }
+        }
+        return null;
+    }
+
+    private void startNextRequest() {
+        while (true) {
+            BiometricRequest request;
+            synchronized (this) {
+                if (mActiveRequest != null || mPendingRequests.isEmpty()) {
+                    return;
+                }
+                request = mPendingRequests.poll();
+                mActiveRequest = request;
+            }
+            if (runBiometricActivity(request)) {
+                return;
+            }
+            synchronized (this) {
+                mActiveRequest = null;
+            }
+        }
+    }
+
+    /**
+     * While the data key is kept unlocked or a session is active, named slots are decrypted with
+     * that key without showing a prompt.
+     */
+    private boolean loadBiometricSecretFromSession(BiometricRequest request) {
+        Args args = request.getArgs();
+        String[] requestedSlots = args.getStringArray("slots", null);
+        boolean batch = requestedSlots != null;
+        if (!batch) {
+            requestedSlots = new String[]{SecretVault.normalizeSlot(args.getString("slot", null))};
+        }
+        for (String slot : requestedSlots) {
+            if (!SecretVault.isWrapped(slot)) {
+                return false;
+            }
+        }
+        byte[] dataKey = DataKeyHolder.acquire();
+        if (dataKey == null) {
+            dataKey = AuthSession.getDataKey(args.getInt("sessionTtlMs", 0));
+        }
+        if (dataKey == null) {
+            return false;
+        }
+        final byte[] sessionDataKey = dataKey;
+        final String[] slots = requestedSlots;
+        cordova.getThreadPool().execute(() -> {
+            try {
+                Map<String, byte[]> secrets = new CryptographyManagerImpl()
+                        .decryptData(SecretVault.get(cordova.getContext()).load(slots), sessionDataKey);
+                AuthMetrics.record(request.getId(), AuthMetrics.Phase.CRYPTO_DONE, "session");
+                PluginEvents.progress(request.getId(), AuthMetrics.Phase.CRYPTO_DONE, "session");
+                SecretRegistry.put(request.getId(), secrets);
+                sendSecrets(request, SecretRegistry.take(request.getId()));
+            } catch (CryptoException e) {
+                sendError(request, e.getError().getValue(), e.getMessage());
+            } finally {
+                Arrays.fill(sessionDataKey, (byte) 0);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Does the keystore, vault and capability work of the next prompt on a background thread, so
+     * the matching call afterwards only has to show the prompt.
+     */
+    private void executePrepare(BiometricRequest request) {
+        Args args = request.getArgs();
+        if (hasEmptySlots(args)) {
+            sendError(request, PluginError.BIOMETRIC_ARGS_PARSING_FAILED);
+            return;
+        }
+        cordova.getThreadPool().execute(() -> {
+            BiometricActivityType type = getPreparedType(args);
+            if (type == null) {
+                sendError(request, PluginError.BIOMETRIC_ARGS_PARSING_FAILED);
+                return;
+            }
+            PluginError error = canAuthenticate(determineStrongBiometricsRequired(type));
+            if (error != null) {
+                sendError(request, error);
+                return;
+            }
+            Context context = cordova.getActivity().getApplicationContext();
+            BiometricActivity.getLayoutId(cordova.getActivity());
+            SecretVault.get(context);
+            if (type != BiometricActivityType.JUST_AUTHENTICATE) {
+                PromptInfo.Builder builder = new PromptInfo.Builder(mApplicationLabel);
+                builder.parseArgs(args, type);
+                PromptInfo promptInfo = builder.build();
+                try {
+                    PreparedCrypto.offer(PreparedCrypto.prepare(promptInfo,
+                            new CryptographyManagerImpl(promptInfo.preferStrongBox()), context));
+                } catch (CryptoException e) {
+                    sendError(request, e.getError().getValue(), e.getMessage());
+                    return;
+                }
+            }
+            sendSuccess(request, "prepared");
+        });
+    }
+
+    /**
+     * Probes the stored secrets for invalidated keys on demand and reports the removed slots.
+     */
+    private void executeCheckSecrets(BiometricRequest request) {
+        Context context = cordova.getActivity().getApplicationContext();
+        cordova.getThreadPool().execute(() -> {
+            List<String> invalidated = checkSecrets(context);
+            sendSuccess(request, invalidated.toArray(new String[0]));
+        });
+    }
+
+    /**
+     * Runs the EnrollmentProbe and tells the event listener about slots it removed.
+     */
+    private List<String> checkSecrets(Context context) {
+        List<String> invalidated = EnrollmentProbe.run(context);
+        if (!invalidated.isEmpty()) {
+            Log.i(TAG, "Removed secrets with invalidated keys: " + invalidated);
+            try {
+                JSONObject event = new JSONObject();
+                event.put("slots", new JSONArray(invalidated));
+                PluginEvents.emit(PluginEvents.SECRETS_INVALIDATED, event);
+            } catch (JSONException e) {
+                Log.e(TAG, e.getMessage(), e);
+            }
+        }
+        return invalidated;
+    }
+
+    private void executeGetMetrics(Args args, CallbackContext callbackContext) {
+        try {
+            JSONArray events = AuthMetrics.toJson();
+            if (args.getBoolean("clear", false)) {
+                AuthMetrics.clear();
+            }
+            callbackContext.success(events);
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage(), e);
+            callbackContext.error(e.getMessage());
+        }
+    }
+
+    private BiometricActivityType getPreparedType(Args args) {
+        String action = args.getString("action", "authenticate");
+        switch (action) {
+            case "authenticate":
+                return BiometricActivityType.JUST_AUTHENTICATE;
+            case "registerBiometricSecret":
+                return BiometricActivityType.REGISTER_SECRET;
+            case "loadBiometricSecret":
+                return BiometricActivityType.LOAD_SECRET;
+            case "encryptFile":
+            case "decryptFile":
+            case "encryptRecords":
+            case "decryptRecords":
+            case "unlockDataKey":
+                return BiometricActivityType.UNLOCK_DATA_KEY;
+            case "rotateKeys":
+                return BiometricActivityType.ROTATE_VAULT_KEY;
+            default:
+                return null;
+        }
+    }
+
+    private boolean determineStrongBiometricsRequired(BiometricActivityType type) {
+        return type != BiometricActivityType.JUST_AUTHENTICATE;
+    }
+
+    /**
+     * Starts BiometricActivity for the request. Returns false if the request already failed.
+     */
+    private boolean runBiometricActivity(BiometricRequest request) {
+        BiometricActivityType type = request.getType();
+        boolean requireStrongBiometrics = determineStrongBiometricsRequired(type);
+        PluginError error = canAuthenticate(requireStrongBiometrics);
+        AuthMetrics.record(request.getId(), AuthMetrics.Phase.CAN_AUTHENTICATE);
+        if (error != null) {
+            sendError(request, error);
+            return false;
+        }
+        PromptInfo.Builder builder = new PromptInfo.Builder(mApplicationLabel);
+        builder.parseArgs(request.getArgs(), type);
+        builder.setRequestId(request.getId());
+        builder.setStrongBiometricsAvailable(BiometricCapabilities.get(cordova.getContext()).isStrongAvailable());
+        PromptInfo promptInfo = builder.build();
+        // Attempts used up by earlier calls: fail right away, or go straight to the device
+        // credential without launching BiometricActivity just to hand off from it
+        boolean attemptsExhausted = AttemptCounter.get(cordova.getContext())
+                .isExhausted(promptInfo.getMaxAttempts());
+        if (attemptsExhausted && !promptInfo.isDeviceCredentialAllowed()) {
+            sendError(request, PluginError.BIOMETRIC_LOCKED_OUT);
+            return false;
+        }
+        if ((promptInfo.isInProcessPrompt() || attemptsExhausted)
+                && cordova.getActivity() instanceof FragmentActivity) {
+            AuthMetrics.record(request.getId(), AuthMetrics.Phase.INTENT_BUILT, "inProcess");
+            Log.v(TAG, "Showing in-process prompt for request " + request);
+            cordova.getActivity().runOnUiThread(() -> showInProcessPrompt(request, promptInfo));
+            return true;
+        }
+        Intent intent = new Intent(cordova.getActivity().getApplicationContext(), BiometricActivity.class);
+        // Only the request id goes into the Intent, the secret to register never gets parceled
+        intent.putExtra(PromptInfo.REQUEST_ID_EXTRA, request.getId());
+        PromptInfo.handOver(promptInfo);
+        AuthMetrics.record(request.getId(), AuthMetrics.Phase.INTENT_BUILT);
+        Log.v(TAG, "Starting prompt for request " + request);
+        cordova.getActivity().runOnUiThread(() ->
+                this.cordova.startActivityForResult(this, intent, REQUEST_CODE_BIOMETRIC));
+        return true;
+    }
+
+    /**
+     * Hosts BiometricPrompt on the Cordova activity, saving the activity transition and the Intent
+     * round trip. Only the Keyguard fallback still goes through onActivityResult.
+     */
+    private void showInProcessPrompt(BiometricRequest request, PromptInfo promptInfo) {
+        BiometricPromptController controller = new BiometricPromptController(new BiometricPromptController.Host() {
+            @Override
+            public FragmentActivity getActivity() {
+                return (FragmentActivity) cordova.getActivity();
+            }
+
+            @Override
+            public void startActivityForResult(Intent intent, int requestCode) {
+                cordova.startActivityForResult(Fingerprint.this, intent, requestCode);
+            }
+
+            @Override
+            public void onSuccess(Intent result) {
+                if (finishActiveRequest(request)) {
+                    onPromptSucceeded(request, result);
+                }
+            }
+
+            @Override
+            public void onError(int code, String message) {
+                if (finishActiveRequest(request)) {
+                    sendError(request, code, message);
+                    startNextRequest();
+                }
+            }
+        }, promptInfo);
+        synchronized (this) {
+            if (mActiveRequest != request) {
+                // No longer the active request
+                return;
+            }
+            mActiveController = controller;
+        }
+        controller.start();
+    }
+
+    /**
+     * Clears the active request if it still is the given one.
+     */
+    private synchronized boolean finishActiveRequest(BiometricRequest request) {
+        if (mActiveRequest != request) {
+            return false;
+        }
+        mActiveRequest = null;
+        mActiveController = null;
+        return true;
+    }
+
+    private void onPromptSucceeded(BiometricRequest request, Intent result) {
+        if (request.getType() == BiometricActivityType.UNLOCK_DATA_KEY) {
+            byte[] dataKey = AuthSession.takeHandOff(request.getId());
+            if (dataKey == null) {
+                sendError(request, PluginError.BIOMETRIC_UNKNOWN_ERROR);
+            } else {
+                runWithDataKey(request, dataKey);
+            }
+        } else if (request.getType() == BiometricActivityType.LOAD_SECRET) {
+            sendSecrets(request, SecretRegistry.take(request.getId()));
+        } else {
+            sendSuccess(request, result);
+        }
+        startNextRequest();
     }
 
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent intent) {
         super.onActivityResult(requestCode, resultCode, intent);
-        if (requestCode != REQUEST_CODE_BIOMETRIC) {
+        if (requestCode == BiometricPromptController.REQUEST_CODE_CONFIRM_DEVICE_CREDENTIALS) {
+            BiometricPromptController controller;
+            synchronized (this) {
+                controller = mActiveController;
+            }
+            if (controller != null) {
+                controller.onActivityResult(requestCode, resultCode);
+            }
             return;
         }
-        if (resultCode != Activity.RESULT_OK) {
-            sendError(intent);
+        if (requestCode != REQUEST_CODE_BIOMETRIC) {
             return;
         }
-        sendSuccess(intent);
+        BiometricRequest request;
+        synchronized (this) {
+            request = mActiveRequest;
+            mActiveRequest = null;
+        }
+        if (request != null) {
+            // Still there if the activity finished before claiming it
+            PromptInfo.claim(request.getId());
+        }
+        if (request == null) {
+            Log.w(TAG, "Biometric result without an active request");
+        } else if (resultCode != Activity.RESULT_OK) {
+            sendError(request, intent);
+            startNextRequest();
+        } else {
+            onPromptSucceeded(request, intent);
+        }
+    }
+
+    /**
+     * Enrollments, lock screen and lockout may change while the app is in the background, so the
+     * capabilities seen so far are no longer trusted.
+     */
+    @Override
+    public void onPause(boolean multitasking) {
+        super.onPause(multitasking);
+        BiometricCapabilities.invalidate();
+    }
+
+    /**
+     * Computes the capabilities again ahead of the next call. Stored secrets are probed for
+     * invalidated keys right away if an event listener is registered.
+     */
+    @Override
+    public void onResume(boolean multitasking) {
+        super.onResume(multitasking);
+        Context context = cordova.getContext();
+        cordova.getThreadPool().execute(() -> {
+            BiometricCapabilities.refresh(context);
+            // Only probe when someone listens, on demand checkSecrets covers the rest
+            if (PluginEvents.hasListener()) {
+                checkSecrets(context);
+            }
+        });
+    }
+
+    /**
+     * Drops queued prompts when the page reloads. A prompt in BiometricActivity still finishes; an
+     * in-process prompt is dismissed since the page it belonged to is gone.
+     */
+    @Override
+    public void onReset() {
+        BiometricPromptController controller;
+        SecretRegistry.clear();
+        PluginEvents.clear();
+        synchronized (this) {
+            mPendingRequests.clear();
+            controller = mActiveController;
+            if (controller != null) {
+                mActiveController = null;
+                mActiveRequest = null;
+            }
+        }
+        if (controller != null) {
+            cordova.getActivity().runOnUiThread(controller::cancel);
+        }
     }
 
-    private void sendSuccess(Intent intent) {
-        if (intent != null && intent.getExtras() != null) {
-            sendSuccess(intent.getExtras().getString(PromptInfo.SECRET_EXTRA));
+    private void sendSuccess(BiometricRequest request, Intent intent) {
+        if (intent != null && intent.hasExtra(PromptInfo.SIGNATURE_EXTRA)) {
+            sendSuccess(request, intent.getStringExtra(PromptInfo.SIGNATURE_EXTRA));
         } else {
-            sendSuccess("biometric_success");
+            sendSuccess(request, "biometric_success");
         }
     }
 
-    private void sendError(Intent intent) {
+    private void sendError(BiometricRequest request, Intent intent) {
         if (intent != null) {
             Bundle extras = intent.getExtras();
-            sendError(extras.getInt("code"), extras.getString("message"));
+            sendError(request, extras.getInt("code"), extras.getString("message"));
         } else {
-            sendError(PluginError.BIOMETRIC_DISMISSED);
+            sendError(request, PluginError.BIOMETRIC_DISMISSED);
         }
     }
 
     private PluginError canAuthenticate(boolean requireStrongBiometrics) {
-        int error = BiometricManager.from(cordova.getContext()).canAuthenticate(requireStrongBiometrics ? BiometricManager.Authenticators.BIOMETRIC_STRONG : BiometricManager.Authenticators.BIOMETRIC_WEAK);
+        int error = BiometricCapabilities.get(cordova.getContext()).getStatus(requireStrongBiometrics);
         switch (error) {
             case BiometricManager.BIOMETRIC_ERROR_HW_UNAVAILABLE:
             case BiometricManager.BIOMETRIC_ERROR_NO_HARDWARE:
@@ -176,7 +852,11 @@ public class Fingerprint extends CordovaPlugin {
         }
     }
 
-    private void sendError(int code, String message) {
+    private void sendError(BiometricRequest request, PluginError error) {
+        sendError(request, error.getValue(), error.getMessage());
+    }
+
+    private void sendError(BiometricRequest request, int code, String message) {
         JSONObject resultJson = new JSONObject();
         try {
             resultJson.put("code", code);
@@ -185,13 +865,7 @@ public class Fingerprint extends CordovaPlugin {
             PluginResult result = new PluginResult(PluginResult.Status.ERROR, resultJson);
             result.setKeepCallback(true);
             if (cordova.getActivity() != null) {
-                if(Fingerprint.this.mCallbackContext != null){
-                    cordova.getActivity().runOnUiThread(() ->
-                            Fingerprint.this.mCallbackContext.sendPluginResult(result));
-                }
-                else{
-                    Log.e(TAG, code + ":" + message);
-                }
+                cordova.getActivity().runOnUiThread(() -> deliver(request, result));
             } else {
                 Log.e(TAG, "Cordova activity does not exist.");
             }
@@ -200,13 +874,55 @@ public class Fingerprint extends CordovaPlugin {
         }
     }
 
-    private void sendError(PluginError error) {
-        sendError(error.getValue(), error.getMessage());
+    private void sendSuccess(BiometricRequest request, String message) {
+        PluginResult result = new PluginResult(PluginResult.Status.OK, message);
+        cordova.getActivity().runOnUiThread(() -> deliver(request, result));
     }
 
-    private void sendSuccess(String message) {
-        cordova.getActivity().runOnUiThread(() ->
-                this.mCallbackContext.success(message));
+    private void sendSuccess(BiometricRequest request, String[] values) {
+        PluginResult result = new PluginResult(PluginResult.Status.OK, new JSONArray(Arrays.asList(values)));
+        cordova.getActivity().runOnUiThread(() -> deliver(request, result));
+    }
+
+    private void sendSuccess(BiometricRequest request, JSONObject resultJson) {
+        PluginResult result = new PluginResult(PluginResult.Status.OK, resultJson);
+        cordova.getActivity().runOnUiThread(() -> deliver(request, result));
+    }
+
+    /**
+     * Sends secrets taken from SecretRegistry: a map of slot to secret for batch calls, otherwise
+     * the one secret. The buffers are zeroed once the result was built.
+     */
+    private void sendSecrets(BiometricRequest request, Map<String, ByteBuffer> secrets) {
+        if (secrets == null) {
+            sendError(request, PluginError.BIOMETRIC_NO_SECRET_FOUND);
+            return;
+        }
+        PluginResult result;
+        try {
+            if (request.getArgs().getStringArray("slots", null) != null) {
+                JSONObject resultJson = new JSONObject();
+                for (Map.Entry<String, ByteBuffer> secret : secrets.entrySet()) {
+                    resultJson.put(secret.getKey(), SecretRegistry.decode(secret.getValue()));
+                }
+                result = new PluginResult(PluginResult.Status.OK, resultJson);
+            } else {
+                ByteBuffer secret = secrets.values().iterator().next();
+                result = new PluginResult(PluginResult.Status.OK, SecretRegistry.decode(secret));
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage(), e);
+            sendError(request, PluginError.BIOMETRIC_UNKNOWN_ERROR);
+            return;
+        } finally {
+            SecretRegistry.zero(secrets);
+        }
+        cordova.getActivity().runOnUiThread(() -> deliver(request, result));
+    }
+
+    private void deliver(BiometricRequest request, PluginResult result) {
+        request.sendPluginResult(result);
+        AuthMetrics.record(request.getId(), AuthMetrics.Phase.RESULT_DELIVERED);
     }
 
     private String getApplicationLabel(Context context) {
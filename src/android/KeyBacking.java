@@ -0,0 +1,204 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.SystemClock;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyInfo;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+import androidx.annotation.RequiresApi;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Signature;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Where keystore keys live and how fast they are. StrongBox keys are isolated in a separate secure
+ * element but an operation can take an order of magnitude longer than in the TEE, so apps measure
+ * both on the device and pick per key with preferStrongBox.
+ */
+final class KeyBacking {
+
+    static final String STRONG_BOX = "strongBox";
+    static final String TEE = "tee";
+    static final String SOFTWARE = "software";
+
+    private static final String TAG = "KeyBacking";
+    private static final String ANDROID_KEYSTORE = "AndroidKeyStore";
+    private static final String PROBE_CIPHER_KEY = "__aio_probe_cipher_key";
+    private static final String PROBE_SIGNING_KEY = "__aio_probe_signing_key";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+    private static final int PROBE_ROUNDS = 5;
+    private static final int PROBE_PAYLOAD_SIZE = 32;
+
+    // KeyInfo.getSecurityLevel and its KeyProperties values arrived in Android 12 (API 31); the
+    // plugin still compiles against API 30, so they are used by value and via reflection
+    private static final int API_SECURITY_LEVEL = 31;
+    private static final int SECURITY_LEVEL_SOFTWARE = 0;
+    private static final int SECURITY_LEVEL_STRONGBOX = 2;
+
+    // Measuring generates keys, so it only runs once per process
+    private static JSONObject sLatency;
+
+    private KeyBacking() {
+    }
+
+    static boolean isStrongBoxAvailable(Context context) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                && context.getPackageManager().hasSystemFeature(PackageManager.FEATURE_STRONGBOX_KEYSTORE);
+    }
+
+    /**
+     * The backing of a keystore key, or null if it cannot be determined.
+     */
+    static String of(Key key) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return null;
+        }
+        try {
+            KeyInfo keyInfo;
+            if (key instanceof SecretKey) {
+                keyInfo = (KeyInfo) SecretKeyFactory.getInstance(key.getAlgorithm(), ANDROID_KEYSTORE)
+                        .getKeySpec((SecretKey) key, KeyInfo.class);
+            } else {
+                keyInfo = KeyFactory.getInstance(key.getAlgorithm(), ANDROID_KEYSTORE)
+                        .getKeySpec(key, KeyInfo.class);
+            }
+            if (Build.VERSION.SDK_INT >= API_SECURITY_LEVEL) {
+                switch (getSecurityLevel(keyInfo)) {
+                    case SECURITY_LEVEL_STRONGBOX:
+                        return STRONG_BOX;
+                    case SECURITY_LEVEL_SOFTWARE:
+                        return SOFTWARE;
+                    default:
+                        return TEE;
+                }
+            }
+            // Before S a StrongBox key only reports being in secure hardware
+            return keyInfo.isInsideSecureHardware() ? TEE : SOFTWARE;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to read key info", e);
+            return null;
+        }
+    }
+
+    private static int getSecurityLevel(KeyInfo keyInfo) throws ReflectiveOperationException {
+        return (Integer) KeyInfo.class.getMethod("getSecurityLevel").invoke(keyInfo);
+    }
+
+    /**
+     * Average milliseconds of one AES-GCM decrypt and one ECDSA sign, including initialization, per
+     * backing available on this device. Blocks for up to a few seconds on first use.
+     */
+    static synchronized JSONObject measureLatency(Context context) throws JSONException {
+        if (sLatency != null) {
+            return sLatency;
+        }
+        JSONObject latency = new JSONObject();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            putMeasurement(latency, TEE, false);
+            if (isStrongBoxAvailable(context)) {
+                putMeasurement(latency, STRONG_BOX, true);
+            }
+        }
+        sLatency = latency;
+        return latency;
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private static void putMeasurement(JSONObject latency, String backing, boolean strongBox) throws JSONException {
+        JSONObject measurement = new JSONObject();
+        try {
+            measurement.put("decryptMs", measureDecrypt(strongBox));
+            measurement.put("signMs", measureSign(strongBox));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to measure " + backing + " latency", e);
+        } finally {
+            deleteProbeKeys();
+        }
+        latency.put(backing, measurement);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private static double measureDecrypt(boolean strongBox) throws Exception {
+        KeyGenParameterSpec.Builder builder = new KeyGenParameterSpec.Builder(PROBE_CIPHER_KEY,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256);
+        if (strongBox && Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            builder.setIsStrongBoxBacked(true);
+        }
+        KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEYSTORE);
+        keyGenerator.init(builder.build());
+        SecretKey key = keyGenerator.generateKey();
+
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        byte[] ciphertext = cipher.doFinal(new byte[PROBE_PAYLOAD_SIZE]);
+        GCMParameterSpec spec = new GCMParameterSpec(128, cipher.getIV());
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < PROBE_ROUNDS; i++) {
+            cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, spec);
+            cipher.doFinal(ciphertext);
+        }
+        return averageMs(start);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private static double measureSign(boolean strongBox) throws Exception {
+        KeyGenParameterSpec.Builder builder = new KeyGenParameterSpec.Builder(PROBE_SIGNING_KEY,
+                KeyProperties.PURPOSE_SIGN)
+                .setDigests(KeyProperties.DIGEST_SHA256);
+        if (strongBox && Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            builder.setIsStrongBoxBacked(true);
+        }
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(KeyProperties.KEY_ALGORITHM_EC, ANDROID_KEYSTORE);
+        keyPairGenerator.initialize(builder.build());
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        PrivateKey privateKey = keyPair.getPrivate();
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < PROBE_ROUNDS; i++) {
+            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            signature.initSign(privateKey);
+            signature.update(new byte[PROBE_PAYLOAD_SIZE]);
+            signature.sign();
+        }
+        return averageMs(start);
+    }
+
+    private static double averageMs(long startNanos) {
+        double totalMs = (SystemClock.elapsedRealtimeNanos() - startNanos) / 1e6;
+        return Math.round(totalMs / PROBE_ROUNDS * 10) / 10.0;
+    }
+
+    private static void deleteProbeKeys() {
+        try {
+            KeyStore keyStore = KeyStore.getInstance(ANDROID_KEYSTORE);
+            keyStore.load(null);
+            keyStore.deleteEntry(PROBE_CIPHER_KEY);
+            keyStore.deleteEntry(PROBE_SIGNING_KEY);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to delete probe keys", e);
+        }
+    }
+}
@@ -13,7 +13,8 @@ public enum PluginError {
     BIOMETRIC_LOCKED_OUT(-111),
     BIOMETRIC_LOCKED_OUT_PERMANENT(-112),
     BIOMETRIC_NO_SECRET_FOUND(-113),
-    BIOMETRIC_ARGS_PARSING_FAILED(-115);
+    BIOMETRIC_ARGS_PARSING_FAILED(-115),
+    BIOMETRIC_DATA_KEY_LOCKED(-116);
 
     private int value;
     private String message;
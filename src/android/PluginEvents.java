@@ -0,0 +1,128 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Long-lived channel for events the plugin reports on its own, outside the result of a call. JS
+ * registers a single listener with setEventListener; its callback is kept open and receives one
+ * object per event with a type and the time in milliseconds since boot, like getMetrics. Besides
+ * secretsInvalidated it streams the progress of each prompt, tagged with the requestId.
+ */
+final class PluginEvents {
+
+    static final String SECRETS_INVALIDATED = "secretsInvalidated";
+    static final String PROMPT_SHOWN = "promptShown";
+    static final String ATTEMPT_FAILED = "attemptFailed";
+    static final String FALLBACK_SCHEDULED = "fallbackScheduled";
+    static final String KEYGUARD_OPENED = "keyguardOpened";
+    static final String CRYPTO_DONE = "cryptoDone";
+
+    private static final String TAG = "PluginEvents";
+
+    private static CallbackContext sListener;
+
+    private PluginEvents() {
+    }
+
+    /**
+     * Replaces the current listener, if any. Its callback stays open until the page reloads.
+     */
+    static void setListener(CallbackContext listener) {
+        synchronized (PluginEvents.class) {
+            sListener = listener;
+        }
+        PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+        result.setKeepCallback(true);
+        listener.sendPluginResult(result);
+    }
+
+    static synchronized boolean hasListener() {
+        return sListener != null;
+    }
+
+    static synchronized void clear() {
+        sListener = null;
+    }
+
+    /**
+     * Streams the progress event matching a metrics phase, if the phase has one. The metrics
+     * detail, e.g. how the prompt was dismissed before the Keyguard opened, is passed along.
+     */
+    static void progress(int requestId, AuthMetrics.Phase phase, String detail) {
+        String type = progressType(phase);
+        if (type == null || !hasListener()) {
+            return;
+        }
+        try {
+            JSONObject event = new JSONObject();
+            event.put("requestId", requestId);
+            event.putOpt("detail", detail);
+            emit(type, event);
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A failed biometric attempt, with the failures counted so far and the maxAttempts limit.
+     */
+    static void attemptFailed(int requestId, int failures, int limit) {
+        if (!hasListener()) {
+            return;
+        }
+        try {
+            JSONObject event = new JSONObject();
+            event.put("requestId", requestId);
+            event.put("attempt", failures);
+            event.put("limit", limit);
+            emit(ATTEMPT_FAILED, event);
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage(), e);
+        }
+    }
+
+    private static String progressType(AuthMetrics.Phase phase) {
+        switch (phase) {
+            case PROMPT_SHOWN:
+                return PROMPT_SHOWN;
+            case HANDOFF_SCHEDULED:
+                return FALLBACK_SCHEDULED;
+            case KEYGUARD_LAUNCHED:
+                return KEYGUARD_OPENED;
+            case CRYPTO_DONE:
+                return CRYPTO_DONE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Sends the event to the listener. The type and time are added to the given fields; without a
+     * listener the event is dropped.
+     */
+    static void emit(String type, JSONObject event) {
+        CallbackContext listener;
+        synchronized (PluginEvents.class) {
+            listener = sListener;
+        }
+        if (listener == null) {
+            return;
+        }
+        try {
+            event.put("type", type);
+            event.put("time", SystemClock.elapsedRealtime());
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage(), e);
+            return;
+        }
+        PluginResult result = new PluginResult(PluginResult.Status.OK, event);
+        result.setKeepCallback(true);
+        listener.sendPluginResult(result);
+    }
+}
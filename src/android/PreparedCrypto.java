@@ -0,0 +1,181 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+
+/**
+ * Everything BiometricActivity needs before it can show a crypto prompt: the initialized Cipher
+ * and the vault records it will be used on. Preparing hits the keystore and the vault, so the
+ * prepare action runs it ahead of time on a background thread and parks the result here for the
+ * next matching prompt.
+ */
+final class PreparedCrypto {
+
+    // Keystore may prune operations that stay unused for too long
+    private static final long MAX_AGE_MS = 30000;
+
+    private static PreparedCrypto sPending;
+
+    private final String mRequestKey;
+    private final long mVaultRevision;
+    private final long mPreparedAt = SystemClock.elapsedRealtime();
+    private final Cipher mCipher;
+    private final EncryptedData mWrappedDataKey;
+    private final Map<String, EncryptedData> mEntries;
+
+    private PreparedCrypto(PromptInfo promptInfo, long vaultRevision, Cipher cipher,
+                           EncryptedData wrappedDataKey, Map<String, EncryptedData> entries) {
+        mRequestKey = requestKey(promptInfo);
+        mVaultRevision = vaultRevision;
+        mCipher = cipher;
+        mWrappedDataKey = wrappedDataKey;
+        mEntries = entries;
+    }
+
+    Cipher getCipher() {
+        return mCipher;
+    }
+
+    /**
+     * The wrapped vault data key the cipher unwraps, or null if the cipher wraps a new one.
+     */
+    EncryptedData getWrappedDataKey() {
+        return mWrappedDataKey;
+    }
+
+    /**
+     * Named slots to decrypt with the vault data key, or null for the default slot.
+     */
+    Map<String, EncryptedData> getEntries() {
+        return mEntries;
+    }
+
+    /**
+     * Initializes the cipher for a REGISTER_SECRET, LOAD_SECRET, UNLOCK_DATA_KEY or
+     * ROTATE_VAULT_KEY prompt.
+     */
+    static PreparedCrypto prepare(PromptInfo promptInfo, CryptographyManager cryptographyManager,
+                                  Context context) throws CryptoException {
+        SecretVault vault = SecretVault.get(context);
+        switch (promptInfo.getType()) {
+            case REGISTER_SECRET:
+                return prepareToEncrypt(promptInfo, cryptographyManager, vault, context);
+            case LOAD_SECRET:
+                return prepareToDecrypt(promptInfo, cryptographyManager, vault, context);
+            case UNLOCK_DATA_KEY:
+                return prepareDataKey(promptInfo, cryptographyManager, vault, context);
+            case ROTATE_VAULT_KEY:
+                return prepareToRotate(promptInfo, cryptographyManager, vault, context);
+        }
+        throw new CryptoException(PluginError.BIOMETRIC_ARGS_PARSING_FAILED);
+    }
+
+    static synchronized void offer(PreparedCrypto prepared) {
+        sPending = prepared;
+    }
+
+    /**
+     * Hands out the pending preparation if it was made for the same request and the vault did not
+     * change since. It can only be used once.
+     */
+    static synchronized PreparedCrypto take(PromptInfo promptInfo, Context context) {
+        PreparedCrypto prepared = sPending;
+        sPending = null;
+        if (prepared == null
+                || !prepared.mRequestKey.equals(requestKey(promptInfo))
+                || prepared.mVaultRevision != SecretVault.get(context).getRevision()
+                || SystemClock.elapsedRealtime() - prepared.mPreparedAt > MAX_AGE_MS) {
+            return null;
+        }
+        return prepared;
+    }
+
+    private static PreparedCrypto prepareToEncrypt(PromptInfo promptInfo, CryptographyManager cryptographyManager,
+                                                   SecretVault vault, Context context) throws CryptoException {
+        String slot = promptInfo.getSlot();
+        if (!SecretVault.isWrapped(slot)) {
+            Cipher cipher = cryptographyManager.getInitializedCipherForEncryption(
+                    vault.keyAlias(slot), promptInfo.invalidateOnEnrollment(), context);
+            return new PreparedCrypto(promptInfo, vault.getRevision(), cipher, null, null);
+        }
+        return prepareDataKey(promptInfo, cryptographyManager, vault, context);
+    }
+
+    /**
+     * Named slots and encrypted files share the vault data key: unwrap the existing one, or wrap a
+     * new one if the vault holds none yet or its keystore key was invalidated.
+     */
+    private static PreparedCrypto prepareDataKey(PromptInfo promptInfo, CryptographyManager cryptographyManager,
+                                                 SecretVault vault, Context context) throws CryptoException {
+        String keyName = vault.getVaultKeyAlias();
+        boolean invalidateOnEnrollment = promptInfo.invalidateOnEnrollment();
+        EncryptedData wrappedDataKey = vault.loadWrappedDataKey();
+        if (wrappedDataKey != null) {
+            try {
+                Cipher cipher = cryptographyManager.getInitializedCipherForDecryption(
+                        keyName, wrappedDataKey.getInitializationVector(), context);
+                return new PreparedCrypto(promptInfo, vault.getRevision(), cipher, wrappedDataKey, null);
+            } catch (KeyInvalidatedException e) {
+                vault.clearWrappedSlots();
+            }
+        }
+        Cipher cipher = cryptographyManager
+                .getInitializedCipherForEncryption(keyName, invalidateOnEnrollment, context);
+        return new PreparedCrypto(promptInfo, vault.getRevision(), cipher, null, null);
+    }
+
+    /**
+     * Rotation only rewraps the data key, so the prompt unlocks a cipher of the next vault key.
+     */
+    private static PreparedCrypto prepareToRotate(PromptInfo promptInfo, CryptographyManager cryptographyManager,
+                                                  SecretVault vault, Context context) throws CryptoException {
+        if (vault.loadWrappedDataKey() == null) {
+            throw new CryptoException(PluginError.BIOMETRIC_NO_SECRET_FOUND);
+        }
+        Cipher cipher = cryptographyManager.getInitializedCipherForEncryption(
+                vault.nextVaultKeyAlias(), promptInfo.invalidateOnEnrollment(), context);
+        return new PreparedCrypto(promptInfo, vault.getRevision(), cipher, null, null);
+    }
+
+    private static PreparedCrypto prepareToDecrypt(PromptInfo promptInfo, CryptographyManager cryptographyManager,
+                                                   SecretVault vault, Context context) throws CryptoException {
+        if (!promptInfo.isBatch() && !SecretVault.isWrapped(promptInfo.getSlot())) {
+            EncryptedData encryptedData = vault.load(promptInfo.getSlot());
+            Cipher cipher = cryptographyManager.getInitializedCipherForDecryption(
+                    vault.keyAlias(promptInfo.getSlot()), encryptedData.getInitializationVector(), context);
+            return new PreparedCrypto(promptInfo, vault.getRevision(), cipher, null, null);
+        }
+        // One prompt unwraps the vault data key, which then decrypts every requested slot
+        String[] slots = promptInfo.isBatch()
+                ? promptInfo.getSlots()
+                : new String[]{promptInfo.getSlot()};
+        for (String slot : slots) {
+            if (!SecretVault.isWrapped(slot)) {
+                throw new CryptoException(PluginError.BIOMETRIC_ARGS_PARSING_FAILED);
+            }
+        }
+        Map<String, EncryptedData> entries = vault.load(slots);
+        EncryptedData wrappedDataKey = vault.loadWrappedDataKey();
+        if (wrappedDataKey == null) {
+            throw new CryptoException(PluginError.BIOMETRIC_NO_SECRET_FOUND);
+        }
+        try {
+            Cipher cipher = cryptographyManager.getInitializedCipherForDecryption(
+                    vault.keyAlias(slots[0]), wrappedDataKey.getInitializationVector(), context);
+            return new PreparedCrypto(promptInfo, vault.getRevision(), cipher, wrappedDataKey, entries);
+        } catch (KeyInvalidatedException e) {
+            vault.clearWrappedSlots();
+            throw e;
+        }
+    }
+
+    private static String requestKey(PromptInfo promptInfo) {
+        return promptInfo.getType() + "|" + promptInfo.getSlot() + "|" + Arrays.toString(promptInfo.getSlots())
+                + "|" + promptInfo.invalidateOnEnrollment();
+    }
+}
@@ -1,78 +1,214 @@
 package de.niklasmerz.cordova.biometric;
 
-import android.os.Bundle;
+import androidx.biometric.BiometricManager;
 
-import org.json.JSONArray;
+import java.util.HashMap;
+import java.util.Map;
 
-class PromptInfo {
+/**
+ * Options of one prompt, immutable once built. BiometricActivity gets it through claim by request
+ * id instead of Intent extras, so the secret to register is never marshalled into a Parcel and
+ * the getters are plain field reads.
+ */
+final class PromptInfo {
 
-    private static final String DISABLE_BACKUP = "disableBackup";
-    private static final String TITLE = "title";
-    private static final String SUBTITLE = "subtitle";
-    private static final String DESCRIPTION = "description";
-    private static final String FALLBACK_BUTTON_TITLE = "fallbackButtonTitle";
-    private static final String CANCEL_BUTTON_TITLE = "cancelButtonTitle";
-    private static final String CONFIRMATION_REQUIRED = "confirmationRequired";
-    private static final String INVALIDATE_ON_ENROLLMENT = "invalidateOnEnrollment";
-    private static final String SECRET = "secret";
-    private static final String BIOMETRIC_ACTIVITY_TYPE = "biometricActivityType";
-    private static final String MAX_ATTEMPTS = "maxAttempts";
+    static final String REQUEST_ID_EXTRA = "requestId";
+    static final String SIGNATURE_EXTRA = "signature";
 
-    static final String SECRET_EXTRA = "secret";
+    // Handed over to BiometricActivity, keyed by request id
+    private static final Map<Integer, PromptInfo> sHandedOver = new HashMap<>();
 
-    private Bundle bundle = new Bundle();
+    private final boolean mDisableBackup;
+    private final String mTitle;
+    private final String mSubtitle;
+    private final String mDescription;
+    private final String mFallbackButtonTitle;
+    private final String mCancelButtonTitle;
+    private final boolean mConfirmationRequired;
+    private final boolean mInvalidateOnEnrollment;
+    private final String mSecret;
+    private final String mSlot;
+    private final String[] mSlots;
+    private final String mChallenge;
+    private final String[] mChallenges;
+    private final BiometricActivityType mType;
+    private final int mMaxAttempts;
+    private final int mSessionTtlMs;
+    private final int mKeepUnlockedMs;
+    private final int mRequestId;
+    private final boolean mInProcessPrompt;
+    private final boolean mPreferStrongBox;
+    private final int mAuthenticators;
 
-    Bundle getBundle() {
-        return bundle;
+    private PromptInfo(Builder builder) {
+        mDisableBackup = builder.disableBackup;
+        mTitle = builder.title;
+        mSubtitle = builder.subtitle;
+        mDescription = builder.description;
+        mFallbackButtonTitle = builder.fallbackButtonTitle;
+        mCancelButtonTitle = builder.cancelButtonTitle;
+        mConfirmationRequired = builder.confirmationRequired;
+        mInvalidateOnEnrollment = builder.invalidateOnEnrollment;
+        mSecret = builder.secret;
+        mSlot = builder.slot;
+        mSlots = builder.slots;
+        mChallenge = builder.challenge;
+        mChallenges = builder.challenges;
+        mType = builder.type;
+        mMaxAttempts = builder.maxAttempts;
+        mSessionTtlMs = builder.sessionTtlMs;
+        mKeepUnlockedMs = builder.keepUnlockedMs;
+        mRequestId = builder.requestId;
+        mInProcessPrompt = builder.inProcessPrompt;
+        mPreferStrongBox = builder.preferStrongBox;
+        mAuthenticators = pickAuthenticators(builder.type, builder.disableBackup, builder.strongBiometricsAvailable);
+    }
+
+    /**
+     * Keeps the prompt info until BiometricActivity claims it with the request id.
+     */
+    static synchronized void handOver(PromptInfo promptInfo) {
+        sHandedOver.put(promptInfo.mRequestId, promptInfo);
+    }
+
+    /**
+     * Removes and returns the prompt info handed over for the request, or null if there is none,
+     * e.g. when the activity was restored after the process died.
+     */
+    static synchronized PromptInfo claim(int requestId) {
+        return sHandedOver.remove(requestId);
+    }
+
+    /**
+     * Secret operations require Class 3 biometrics. Plain authentication prefers a single primary
+     * modality, strong if enrolled, else weak, plus the device credential unless backup is disabled.
+     */
+    private static int pickAuthenticators(BiometricActivityType type, boolean disableBackup,
+                                          boolean strongBiometricsAvailable) {
+        if (type != BiometricActivityType.JUST_AUTHENTICATE) {
+            return BiometricManager.Authenticators.BIOMETRIC_STRONG;
+        }
+        int authenticators = strongBiometricsAvailable
+                ? BiometricManager.Authenticators.BIOMETRIC_STRONG
+                : BiometricManager.Authenticators.BIOMETRIC_WEAK;
+        if (!disableBackup) {
+            authenticators |= BiometricManager.Authenticators.DEVICE_CREDENTIAL;
+        }
+        return authenticators;
     }
 
     String getTitle() {
-        return bundle.getString(TITLE);
+        return mTitle;
     }
 
     String getSubtitle() {
-        return bundle.getString(SUBTITLE);
+        return mSubtitle;
     }
 
     String getDescription() {
-        return bundle.getString(DESCRIPTION);
+        return mDescription;
     }
 
+    /**
+     * Only plain authentication can fall back to the device credential. Every other type needs the
+     * CryptoObject of a biometric authentication, which the Keyguard does not produce.
+     */
     boolean isDeviceCredentialAllowed() {
-        return !bundle.getBoolean(DISABLE_BACKUP);
+        return !mDisableBackup && mType == BiometricActivityType.JUST_AUTHENTICATE;
     }
 
     String getFallbackButtonTitle() {
-        return bundle.getString(FALLBACK_BUTTON_TITLE);
+        return mFallbackButtonTitle;
     }
 
     String getCancelButtonTitle() {
-        return bundle.getString(CANCEL_BUTTON_TITLE);
+        return mCancelButtonTitle;
     }
 
     boolean getConfirmationRequired() {
-        return bundle.getBoolean(CONFIRMATION_REQUIRED);
+        return mConfirmationRequired;
     }
 
     String getSecret() {
-        return bundle.getString(SECRET);
+        return mSecret;
+    }
+
+    String getSlot() {
+        return mSlot;
+    }
+
+    /**
+     * Slots to decrypt in one batch, or null when a single slot was requested.
+     */
+    String[] getSlots() {
+        return mSlots;
+    }
+
+    boolean isBatch() {
+        return mSlots != null;
     }
 
     boolean invalidateOnEnrollment() {
-        return bundle.getBoolean(INVALIDATE_ON_ENROLLMENT);
+        return mInvalidateOnEnrollment;
     }
 
     int getMaxAttempts() {
-        return bundle.containsKey(MAX_ATTEMPTS) ? bundle.getInt(MAX_ATTEMPTS) : 5;
+        return mMaxAttempts;
+    }
+
+    int getSessionTtlMs() {
+        return mSessionTtlMs;
+    }
+
+    /**
+     * Whether the prompt should be shown directly on the Cordova activity instead of starting
+     * BiometricActivity.
+     */
+    boolean isInProcessPrompt() {
+        return mInProcessPrompt;
+    }
+
+    String getChallenge() {
+        return mChallenge;
+    }
+
+    /**
+     * Payloads to sign together in one prompt, or null for a single challenge.
+     */
+    String[] getChallenges() {
+        return mChallenges;
+    }
+
+    /**
+     * Idle timeout for keeping the vault data key unlocked after this prompt, 0 to not keep it.
+     */
+    int getKeepUnlockedMs() {
+        return mKeepUnlockedMs;
+    }
+
+    /**
+     * Whether keys generated for this prompt should be StrongBox backed if the device has it.
+     */
+    boolean preferStrongBox() {
+        return mPreferStrongBox;
+    }
+
+    int getRequestId() {
+        return mRequestId;
     }
 
     BiometricActivityType getType() {
-        return BiometricActivityType.fromValue(bundle.getInt(BIOMETRIC_ACTIVITY_TYPE));
+        return mType;
+    }
+
+    /**
+     * BiometricManager.Authenticators for setAllowedAuthenticators on Android 11 and later.
+     */
+    int getAuthenticators() {
+        return mAuthenticators;
     }
 
     public static final class Builder {
-        private static final String TAG = "PromptInfo.Builder";
-        private Bundle bundle;
         private boolean disableBackup = false;
         private String title;
         private String subtitle = null;
@@ -82,8 +218,18 @@ class PromptInfo {
         private boolean confirmationRequired = true;
         private boolean invalidateOnEnrollment = false;
         private String secret = null;
+        private String slot = null;
+        private String[] slots = null;
+        private String challenge = null;
+        private String[] challenges = null;
         private BiometricActivityType type = null;
         private int maxAttempts = 5;
+        private int sessionTtlMs = 0;
+        private int keepUnlockedMs = 0;
+        private int requestId = 0;
+        private boolean inProcessPrompt = false;
+        private boolean preferStrongBox = false;
+        private boolean strongBiometricsAvailable = false;
 
         Builder(String applicationLabel) {
             if (applicationLabel == null) {
@@ -93,49 +239,43 @@ class PromptInfo {
             }
         }
 
-        Builder(Bundle bundle) {
-            this.bundle = bundle;
-        }
-
         public PromptInfo build() {
-            PromptInfo promptInfo = new PromptInfo();
+            return new PromptInfo(this);
+        }
 
-            if (this.bundle != null) {
-                promptInfo.bundle = bundle;
-                return promptInfo;
-            }
+        void setRequestId(int requestId) {
+            this.requestId = requestId;
+        }
 
-            Bundle bundle = new Bundle();
-            bundle.putString(SUBTITLE, this.subtitle);
-            bundle.putString(TITLE, this.title);
-            bundle.putString(DESCRIPTION, this.description);
-            bundle.putString(FALLBACK_BUTTON_TITLE, this.fallbackButtonTitle);
-            bundle.putString(CANCEL_BUTTON_TITLE, this.cancelButtonTitle);
-            bundle.putString(SECRET, this.secret);
-            bundle.putBoolean(DISABLE_BACKUP, this.disableBackup);
-            bundle.putBoolean(CONFIRMATION_REQUIRED, this.confirmationRequired);
-            bundle.putBoolean(INVALIDATE_ON_ENROLLMENT, this.invalidateOnEnrollment);
-            bundle.putInt(BIOMETRIC_ACTIVITY_TYPE, this.type.getValue());
-            bundle.putInt(MAX_ATTEMPTS, this.maxAttempts);
-            promptInfo.bundle = bundle;
-
-            return promptInfo;
+        /**
+         * Whether Class 3 biometrics are enrolled, which decides the authenticators of plain
+         * authentication prompts.
+         */
+        void setStrongBiometricsAvailable(boolean strongBiometricsAvailable) {
+            this.strongBiometricsAvailable = strongBiometricsAvailable;
         }
 
-        void parseArgs(JSONArray jsonArgs, BiometricActivityType type) {
+        void parseArgs(Args args, BiometricActivityType type) {
             this.type = type;
 
-            Args args = new Args(jsonArgs);
-            disableBackup = args.getBoolean(DISABLE_BACKUP, disableBackup);
-            title = args.getString(TITLE, title);
-            subtitle = args.getString(SUBTITLE, subtitle);
-            description = args.getString(DESCRIPTION, description);
-            fallbackButtonTitle = args.getString(FALLBACK_BUTTON_TITLE, fallbackButtonTitle);
-            cancelButtonTitle = args.getString(CANCEL_BUTTON_TITLE, cancelButtonTitle);
-            confirmationRequired = args.getBoolean(CONFIRMATION_REQUIRED, confirmationRequired);
-            invalidateOnEnrollment = args.getBoolean(INVALIDATE_ON_ENROLLMENT, false);
-            secret = args.getString(SECRET, null);
-            maxAttempts = args.getInt(MAX_ATTEMPTS, maxAttempts);
+            disableBackup = args.getBoolean("disableBackup", disableBackup);
+            title = args.getString("title", title);
+            subtitle = args.getString("subtitle", subtitle);
+            description = args.getString("description", description);
+            fallbackButtonTitle = args.getString("fallbackButtonTitle", fallbackButtonTitle);
+            cancelButtonTitle = args.getString("cancelButtonTitle", cancelButtonTitle);
+            confirmationRequired = args.getBoolean("confirmationRequired", confirmationRequired);
+            invalidateOnEnrollment = args.getBoolean("invalidateOnEnrollment", false);
+            secret = args.getString("secret", null);
+            slot = SecretVault.normalizeSlot(args.getString("slot", null));
+            slots = args.getStringArray("slots", null);
+            challenge = args.getString("challenge", null);
+            challenges = args.getStringArray("challenges", null);
+            maxAttempts = args.getInt("maxAttempts", maxAttempts);
+            sessionTtlMs = args.getInt("sessionTtlMs", 0);
+            keepUnlockedMs = args.getInt("keepUnlockedMs", 0);
+            inProcessPrompt = args.getBoolean("inProcessPrompt", false);
+            preferStrongBox = args.getBoolean("preferStrongBox", false);
         }
     }
 }
@@ -0,0 +1,90 @@
+package de.niklasmerz.cordova.biometric;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hands decrypted secrets from the prompt to the plugin call that asked for them, keyed by request
+ * id, without turning them into Strings or parceling them through Intent extras. The bytes are
+ * kept in direct buffers outside the Java heap, so the garbage collector does not leave copies
+ * behind when it moves objects, and are zeroed as soon as they were delivered.
+ */
+final class SecretRegistry {
+
+    private static final Map<Integer, Map<String, ByteBuffer>> sSecrets = new HashMap<>();
+
+    private SecretRegistry() {
+    }
+
+    /**
+     * Stores the secrets for the request, replacing any stored before, and zeroes the given arrays.
+     * The map order is kept.
+     */
+    static void put(int requestId, Map<String, byte[]> secrets) {
+        Map<String, ByteBuffer> buffers = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> secret : secrets.entrySet()) {
+            byte[] bytes = secret.getValue();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes);
+            buffer.flip();
+            Arrays.fill(bytes, (byte) 0);
+            buffers.put(secret.getKey(), buffer);
+        }
+        Map<String, ByteBuffer> previous;
+        synchronized (SecretRegistry.class) {
+            previous = sSecrets.put(requestId, buffers);
+        }
+        zero(previous);
+    }
+
+    /**
+     * Removes and returns the secrets of the request, or null if there are none. The caller must
+     * pass them to zero once consumed.
+     */
+    static synchronized Map<String, ByteBuffer> take(int requestId) {
+        return sSecrets.remove(requestId);
+    }
+
+    static void clear() {
+        Map<Integer, Map<String, ByteBuffer>> secrets;
+        synchronized (SecretRegistry.class) {
+            secrets = new HashMap<>(sSecrets);
+            sSecrets.clear();
+        }
+        for (Map<String, ByteBuffer> buffers : secrets.values()) {
+            zero(buffers);
+        }
+    }
+
+    /**
+     * Decodes a secret for the Cordova bridge, which only takes Strings. The intermediate chars
+     * are cleared again.
+     */
+    static String decode(ByteBuffer secret) {
+        CharBuffer chars = StandardCharsets.UTF_8.decode(secret.duplicate());
+        try {
+            return chars.toString();
+        } finally {
+            if (chars.hasArray()) {
+                Arrays.fill(chars.array(), '\0');
+            }
+        }
+    }
+
+    static void zero(Map<String, ByteBuffer> secrets) {
+        if (secrets == null) {
+            return;
+        }
+        for (ByteBuffer buffer : secrets.values()) {
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                buffer.put((byte) 0);
+            }
+        }
+    }
+}
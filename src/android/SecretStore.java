@@ -0,0 +1,188 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Binary file backing SecretVault.
+ *
+ * Layout: a 4 byte magic, a 1 byte format version and the record count, followed by one record
+ * per entry holding its name (modified UTF-8), then the length-prefixed IV and ciphertext. The
+ * file is always replaced as a whole through AtomicFile, so a crash mid-write leaves the previous
+ * version in place.
+ */
+final class SecretStore {
+
+    private static final String TAG = "SecretStore";
+    private static final int MAGIC = 0x4241494F; // "BAIO"
+    private static final int VERSION = 1;
+    // Far above any IV or wrapped secret, only there to reject corrupt length fields
+    private static final int MAX_FIELD_LENGTH = 1024 * 1024;
+
+    private final AtomicFile mFile;
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+    private volatile boolean mReadOnly;
+
+    SecretStore(File file) {
+        mFile = new AtomicFile(file);
+    }
+
+    /**
+     * All records in the file, or null if it was never written.
+     */
+    Map<String, EncryptedData> read() throws IOException {
+        byte[] bytes;
+        try {
+            bytes = mFile.readFully();
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a secret store file");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported secret store version " + version);
+        }
+        int count = in.readInt();
+        Map<String, EncryptedData> records = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            byte[] iv = readField(in);
+            byte[] ciphertext = readField(in);
+            records.put(name, new EncryptedData(ciphertext, iv));
+        }
+        return records;
+    }
+
+    /**
+     * Moves the file aside after read failed, so the next write starts a new file instead of
+     * replacing one that may still be recoverable. If it cannot be moved, every later write fails
+     * instead. Returns where the file went.
+     */
+    File quarantine() throws IOException {
+        File file = mFile.getBaseFile();
+        File target = new File(file.getPath() + ".unreadable-" + System.currentTimeMillis());
+        if (!file.renameTo(target)) {
+            mReadOnly = true;
+            throw new IOException("Failed to move " + file + " aside");
+        }
+        return target;
+    }
+
+    /**
+     * Serializes the records right away and replaces the file on a background thread. Writes are
+     * applied in the order they were requested.
+     */
+    void writeAsync(Map<String, EncryptedData> records) {
+        final byte[] bytes = encode(records);
+        mWriter.execute(() -> {
+            try {
+                write(bytes);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write secret store", e);
+            }
+        });
+    }
+
+    /**
+     * Serializes the records right away and replaces the file on the writer thread, like
+     * writeAsync, but returns the pending write for await instead of only logging a failure.
+     * Writes queued before land first, so none of them can overwrite this one afterwards.
+     */
+    Future<Void> writeQueued(Map<String, EncryptedData> records) {
+        final byte[] bytes = encode(records);
+        return mWriter.submit(() -> {
+            write(bytes);
+            return null;
+        });
+    }
+
+    /**
+     * Waits until a write from writeQueued is on disk.
+     */
+    static void await(Future<Void> write) throws IOException {
+        try {
+            write.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing secret store", e);
+        }
+    }
+
+    /**
+     * Replaces the file on the calling thread.
+     */
+    void write(Map<String, EncryptedData> records) throws IOException {
+        write(encode(records));
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        if (mReadOnly) {
+            throw new IOException("Secret store is read-only, its file could not be read");
+        }
+        FileOutputStream out = mFile.startWrite();
+        try {
+            out.write(bytes);
+            mFile.finishWrite(out);
+        } catch (IOException e) {
+            mFile.failWrite(out);
+            throw e;
+        }
+    }
+
+    private static byte[] encode(Map<String, EncryptedData> records) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(records.size());
+            for (Map.Entry<String, EncryptedData> record : records.entrySet()) {
+                out.writeUTF(record.getKey());
+                writeField(out, record.getValue().getInitializationVector());
+                writeField(out, record.getValue().getCiphertext());
+            }
+            out.flush();
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeField(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readField(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FIELD_LENGTH) {
+            throw new IOException("Corrupt secret store record");
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+}
@@ -0,0 +1,400 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * Named-slot store for encrypted secrets.
+ *
+ * Slots are persisted in a small binary SecretStore file in the no-backup directory (the keystore
+ * keys they depend on are not backed up either), so a write never rewrites the app's preferences
+ * and the IV and ciphertext of a slot are always replaced together. The file is read once into an
+ * in-memory index; later lookups never touch the disk again.
+ *
+ * The default slot is encrypted directly by its keystore key. Named slots are encrypted with a
+ * software data key which is itself wrapped by the vault keystore key, so a single biometric
+ * prompt can unlock any number of named slots.
+ */
+final class SecretVault {
+
+    static final String DEFAULT_SLOT = "__default";
+    // Base alias of the key wrapping the vault data key, rotation appends a generation
+    static final String VAULT_KEY = "__aio_vault_key";
+    // EC key pair for signChallenge, not tied to any stored secret
+    static final String SIGNING_KEY = "__aio_signing_key";
+
+    private static final String TAG = "SecretVault";
+    private static final String STORE_FILE_NAME = "biometric-aio-vault.bin";
+    // Vault format used before SecretStore, migrated on first start
+    private static final String PREFERENCES_NAME = "__biometric-aio-vault";
+    private static final String SECRET_KEY = "__aio_secret_key";
+    private static final String SLOT_PREFIX = "slot.";
+    private static final String DATA_KEY_NAME = "dataKey";
+    private static final char GENERATION_SEPARATOR = '.';
+    private static final String LEGACY_CIPHERTEXT_KEY_NAME = "__biometric-aio-ciphertext";
+    private static final String LEGACY_IV_KEY_NAME = "__biometric-aio-iv";
+    private static final char SEPARATOR = ':';
+
+    private static SecretVault sInstance;
+
+    private final SecretStore mStore;
+    private final Map<String, EncryptedData> mEntries = new HashMap<>();
+    private EncryptedData mWrappedDataKey;
+    private int mVaultKeyGeneration = 0;
+    private long mRevision = 0;
+
+    private SecretVault(Context context) {
+        mStore = new SecretStore(new File(context.getNoBackupFilesDir(), STORE_FILE_NAME));
+        Map<String, EncryptedData> records = readStore();
+        if (records != null) {
+            loadIndex(records);
+        } else {
+            migratePreferences(context);
+        }
+        migrateLegacySecret(context);
+    }
+
+    static synchronized SecretVault get(Context context) {
+        if (sInstance == null) {
+            sInstance = new SecretVault(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Keystore alias guarding the given slot. The default slot keeps the alias used before slots
+     * existed so previously registered secrets stay readable.
+     */
+    synchronized String keyAlias(String slot) {
+        return isWrapped(slot) ? getVaultKeyAlias() : SECRET_KEY;
+    }
+
+    /**
+     * Keystore alias currently wrapping the vault data key.
+     */
+    synchronized String getVaultKeyAlias() {
+        return vaultKeyAlias(mVaultKeyGeneration);
+    }
+
+    /**
+     * Alias the vault data key is wrapped with by the next rotation.
+     */
+    synchronized String nextVaultKeyAlias() {
+        return vaultKeyAlias(mVaultKeyGeneration + 1);
+    }
+
+    /**
+     * Whether the slot is encrypted with the wrapped data key instead of a keystore key.
+     */
+    static boolean isWrapped(String slot) {
+        return !DEFAULT_SLOT.equals(normalizeSlot(slot));
+    }
+
+    static String normalizeSlot(String slot) {
+        return slot == null || slot.isEmpty() ? DEFAULT_SLOT : slot;
+    }
+
+    /**
+     * Generation 0 keeps the alias used before rotation existed.
+     */
+    private static String vaultKeyAlias(int generation) {
+        return VAULT_KEY + generationSuffix(generation);
+    }
+
+    private static String generationSuffix(int generation) {
+        return generation == 0 ? "" : GENERATION_SEPARATOR + String.valueOf(generation);
+    }
+
+    private static int parseGeneration(String suffix) {
+        if (suffix.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(suffix.substring(1));
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Ignoring malformed data key generation " + suffix);
+            return 0;
+        }
+    }
+
+    synchronized EncryptedData load(String slot) throws CryptoException {
+        EncryptedData data = mEntries.get(normalizeSlot(slot));
+        if (data == null) {
+            throw new CryptoException(PluginError.BIOMETRIC_NO_SECRET_FOUND);
+        }
+        return data;
+    }
+
+    /**
+     * Looks up all requested slots at once, failing before any prompt is shown if one is missing.
+     */
+    synchronized Map<String, EncryptedData> load(String[] slots) throws CryptoException {
+        Map<String, EncryptedData> entries = new LinkedHashMap<>();
+        for (String slot : slots) {
+            entries.put(slot, load(slot));
+        }
+        return entries;
+    }
+
+    synchronized boolean contains(String slot) {
+        return mEntries.containsKey(normalizeSlot(slot));
+    }
+
+    /**
+     * Changes on every write, so callers can tell whether state they read earlier is still current.
+     */
+    synchronized long getRevision() {
+        return mRevision;
+    }
+
+    synchronized Set<String> getSlots() {
+        return Collections.unmodifiableSet(new HashSet<>(mEntries.keySet()));
+    }
+
+    synchronized void save(String slot, EncryptedData data) {
+        mRevision++;
+        slot = normalizeSlot(slot);
+        mEntries.put(slot, data);
+        persist();
+    }
+
+    synchronized void remove(String slot) {
+        mRevision++;
+        slot = normalizeSlot(slot);
+        mEntries.remove(slot);
+        persist();
+    }
+
+    /**
+     * The data key wrapped by the vault keystore key, or null if no named slot was registered yet.
+     */
+    synchronized EncryptedData loadWrappedDataKey() {
+        return mWrappedDataKey;
+    }
+
+    synchronized void saveWrappedDataKey(EncryptedData wrappedDataKey) {
+        mRevision++;
+        mWrappedDataKey = wrappedDataKey;
+        persist();
+    }
+
+    /**
+     * Replaces the wrapped data key with the same key wrapped under the alias returned by
+     * nextVaultKeyAlias. Returns the alias it was wrapped with before. The store is written before
+     * this returns, since the previous alias is deleted next and a store still referencing it
+     * would lose every named slot. The slots stay as they are since the data key does not change.
+     * Blocks on the disk, so call it off the UI thread; the vault stays usable meanwhile.
+     */
+    String rotateWrappedDataKey(EncryptedData wrappedDataKey) throws CryptoException {
+        String previousAlias;
+        EncryptedData previousWrappedDataKey;
+        long revision;
+        Future<Void> write;
+        synchronized (this) {
+            previousAlias = getVaultKeyAlias();
+            previousWrappedDataKey = mWrappedDataKey;
+            mRevision++;
+            mVaultKeyGeneration++;
+            mWrappedDataKey = wrappedDataKey;
+            revision = mRevision;
+            write = mStore.writeQueued(records());
+        }
+        try {
+            SecretStore.await(write);
+        } catch (IOException e) {
+            synchronized (this) {
+                // A later write carries the new key to disk itself, both aliases still exist then
+                if (mRevision == revision) {
+                    mVaultKeyGeneration--;
+                    mWrappedDataKey = previousWrappedDataKey;
+                }
+            }
+            throw new CryptoException(e.getMessage(), e);
+        }
+        return previousAlias;
+    }
+
+    /**
+     * Drops the wrapped data key together with every slot it protects. Used once the vault
+     * keystore key was invalidated and those slots can never be decrypted again.
+     */
+    synchronized void clearWrappedSlots() {
+        mRevision++;
+        Iterator<String> slots = mEntries.keySet().iterator();
+        while (slots.hasNext()) {
+            if (isWrapped(slots.next())) {
+                slots.remove();
+            }
+        }
+        mWrappedDataKey = null;
+        persist();
+        AuthSession.clear();
+        DataKeyHolder.clear();
+    }
+
+    /**
+     * Removes the slot unless the vault was written since getRevision returned the given revision,
+     * in which case whatever the caller decided from its earlier reads may be stale. Returns
+     * whether the slot was removed.
+     */
+    synchronized boolean removeIfUnchanged(String slot, long revision) {
+        if (mRevision != revision) {
+            return false;
+        }
+        remove(slot);
+        return true;
+    }
+
+    /**
+     * clearWrappedSlots, but only if the vault was not written since getRevision returned the
+     * given revision, e.g. by a rotation that replaced the key the caller probed. Returns the
+     * removed slots, or null if the vault changed.
+     */
+    synchronized List<String> clearWrappedSlotsIfUnchanged(long revision) {
+        if (mRevision != revision) {
+            return null;
+        }
+        List<String> removed = new ArrayList<>();
+        for (String slot : mEntries.keySet()) {
+            if (isWrapped(slot)) {
+                removed.add(slot);
+            }
+        }
+        clearWrappedSlots();
+        return removed;
+    }
+
+    /**
+     * The stored records, or null if the store was never written. An unreadable file is moved
+     * aside before the vault starts empty, so the next write cannot replace it; if it cannot be
+     * moved, the store refuses writes for the rest of the process.
+     */
+    private Map<String, EncryptedData> readStore() {
+        try {
+            return mStore.read();
+        } catch (IOException e) {
+            Log.e(TAG, "Secret store is unreadable", e);
+        }
+        try {
+            Log.e(TAG, "Moved unreadable secret store to " + mStore.quarantine());
+        } catch (IOException e) {
+            Log.e(TAG, "Keeping unreadable secret store read-only", e);
+        }
+        return Collections.emptyMap();
+    }
+
+    private void loadIndex(Map<String, EncryptedData> records) {
+        for (Map.Entry<String, EncryptedData> record : records.entrySet()) {
+            String name = record.getKey();
+            if (name.startsWith(DATA_KEY_NAME)) {
+                mWrappedDataKey = record.getValue();
+                mVaultKeyGeneration = parseGeneration(name.substring(DATA_KEY_NAME.length()));
+            } else if (name.startsWith(SLOT_PREFIX)) {
+                mEntries.put(name.substring(SLOT_PREFIX.length()), record.getValue());
+            }
+        }
+    }
+
+    private Map<String, EncryptedData> records() {
+        Map<String, EncryptedData> records = new LinkedHashMap<>();
+        if (mWrappedDataKey != null) {
+            records.put(DATA_KEY_NAME + generationSuffix(mVaultKeyGeneration), mWrappedDataKey);
+        }
+        for (Map.Entry<String, EncryptedData> entry : mEntries.entrySet()) {
+            records.put(SLOT_PREFIX + entry.getKey(), entry.getValue());
+        }
+        return records;
+    }
+
+    private void persist() {
+        mStore.writeAsync(records());
+    }
+
+    /**
+     * Moves the vault out of the preferences file used by earlier versions. The preferences are
+     * only cleared once the store file was written.
+     */
+    private void migratePreferences(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        Map<String, ?> values = preferences.getAll();
+        if (values.isEmpty()) {
+            return;
+        }
+        Map<String, EncryptedData> records = new LinkedHashMap<>();
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            if (entry.getValue() instanceof String) {
+                EncryptedData data = decode((String) entry.getValue());
+                if (data != null) {
+                    records.put(entry.getKey(), data);
+                }
+            }
+        }
+        loadIndex(records);
+        try {
+            mStore.write(records());
+            preferences.edit().clear().apply();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to migrate vault preferences", e);
+        }
+    }
+
+    /**
+     * Moves a secret registered by an older plugin version out of the default preferences into the
+     * default slot. The preferences are only cleared once the store file was written, they hold the
+     * only copy of the secret until then.
+     */
+    private void migrateLegacySecret(Context context) {
+        SharedPreferences legacy = PreferenceManager.getDefaultSharedPreferences(context);
+        String iv = legacy.getString(LEGACY_IV_KEY_NAME, null);
+        String ciphertext = legacy.getString(LEGACY_CIPHERTEXT_KEY_NAME, null);
+        if (iv == null || ciphertext == null) {
+            return;
+        }
+        if (!mEntries.containsKey(DEFAULT_SLOT)) {
+            mRevision++;
+            mEntries.put(DEFAULT_SLOT, new EncryptedData(
+                    Base64.decode(ciphertext, Base64.DEFAULT),
+                    Base64.decode(iv, Base64.DEFAULT)));
+            try {
+                mStore.write(records());
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to migrate legacy secret", e);
+                return;
+            }
+        }
+        legacy.edit()
+                .remove(LEGACY_IV_KEY_NAME)
+                .remove(LEGACY_CIPHERTEXT_KEY_NAME)
+                .apply();
+    }
+
+    private static EncryptedData decode(String value) {
+        int separator = value.indexOf(SEPARATOR);
+        if (separator < 0) {
+            return null;
+        }
+        try {
+            byte[] iv = Base64.decode(value.substring(0, separator), Base64.NO_WRAP);
+            byte[] ciphertext = Base64.decode(value.substring(separator + 1), Base64.NO_WRAP);
+            return new EncryptedData(ciphertext, iv);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -143,7 +143,7 @@ enum PluginError:Int {
         let data  = command.arguments[0] as AnyObject?;
         var pluginResult: CDVPluginResult
         do {
-            let secret = Secret()
+            let secret = Secret(slot: data?.object(forKey: "slot") as? String)
             try? secret.delete()
             let invalidateOnEnrollment = (data?.object(forKey: "invalidateOnEnrollment") as? Bool) ?? false
             try secret.save(secretStr, invalidateOnEnrollment: invalidateOnEnrollment)
@@ -165,7 +165,7 @@ enum PluginError:Int {
         }
         var pluginResult: CDVPluginResult
         do {
-            let result = try Secret().load(prompt)
+            let result = try Secret(slot: data?.object(forKey: "slot") as? String).load(prompt)
             pluginResult = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: result);
         } catch {
             var code = PluginError.BIOMETRIC_UNKNOWN_ERROR.rawValue
@@ -199,6 +199,20 @@ enum PluginError:Int {
         self.loadSecret(command)
     }
 
+    @objc(prepare:)
+    func prepare(_ command: CDVInvokedUrlCommand){
+        // Nothing to warm up on iOS, the keychain prompt is shown by the system
+        let pluginResult = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: "prepared");
+        commandDelegate.send(pluginResult, callbackId:command.callbackId);
+    }
+
+    @objc(getMetrics:)
+    func getMetrics(_ command: CDVInvokedUrlCommand){
+        // Phase timings are only recorded on Android
+        let pluginResult = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: []);
+        commandDelegate.send(pluginResult, callbackId:command.callbackId);
+    }
+
     override func pluginInitialize() {
         super.pluginInitialize()
     }
@@ -245,6 +259,16 @@ class Secret {
 
     private static let keyName: String = "__aio_key"
 
+    private let account: String
+
+    init(slot: String? = nil) {
+        if let slot = slot, !slot.isEmpty {
+            account = Secret.keyName + "." + slot
+        } else {
+            account = Secret.keyName
+        }
+    }
+
     private func getBioSecAccessControl(invalidateOnEnrollment: Bool) -> SecAccessControl {
         var access: SecAccessControl?
         var error: Unmanaged<CFError>?
@@ -273,7 +297,7 @@ class Secret {
 
         // Build the query for use in the add operation.
         let query: [String: Any] = [kSecClass as String: kSecClassGenericPassword,
-                                    kSecAttrAccount as String: Secret.keyName,
+                                    kSecAttrAccount as String: account,
                                     kSecAttrAccessControl as String: getBioSecAccessControl(invalidateOnEnrollment: invalidateOnEnrollment),
                                     kSecValueData as String: password]
 
@@ -283,7 +307,7 @@ class Secret {
 
     func load(_ prompt: String) throws -> String {
         let query: [String: Any] = [kSecClass as String: kSecClassGenericPassword,
-                                    kSecAttrAccount as String: Secret.keyName,
+                                    kSecAttrAccount as String: account,
                                     kSecMatchLimit as String: kSecMatchLimitOne,
                                     kSecReturnData as String : kCFBooleanTrue,
                                     kSecAttrAccessControl as String: getBioSecAccessControl(invalidateOnEnrollment: true),
@@ -305,7 +329,7 @@ class Secret {
 
     func delete() throws {
         let query: [String: Any] = [kSecClass as String: kSecClassGenericPassword,
-                                    kSecAttrAccount as String: Secret.keyName]
+                                    kSecAttrAccount as String: account]
 
         let status = SecItemDelete(query as CFDictionary)
         guard status == errSecSuccess else { throw KeychainError(status: status) }
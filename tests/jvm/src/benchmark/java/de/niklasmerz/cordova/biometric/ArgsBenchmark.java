@@ -0,0 +1,85 @@
+package de.niklasmerz.cordova.biometric;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Time and allocations per call for decoding the options of a typical secret prompt. The baseline
+ * reads the same options straight from the JSON the way the plugin did before Args decoded them
+ * once: each string through optString twice plus getString, after writing the maxAttempts default
+ * into the arguments. Both start from the JSON text, so parsing alone is measured too and the
+ * difference to it is the cost of reading the options.
+ */
+final class ArgsBenchmark {
+
+    private static final String OPTIONS = "[{\"title\":\"Unlock\",\"subtitle\":\"Your vault\","
+            + "\"description\":\"Confirm to continue\",\"fallbackButtonTitle\":\"Use PIN\","
+            + "\"cancelButtonTitle\":\"Cancel\",\"disableBackup\":false,\"confirmationRequired\":true,"
+            + "\"secret\":\"s3cr3t\",\"slot\":\"token\",\"sessionTtlMs\":30000}]";
+
+    private static final String[] STRINGS = {"title", "subtitle", "description", "fallbackButtonTitle",
+            "cancelButtonTitle", "secret", "slot"};
+    private static final String[] BOOLEANS = {"disableBackup", "confirmationRequired"};
+    private static final String[] INTS = {"maxAttempts", "sessionTtlMs"};
+
+    private static long sSink;
+
+    private ArgsBenchmark() {
+    }
+
+    static void run() {
+        Bench.section("Options");
+        Bench bench = new Bench(200_000, 1_000_000);
+        bench.run("JSON parse", ArgsBenchmark::parseOnly);
+        bench.run("JSON lookups", ArgsBenchmark::jsonLookups);
+        bench.run("Args", ArgsBenchmark::decoded);
+    }
+
+    private static void parseOnly() {
+        sSink += new JSONArray(OPTIONS).length();
+    }
+
+    private static void jsonLookups() {
+        try {
+            JSONArray jsonArray = new JSONArray(OPTIONS);
+            JSONObject object = jsonArray.getJSONObject(0);
+            if (!object.has("maxAttempts")) {
+                object.put("maxAttempts", 5);
+            }
+            for (String name : STRINGS) {
+                if (object.optString(name) != null && !object.optString(name).isEmpty()) {
+                    sSink += object.getString(name).length();
+                }
+            }
+            for (String name : BOOLEANS) {
+                if (object.optBoolean(name, false)) {
+                    sSink++;
+                }
+            }
+            for (String name : INTS) {
+                sSink += object.optInt(name, 0);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void decoded() {
+        Args args = new Args(new JSONArray(OPTIONS));
+        if (args.getError() != null) {
+            throw new IllegalStateException(args.getError());
+        }
+        for (String name : STRINGS) {
+            String value = args.getString(name, null);
+            sSink += value == null ? 0 : value.length();
+        }
+        for (String name : BOOLEANS) {
+            if (args.getBoolean(name, false)) {
+                sSink++;
+            }
+        }
+        for (String name : INTS) {
+            sSink += args.getInt(name, 5);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package de.niklasmerz.cordova.biometric;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Runs a call in a loop after a warm-up and reports the time and the bytes allocated per call on
+ * the calling thread. A small stand-in for JMH: good for comparing variants within one run on the
+ * same JVM, not for absolute numbers on a device.
+ */
+final class Bench {
+
+    /**
+     * A benchmarked call; checked exceptions abort the run.
+     */
+    interface Call {
+        void run() throws Exception;
+    }
+
+    /**
+     * Averages over the measured iterations.
+     */
+    static final class Result {
+        final double nanosPerCall;
+        final long bytesPerCall;
+
+        Result(double nanosPerCall, long bytesPerCall) {
+            this.nanosPerCall = nanosPerCall;
+            this.bytesPerCall = bytesPerCall;
+        }
+    }
+
+    private static final ThreadMXBean sThreads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final int mWarmupIterations;
+    private final int mIterations;
+
+    Bench(int warmupIterations, int iterations) {
+        mWarmupIterations = warmupIterations;
+        mIterations = iterations;
+    }
+
+    static void section(String title) {
+        System.out.println();
+        System.out.println(title);
+    }
+
+    void run(String name, Call call) {
+        print(name, measure(call), "");
+    }
+
+    Result measure(Call call) {
+        long thread = Thread.currentThread().getId();
+        try {
+            for (int i = 0; i < mWarmupIterations; i++) {
+                call.run();
+            }
+            long bytesBefore = sThreads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            for (int i = 0; i < mIterations; i++) {
+                call.run();
+            }
+            long nanos = System.nanoTime() - start;
+            long bytes = sThreads.getThreadAllocatedBytes(thread) - bytesBefore;
+            return new Result((double) nanos / mIterations, bytes / mIterations);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void print(String name, Result result, String extra) {
+        System.out.printf("%-32s %10.0f ns/call %10d bytes/call  %s%n", name,
+                result.nanosPerCall, result.bytesPerCall, extra);
+    }
+}
@@ -0,0 +1,39 @@
+package de.niklasmerz.cordova.biometric;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Runs every benchmark on a fresh test device. Run with `gradle -p tests/jvm benchmark`.
+ */
+public final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        File dataDir = Files.createTempDirectory("biometric-benchmark").toFile();
+        try {
+            TestDevice device = TestDevice.create(dataDir);
+            ArgsBenchmark.run();
+            PromptInfoBenchmark.run(device);
+            KeyResolutionBenchmark.run(device);
+            CryptoBenchmark.run(device);
+            PersistenceBenchmark.run(device);
+        } finally {
+            delete(dataDir);
+        }
+        // The plugin's writer and background threads are not daemons
+        System.exit(0);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,82 @@
+package de.niklasmerz.cordova.biometric;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+
+/**
+ * Encryption and decryption with the vault data key in software, which is what runs on the device
+ * too: single records, batches of records and the chunked file format. The keystore cipher rows go
+ * through the software AndroidKeyStore, so they show the plugin's own overhead around the cipher
+ * but not what secure hardware adds to each operation.
+ */
+final class CryptoBenchmark {
+
+    private static final int RECORDS = 100;
+    private static final int STREAM_BYTES = 1 << 20;
+
+    private static long sSink;
+
+    private CryptoBenchmark() {
+    }
+
+    static void run(TestDevice device) throws CryptoException {
+        CryptographyManagerImpl crypto = new CryptographyManagerImpl();
+        byte[] dataKey = crypto.generateDataKey();
+        String secret = repeat('s', 64);
+        String[] records = new String[RECORDS];
+        Arrays.fill(records, secret);
+        EncryptedData encrypted = crypto.encryptData(secret, dataKey);
+        EncryptedData[] encryptedRecords = crypto.encryptData(records, dataKey);
+
+        Bench.section("Data key (AES-GCM in software)");
+        Bench records64 = new Bench(20_000, 100_000);
+        records64.run("encrypt 64 B record", () -> sSink += crypto.encryptData(secret, dataKey).getCiphertext().length);
+        records64.run("decrypt 64 B record", () -> sSink += crypto.decryptData(
+                new EncryptedData[]{encrypted}, dataKey)[0].length());
+        Bench batch = new Bench(500, 2_000);
+        batch.run("encrypt " + RECORDS + " records", () -> sSink += crypto.encryptData(records, dataKey).length);
+        batch.run("decrypt " + RECORDS + " records", () -> sSink += crypto.decryptData(encryptedRecords, dataKey).length);
+
+        byte[] plain = new byte[STREAM_BYTES];
+        ByteArrayOutputStream sealed = new ByteArrayOutputStream(STREAM_BYTES + STREAM_BYTES / 16);
+        crypto.encryptStream(new ByteArrayInputStream(plain), sealed, dataKey);
+        byte[] ciphertext = sealed.toByteArray();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(STREAM_BYTES + STREAM_BYTES / 16);
+        Bench stream = new Bench(20, 100);
+        printThroughput("encrypt 1 MiB stream", stream.measure(() -> {
+            out.reset();
+            crypto.encryptStream(new ByteArrayInputStream(plain), out, dataKey);
+        }));
+        printThroughput("decrypt 1 MiB stream", stream.measure(() -> {
+            out.reset();
+            crypto.decryptStream(new ByteArrayInputStream(ciphertext), out, dataKey);
+        }));
+
+        Bench.section("Keystore cipher (software AndroidKeyStore)");
+        String alias = SecretVault.VAULT_KEY;
+        Cipher encryptCipher = crypto.getInitializedCipherForEncryption(alias, false, device.context);
+        EncryptedData sealedSecret = crypto.encryptData(secret, encryptCipher);
+        Bench keystore = new Bench(20_000, 100_000);
+        keystore.run("encrypt 64 B secret", () -> sSink += crypto.encryptData(secret,
+                crypto.getInitializedCipherForEncryption(alias, false, device.context)).getCiphertext().length);
+        keystore.run("decrypt 64 B secret", () -> sSink += crypto.decryptData(sealedSecret.getCiphertext(),
+                crypto.getInitializedCipherForDecryption(alias, sealedSecret.getInitializationVector(),
+                        device.context)).length);
+        keystore.run("wrap data key", () -> sSink += crypto.wrapDataKey(dataKey,
+                crypto.getInitializedCipherForEncryption(alias, false, device.context)).getCiphertext().length);
+    }
+
+    private static void printThroughput(String name, Bench.Result result) {
+        double megabytesPerSecond = STREAM_BYTES / (result.nanosPerCall / 1e9) / (1 << 20);
+        Bench.print(name, result, String.format("%.0f MiB/s", megabytesPerSecond));
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,52 @@
+package de.niklasmerz.cordova.biometric;
+
+/**
+ * Getting an initialized keystore cipher the first time in a process (cold: the keystore is loaded
+ * and the key looked up) and afterwards (warm: both come from CryptographyManagerImpl's cache).
+ * On a device each keystore call is a binder round trip into the keystore daemon, which the
+ * software keystore does not have, so the keystore calls per operation are reported next to the
+ * JVM time. Initializing the cipher itself is the same on both paths.
+ */
+final class KeyResolutionBenchmark {
+
+    private static long sSink;
+
+    private KeyResolutionBenchmark() {
+    }
+
+    static void run(TestDevice device) throws Exception {
+        CryptographyManagerImpl crypto = new CryptographyManagerImpl();
+        String alias = SecretVault.VAULT_KEY;
+        crypto.provisionKey(alias, false, device.context);
+        byte[] iv = crypto.getInitializedCipherForEncryption(alias, false, device.context).getIV();
+
+        Bench.Call encrypt = () -> sSink += crypto.getInitializedCipherForEncryption(alias, false, device.context)
+                .getBlockSize();
+        Bench.Call decrypt = () -> sSink += crypto.getInitializedCipherForDecryption(alias, iv, device.context)
+                .getBlockSize();
+
+        Bench.section("Key and cipher resolution");
+        Bench bench = new Bench(20_000, 50_000);
+        report(bench, "encrypt cipher, cold", coldly(encrypt));
+        report(bench, "encrypt cipher, warm", encrypt);
+        report(bench, "decrypt cipher, cold", coldly(decrypt));
+        report(bench, "decrypt cipher, warm", decrypt);
+    }
+
+    private static Bench.Call coldly(Bench.Call call) {
+        return () -> {
+            TestDevice.dropKeyCaches();
+            call.run();
+        };
+    }
+
+    /**
+     * Counts the keystore calls of a single call, then measures it.
+     */
+    private static void report(Bench bench, String name, Bench.Call call) throws Exception {
+        int before = FakeAndroidKeyStore.getKeyStoreCalls();
+        call.run();
+        int keyStoreCalls = FakeAndroidKeyStore.getKeyStoreCalls() - before;
+        Bench.print(name, bench.measure(call), keyStoreCalls + " keystore calls");
+    }
+}
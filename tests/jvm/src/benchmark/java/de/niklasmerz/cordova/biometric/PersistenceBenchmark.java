@@ -0,0 +1,39 @@
+package de.niklasmerz.cordova.biometric;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writing and reading the secret store with a typical number of slots. The synchronous write
+ * includes the fsync of the temporary file, so it depends on the disk the benchmark runs on. The
+ * queued write only measures what the caller pays, which is what a prompt callback sees.
+ */
+final class PersistenceBenchmark {
+
+    private static final int SLOTS = 16;
+
+    private static long sSink;
+
+    private PersistenceBenchmark() {
+    }
+
+    static void run(TestDevice device) throws CryptoException, IOException {
+        CryptographyManagerImpl crypto = new CryptographyManagerImpl();
+        byte[] dataKey = crypto.generateDataKey();
+        Map<String, EncryptedData> records = new LinkedHashMap<>();
+        for (int i = 0; i < SLOTS; i++) {
+            records.put("slot" + i, crypto.encryptData("secret number " + i, dataKey));
+        }
+        SecretStore store = new SecretStore(new File(device.context.getNoBackupFilesDir(), "bench_secrets"));
+        store.write(records);
+
+        Bench.section("Secret store (" + SLOTS + " slots)");
+        Bench disk = new Bench(50, 500);
+        disk.run("write (fsync)", () -> store.write(records));
+        disk.run("read", () -> sSink += store.read().size());
+        new Bench(1_000, 10_000).run("queue write (caller)", () -> store.writeAsync(records));
+        SecretStore.await(store.writeQueued(records));
+    }
+}
@@ -0,0 +1,211 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.content.Intent;
+import android.os.Bundle;
+
+import org.json.JSONArray;
+
+/**
+ * Getting the options of a prompt from the plugin call to BiometricActivity and reading each of
+ * them once, as the prompt does. The Bundle path is how PromptInfo worked before: the options were
+ * put into a Bundle, copied into the Intent extras, copied out again by the activity and every
+ * getter was a lookup by key. The current path builds the immutable PromptInfo and hands it over
+ * by request id. Bundle and Intent are plain maps here; on a device the Bundle is also written to
+ * and read from a Parcel, so the difference measured is a lower bound.
+ */
+final class PromptInfoBenchmark {
+
+    private static final Args ARGS = new Args(new JSONArray("[{\"title\":\"Unlock\",\"subtitle\":\"Your vault\","
+            + "\"description\":\"Confirm to continue\",\"fallbackButtonTitle\":\"Use PIN\","
+            + "\"cancelButtonTitle\":\"Cancel\",\"disableBackup\":false,\"confirmationRequired\":true,"
+            + "\"secret\":\"s3cr3t\",\"slot\":\"token\",\"sessionTtlMs\":30000}]"));
+    private static final int REQUEST_ID = 7;
+
+    private static long sSink;
+
+    private PromptInfoBenchmark() {
+    }
+
+    static void run(TestDevice device) {
+        Bench.section("Prompt options to BiometricActivity");
+        Bench bench = new Bench(200_000, 1_000_000);
+        bench.run("Bundle in Intent extras", () -> viaBundle(device));
+        bench.run("PromptInfo handed over", PromptInfoBenchmark::viaHandOver);
+    }
+
+    private static void viaBundle(TestDevice device) {
+        Bundle options = BundlePromptInfo.build(ARGS, BiometricActivityType.REGISTER_SECRET, REQUEST_ID);
+        Intent intent = new Intent(device.context, BiometricActivity.class);
+        intent.putExtras(options);
+        BundlePromptInfo promptInfo = new BundlePromptInfo(intent.getExtras());
+        sSink += promptInfo.getTitle().length() + promptInfo.getDescription().length()
+                + promptInfo.getSubtitle().length() + promptInfo.getFallbackButtonTitle().length()
+                + promptInfo.getCancelButtonTitle().length() + promptInfo.getSecret().length()
+                + promptInfo.getSlot().length() + promptInfo.getMaxAttempts() + promptInfo.getSessionTtlMs()
+                + promptInfo.getKeepUnlockedMs() + promptInfo.getRequestId() + promptInfo.getType().getValue()
+                + (promptInfo.getSlots() == null ? 0 : 1) + (promptInfo.getChallenge() == null ? 0 : 1)
+                + (promptInfo.getChallenges() == null ? 0 : 1)
+                + (promptInfo.isDeviceCredentialAllowed() ? 1 : 0)
+                + (promptInfo.getConfirmationRequired() ? 1 : 0)
+                + (promptInfo.invalidateOnEnrollment() ? 1 : 0)
+                + (promptInfo.isInProcessPrompt() ? 1 : 0)
+                + (promptInfo.preferStrongBox() ? 1 : 0);
+    }
+
+    private static void viaHandOver() {
+        PromptInfo.Builder builder = new PromptInfo.Builder(FakeContext.APPLICATION_LABEL);
+        builder.parseArgs(ARGS, BiometricActivityType.REGISTER_SECRET);
+        builder.setRequestId(REQUEST_ID);
+        PromptInfo.handOver(builder.build());
+        PromptInfo promptInfo = PromptInfo.claim(REQUEST_ID);
+        sSink += promptInfo.getTitle().length() + promptInfo.getDescription().length()
+                + promptInfo.getSubtitle().length() + promptInfo.getFallbackButtonTitle().length()
+                + promptInfo.getCancelButtonTitle().length() + promptInfo.getSecret().length()
+                + promptInfo.getSlot().length() + promptInfo.getMaxAttempts() + promptInfo.getSessionTtlMs()
+                + promptInfo.getKeepUnlockedMs() + promptInfo.getRequestId() + promptInfo.getType().getValue()
+                + (promptInfo.getSlots() == null ? 0 : 1) + (promptInfo.getChallenge() == null ? 0 : 1)
+                + (promptInfo.getChallenges() == null ? 0 : 1)
+                + (promptInfo.isDeviceCredentialAllowed() ? 1 : 0)
+                + (promptInfo.getConfirmationRequired() ? 1 : 0)
+                + (promptInfo.invalidateOnEnrollment() ? 1 : 0)
+                + (promptInfo.isInProcessPrompt() ? 1 : 0)
+                + (promptInfo.preferStrongBox() ? 1 : 0);
+    }
+
+    /**
+     * The Bundle-backed PromptInfo as it was before the handover, with its keys and defaults.
+     */
+    private static final class BundlePromptInfo {
+        private static final String DISABLE_BACKUP = "disableBackup";
+        private static final String TITLE = "title";
+        private static final String SUBTITLE = "subtitle";
+        private static final String DESCRIPTION = "description";
+        private static final String FALLBACK_BUTTON_TITLE = "fallbackButtonTitle";
+        private static final String CANCEL_BUTTON_TITLE = "cancelButtonTitle";
+        private static final String CONFIRMATION_REQUIRED = "confirmationRequired";
+        private static final String INVALIDATE_ON_ENROLLMENT = "invalidateOnEnrollment";
+        private static final String SECRET = "secret";
+        private static final String SLOT = "slot";
+        private static final String SLOTS = "slots";
+        private static final String BIOMETRIC_ACTIVITY_TYPE = "biometricActivityType";
+        private static final String MAX_ATTEMPTS = "maxAttempts";
+        private static final String SESSION_TTL_MS = "sessionTtlMs";
+        private static final String KEEP_UNLOCKED_MS = "keepUnlockedMs";
+        private static final String PREFER_STRONG_BOX = "preferStrongBox";
+        private static final String REQUEST_ID = "requestId";
+        private static final String IN_PROCESS_PROMPT = "inProcessPrompt";
+        private static final String CHALLENGE = "challenge";
+        private static final String CHALLENGES = "challenges";
+
+        private final Bundle mBundle;
+
+        BundlePromptInfo(Bundle bundle) {
+            mBundle = bundle;
+        }
+
+        static Bundle build(Args args, BiometricActivityType type, int requestId) {
+            Bundle bundle = new Bundle();
+            bundle.putString(SUBTITLE, args.getString(SUBTITLE, null));
+            bundle.putString(TITLE, args.getString(TITLE, FakeContext.APPLICATION_LABEL + " Biometric Sign On"));
+            bundle.putString(DESCRIPTION, args.getString(DESCRIPTION, null));
+            bundle.putString(FALLBACK_BUTTON_TITLE, args.getString(FALLBACK_BUTTON_TITLE, "Use backup"));
+            bundle.putString(CANCEL_BUTTON_TITLE, args.getString(CANCEL_BUTTON_TITLE, "Cancel"));
+            bundle.putString(SECRET, args.getString(SECRET, null));
+            bundle.putString(SLOT, SecretVault.normalizeSlot(args.getString(SLOT, null)));
+            bundle.putStringArray(SLOTS, args.getStringArray(SLOTS, null));
+            bundle.putString(CHALLENGE, args.getString(CHALLENGE, null));
+            bundle.putStringArray(CHALLENGES, args.getStringArray(CHALLENGES, null));
+            bundle.putBoolean(DISABLE_BACKUP, args.getBoolean(DISABLE_BACKUP, false));
+            bundle.putBoolean(CONFIRMATION_REQUIRED, args.getBoolean(CONFIRMATION_REQUIRED, true));
+            bundle.putBoolean(INVALIDATE_ON_ENROLLMENT, args.getBoolean(INVALIDATE_ON_ENROLLMENT, false));
+            bundle.putInt(BIOMETRIC_ACTIVITY_TYPE, type.getValue());
+            bundle.putInt(MAX_ATTEMPTS, args.getInt(MAX_ATTEMPTS, 5));
+            bundle.putInt(SESSION_TTL_MS, args.getInt(SESSION_TTL_MS, 0));
+            bundle.putInt(KEEP_UNLOCKED_MS, args.getInt(KEEP_UNLOCKED_MS, 0));
+            bundle.putInt(REQUEST_ID, requestId);
+            bundle.putBoolean(IN_PROCESS_PROMPT, args.getBoolean(IN_PROCESS_PROMPT, false));
+            bundle.putBoolean(PREFER_STRONG_BOX, args.getBoolean(PREFER_STRONG_BOX, false));
+            return bundle;
+        }
+
+        String getTitle() {
+            return mBundle.getString(TITLE);
+        }
+
+        String getSubtitle() {
+            return mBundle.getString(SUBTITLE);
+        }
+
+        String getDescription() {
+            return mBundle.getString(DESCRIPTION);
+        }
+
+        boolean isDeviceCredentialAllowed() {
+            return !mBundle.getBoolean(DISABLE_BACKUP);
+        }
+
+        String getFallbackButtonTitle() {
+            return mBundle.getString(FALLBACK_BUTTON_TITLE);
+        }
+
+        String getCancelButtonTitle() {
+            return mBundle.getString(CANCEL_BUTTON_TITLE);
+        }
+
+        boolean getConfirmationRequired() {
+            return mBundle.getBoolean(CONFIRMATION_REQUIRED);
+        }
+
+        String getSecret() {
+            return mBundle.getString(SECRET);
+        }
+
+        String getSlot() {
+            return mBundle.getString(SLOT);
+        }
+
+        String[] getSlots() {
+            return mBundle.getStringArray(SLOTS);
+        }
+
+        boolean invalidateOnEnrollment() {
+            return mBundle.getBoolean(INVALIDATE_ON_ENROLLMENT);
+        }
+
+        int getMaxAttempts() {
+            return mBundle.containsKey(MAX_ATTEMPTS) ? mBundle.getInt(MAX_ATTEMPTS) : 5;
+        }
+
+        int getSessionTtlMs() {
+            return mBundle.getInt(SESSION_TTL_MS);
+        }
+
+        int getKeepUnlockedMs() {
+            return mBundle.getInt(KEEP_UNLOCKED_MS);
+        }
+
+        boolean isInProcessPrompt() {
+            return mBundle.getBoolean(IN_PROCESS_PROMPT);
+        }
+
+        String getChallenge() {
+            return mBundle.getString(CHALLENGE);
+        }
+
+        String[] getChallenges() {
+            return mBundle.getStringArray(CHALLENGES);
+        }
+
+        boolean preferStrongBox() {
+            return mBundle.getBoolean(PREFER_STRONG_BOX);
+        }
+
+        int getRequestId() {
+            return mBundle.getInt(REQUEST_ID);
+        }
+
+        BiometricActivityType getType() {
+            return BiometricActivityType.fromValue(mBundle.getInt(BIOMETRIC_ACTIVITY_TYPE));
+        }
+    }
+}
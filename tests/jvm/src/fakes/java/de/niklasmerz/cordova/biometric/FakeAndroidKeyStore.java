@@ -0,0 +1,697 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.security.KeyPairGeneratorSpec;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyInfo;
+import android.security.keystore.KeyPermanentlyInvalidatedException;
+import android.security.keystore.KeyProperties;
+import android.security.keystore.StrongBoxUnavailableException;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyPairGeneratorSpi;
+import java.security.KeyStoreSpi;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.SignatureSpi;
+import java.security.cert.Certificate;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.KeySpec;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.KeyGeneratorSpi;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactorySpi;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A software "AndroidKeyStore" provider with the parts of the platform keystore the plugin relies
+ * on: keys are only handles whose material never leaves the provider, generated keys are found by
+ * alias, ciphers pick the provider through the key class, encryption keys refuse caller-provided
+ * IVs, an invalidated key throws KeyPermanentlyInvalidatedException on init, and StrongBox can be
+ * unavailable. Keystore calls are counted, since each one is a binder call on a device.
+ *
+ * Not modeled: user authentication. Keys created with setUserAuthenticationRequired work without
+ * a prompt, so tests cannot catch a cipher used outside of its BiometricPrompt.
+ */
+final class FakeAndroidKeyStore extends Provider {
+
+    static final String NAME = "AndroidKeyStore";
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+
+    private static final Map<String, Entry> sEntries = new ConcurrentHashMap<>();
+    private static final AtomicInteger sKeyStoreCalls = new AtomicInteger();
+    private static final AtomicInteger sGeneratedKeys = new AtomicInteger();
+    private static volatile boolean sStrongBoxAvailable = true;
+
+    private FakeAndroidKeyStore() {
+        super(NAME, 1.0, "Software stand-in for the Android keystore");
+        putService(new FactoryService(this, "KeyStore", NAME, Store::new, null));
+        putService(new FactoryService(this, "KeyGenerator", KeyProperties.KEY_ALGORITHM_AES, AesGenerator::new, null));
+        putService(new FactoryService(this, "KeyPairGenerator", KeyProperties.KEY_ALGORITHM_EC, EcGenerator::new, null));
+        putService(new FactoryService(this, "SecretKeyFactory", KeyProperties.KEY_ALGORITHM_AES, InfoFactory::new, null));
+        putService(new FactoryService(this, "KeyFactory", KeyProperties.KEY_ALGORITHM_EC, EcInfoFactory::new, null));
+        putService(new FactoryService(this, "Cipher", TRANSFORMATION, AesGcm::new, StoredSecretKey.class));
+        putService(new FactoryService(this, "Signature", SIGNATURE_ALGORITHM, EcSignature::new, StoredPrivateKey.class));
+    }
+
+    /**
+     * Installs the provider ahead of the platform ones, like on a device. Idempotent.
+     */
+    static synchronized void install() {
+        if (Security.getProvider(NAME) == null) {
+            Security.insertProviderAt(new FakeAndroidKeyStore(), 1);
+        }
+    }
+
+    /**
+     * Deletes every key and restores the defaults.
+     */
+    static void reset() {
+        sEntries.clear();
+        sKeyStoreCalls.set(0);
+        sGeneratedKeys.set(0);
+        sStrongBoxAvailable = true;
+    }
+
+    static void setStrongBoxAvailable(boolean available) {
+        sStrongBoxAvailable = available;
+    }
+
+    /**
+     * Invalidates the key like a new biometric enrollment would, if it was created with
+     * setInvalidatedByBiometricEnrollment. Returns whether it was invalidated.
+     */
+    static boolean enrollNewBiometric(String alias) {
+        Entry entry = sEntries.get(alias);
+        if (entry == null || !entry.spec.isInvalidatedByBiometricEnrollment()) {
+            return false;
+        }
+        entry.invalidated = true;
+        return true;
+    }
+
+    static boolean containsAlias(String alias) {
+        return sEntries.containsKey(alias);
+    }
+
+    static boolean isStrongBoxBacked(String alias) {
+        Entry entry = sEntries.get(alias);
+        return entry != null && entry.spec.isStrongBoxBacked();
+    }
+
+    static boolean isInvalidatedByBiometricEnrollment(String alias) {
+        Entry entry = sEntries.get(alias);
+        return entry != null && entry.spec.isInvalidatedByBiometricEnrollment();
+    }
+
+    /**
+     * Calls into the keystore itself (loads, lookups, deletes), not counting cipher operations.
+     */
+    static int getKeyStoreCalls() {
+        return sKeyStoreCalls.get();
+    }
+
+    static int getGeneratedKeys() {
+        return sGeneratedKeys.get();
+    }
+
+    private static Entry entryOf(Key key) throws InvalidKeyException {
+        if (key instanceof StoredSecretKey) {
+            return ((StoredSecretKey) key).entry;
+        }
+        if (key instanceof StoredPrivateKey) {
+            return ((StoredPrivateKey) key).entry;
+        }
+        throw new InvalidKeyException("Not an AndroidKeyStore key: " + key);
+    }
+
+    private static void checkUsable(Entry entry) throws KeyPermanentlyInvalidatedException {
+        if (entry.invalidated) {
+            throw new KeyPermanentlyInvalidatedException();
+        }
+    }
+
+    private static void store(Entry entry) {
+        if (entry.spec.isStrongBoxBacked() && !sStrongBoxAvailable) {
+            throw new StrongBoxUnavailableException();
+        }
+        sEntries.put(entry.spec.getKeystoreAlias(), entry);
+        sGeneratedKeys.incrementAndGet();
+    }
+
+    private static KeyGenParameterSpec requireSpec(AlgorithmParameterSpec params)
+            throws InvalidAlgorithmParameterException {
+        if (params instanceof KeyPairGeneratorSpec) {
+            // The legacy spec only ever created RSA key pairs, the AES generator rejects it
+            throw new InvalidAlgorithmParameterException("KeyPairGeneratorSpec is not supported for AES keys");
+        }
+        if (!(params instanceof KeyGenParameterSpec)) {
+            throw new InvalidAlgorithmParameterException("Expected a KeyGenParameterSpec: " + params);
+        }
+        return (KeyGenParameterSpec) params;
+    }
+
+    private static final class Entry {
+        final KeyGenParameterSpec spec;
+        final Key key;
+        final Certificate certificate;
+        final Date created = new Date();
+        volatile boolean invalidated;
+
+        Entry(KeyGenParameterSpec spec, Key key, Certificate certificate) {
+            this.spec = spec;
+            this.key = key;
+            this.certificate = certificate;
+        }
+    }
+
+    /**
+     * A key handle as AndroidKeyStore returns it: no encoding, the material stays inside.
+     */
+    private static final class StoredSecretKey implements SecretKey {
+        private final byte[] material;
+        private Entry entry;
+
+        StoredSecretKey(byte[] material) {
+            this.material = material;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return KeyProperties.KEY_ALGORITHM_AES;
+        }
+
+        @Override
+        public String getFormat() {
+            return null;
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return null;
+        }
+    }
+
+    private static final class StoredPrivateKey implements PrivateKey {
+        private final PrivateKey material;
+        private Entry entry;
+
+        StoredPrivateKey(PrivateKey material) {
+            this.material = material;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return KeyProperties.KEY_ALGORITHM_EC;
+        }
+
+        @Override
+        public String getFormat() {
+            return null;
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return null;
+        }
+    }
+
+    /**
+     * Stands in for the self-signed certificate the keystore creates with a key pair.
+     */
+    private static final class StoredCertificate extends Certificate {
+        private final PublicKey publicKey;
+
+        StoredCertificate(PublicKey publicKey) {
+            super("X.509");
+            this.publicKey = publicKey;
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return publicKey.getEncoded();
+        }
+
+        @Override
+        public void verify(PublicKey key) {
+        }
+
+        @Override
+        public void verify(PublicKey key, String sigProvider) {
+        }
+
+        @Override
+        public String toString() {
+            return "StoredCertificate[" + publicKey + "]";
+        }
+
+        @Override
+        public PublicKey getPublicKey() {
+            return publicKey;
+        }
+    }
+
+    /**
+     * Creates the SPIs directly and only offers ciphers and signatures for keys of this provider,
+     * so platform keys keep using the platform providers.
+     */
+    private static final class FactoryService extends Service {
+        private final Supplier<Object> factory;
+        private final Class<?> keyClass;
+
+        FactoryService(Provider provider, String type, String algorithm, Supplier<Object> factory, Class<?> keyClass) {
+            super(provider, type, algorithm, factory.getClass().getName(), null, null);
+            this.factory = factory;
+            this.keyClass = keyClass;
+        }
+
+        @Override
+        public Object newInstance(Object constructorParameter) {
+            return factory.get();
+        }
+
+        @Override
+        public boolean supportsParameter(Object parameter) {
+            return keyClass == null || keyClass.isInstance(parameter);
+        }
+    }
+
+    public static final class Store extends KeyStoreSpi {
+        @Override
+        public Key engineGetKey(String alias, char[] password) {
+            sKeyStoreCalls.incrementAndGet();
+            Entry entry = sEntries.get(alias);
+            return entry == null ? null : entry.key;
+        }
+
+        @Override
+        public Certificate[] engineGetCertificateChain(String alias) {
+            Certificate certificate = engineGetCertificate(alias);
+            return certificate == null ? null : new Certificate[]{certificate};
+        }
+
+        @Override
+        public Certificate engineGetCertificate(String alias) {
+            sKeyStoreCalls.incrementAndGet();
+            Entry entry = sEntries.get(alias);
+            return entry == null ? null : entry.certificate;
+        }
+
+        @Override
+        public Date engineGetCreationDate(String alias) {
+            Entry entry = sEntries.get(alias);
+            return entry == null ? null : entry.created;
+        }
+
+        @Override
+        public void engineSetKeyEntry(String alias, Key key, char[] password, Certificate[] chain) {
+            throw new UnsupportedOperationException("Keys are only created by the generators");
+        }
+
+        @Override
+        public void engineSetKeyEntry(String alias, byte[] key, Certificate[] chain) {
+            throw new UnsupportedOperationException("Keys are only created by the generators");
+        }
+
+        @Override
+        public void engineSetCertificateEntry(String alias, Certificate cert) {
+            throw new UnsupportedOperationException("Certificates are only created by the generators");
+        }
+
+        @Override
+        public void engineDeleteEntry(String alias) {
+            sKeyStoreCalls.incrementAndGet();
+            sEntries.remove(alias);
+        }
+
+        @Override
+        public Enumeration<String> engineAliases() {
+            sKeyStoreCalls.incrementAndGet();
+            return Collections.enumeration(sEntries.keySet());
+        }
+
+        @Override
+        public boolean engineContainsAlias(String alias) {
+            sKeyStoreCalls.incrementAndGet();
+            return sEntries.containsKey(alias);
+        }
+
+        @Override
+        public int engineSize() {
+            return sEntries.size();
+        }
+
+        @Override
+        public boolean engineIsKeyEntry(String alias) {
+            return sEntries.containsKey(alias);
+        }
+
+        @Override
+        public boolean engineIsCertificateEntry(String alias) {
+            return false;
+        }
+
+        @Override
+        public String engineGetCertificateAlias(Certificate cert) {
+            return null;
+        }
+
+        @Override
+        public void engineStore(OutputStream stream, char[] password) {
+            throw new UnsupportedOperationException("AndroidKeyStore cannot be exported");
+        }
+
+        @Override
+        public void engineLoad(InputStream stream, char[] password) {
+            if (stream != null) {
+                throw new UnsupportedOperationException("AndroidKeyStore cannot be imported");
+            }
+            sKeyStoreCalls.incrementAndGet();
+        }
+    }
+
+    public static final class AesGenerator extends KeyGeneratorSpi {
+        private KeyGenParameterSpec spec;
+        private SecureRandom random;
+
+        @Override
+        protected void engineInit(SecureRandom random) {
+            throw new UnsupportedOperationException("A KeyGenParameterSpec is required");
+        }
+
+        @Override
+        protected void engineInit(AlgorithmParameterSpec params, SecureRandom random)
+                throws InvalidAlgorithmParameterException {
+            spec = requireSpec(params);
+            this.random = random == null ? new SecureRandom() : random;
+        }
+
+        @Override
+        protected void engineInit(int keysize, SecureRandom random) {
+            throw new UnsupportedOperationException("A KeyGenParameterSpec is required");
+        }
+
+        @Override
+        protected SecretKey engineGenerateKey() {
+            if (spec == null) {
+                throw new IllegalStateException("Not initialized");
+            }
+            byte[] material = new byte[(spec.getKeySize() > 0 ? spec.getKeySize() : 256) / 8];
+            random.nextBytes(material);
+            StoredSecretKey key = new StoredSecretKey(material);
+            Entry entry = new Entry(spec, key, null);
+            key.entry = entry;
+            store(entry);
+            return key;
+        }
+    }
+
+    public static final class EcGenerator extends KeyPairGeneratorSpi {
+        private KeyGenParameterSpec spec;
+
+        @Override
+        public void initialize(int keysize, SecureRandom random) {
+            throw new UnsupportedOperationException("A KeyGenParameterSpec is required");
+        }
+
+        @Override
+        public void initialize(AlgorithmParameterSpec params, SecureRandom random)
+                throws InvalidAlgorithmParameterException {
+            spec = requireSpec(params);
+        }
+
+        @Override
+        public KeyPair generateKeyPair() {
+            if (spec == null) {
+                throw new IllegalStateException("Not initialized");
+            }
+            KeyPair material;
+            try {
+                KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", "SunEC");
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+                material = generator.generateKeyPair();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            StoredPrivateKey privateKey = new StoredPrivateKey(material.getPrivate());
+            Entry entry = new Entry(spec, privateKey, new StoredCertificate(material.getPublic()));
+            privateKey.entry = entry;
+            store(entry);
+            return new KeyPair(material.getPublic(), privateKey);
+        }
+    }
+
+    private static KeyInfo keyInfo(Key key) throws InvalidKeySpecException {
+        try {
+            boolean strongBox = entryOf(key).spec.isStrongBoxBacked();
+            return new KeyInfo(true, strongBox
+                    ? KeyProperties.SECURITY_LEVEL_STRONGBOX
+                    : KeyProperties.SECURITY_LEVEL_TRUSTED_ENVIRONMENT);
+        } catch (InvalidKeyException e) {
+            throw new InvalidKeySpecException(e);
+        }
+    }
+
+    public static final class InfoFactory extends SecretKeyFactorySpi {
+        @Override
+        protected SecretKey engineGenerateSecret(KeySpec keySpec) throws InvalidKeySpecException {
+            throw new InvalidKeySpecException("Keys cannot be imported");
+        }
+
+        @Override
+        protected KeySpec engineGetKeySpec(SecretKey key, Class<?> keySpec) throws InvalidKeySpecException {
+            if (keySpec != KeyInfo.class) {
+                throw new InvalidKeySpecException("Only KeyInfo is supported");
+            }
+            return keyInfo(key);
+        }
+
+        @Override
+        protected SecretKey engineTranslateKey(SecretKey key) throws InvalidKeyException {
+            throw new InvalidKeyException("Keys cannot be imported");
+        }
+    }
+
+    public static final class EcInfoFactory extends java.security.KeyFactorySpi {
+        @Override
+        protected PublicKey engineGeneratePublic(KeySpec keySpec) throws InvalidKeySpecException {
+            throw new InvalidKeySpecException("Keys cannot be imported");
+        }
+
+        @Override
+        protected PrivateKey engineGeneratePrivate(KeySpec keySpec) throws InvalidKeySpecException {
+            throw new InvalidKeySpecException("Keys cannot be imported");
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected <T extends KeySpec> T engineGetKeySpec(Key key, Class<T> keySpec) throws InvalidKeySpecException {
+            if (keySpec != KeyInfo.class) {
+                throw new InvalidKeySpecException("Only KeyInfo is supported");
+            }
+            return (T) keyInfo(key);
+        }
+
+        @Override
+        protected Key engineTranslateKey(Key key) throws InvalidKeyException {
+            throw new InvalidKeyException("Keys cannot be imported");
+        }
+    }
+
+    /**
+     * AES-GCM on the key material through the platform provider.
+     */
+    public static final class AesGcm extends CipherSpi {
+        private Cipher delegate;
+
+        @Override
+        protected void engineSetMode(String mode) {
+        }
+
+        @Override
+        protected void engineSetPadding(String padding) {
+        }
+
+        @Override
+        protected int engineGetBlockSize() {
+            return 16;
+        }
+
+        @Override
+        protected int engineGetOutputSize(int inputLen) {
+            return delegate.getOutputSize(inputLen);
+        }
+
+        @Override
+        protected byte[] engineGetIV() {
+            return delegate == null ? null : delegate.getIV();
+        }
+
+        @Override
+        protected AlgorithmParameters engineGetParameters() {
+            return delegate == null ? null : delegate.getParameters();
+        }
+
+        @Override
+        protected void engineInit(int opmode, Key key, SecureRandom random) throws InvalidKeyException {
+            try {
+                engineInit(opmode, key, (AlgorithmParameterSpec) null, random);
+            } catch (InvalidAlgorithmParameterException e) {
+                throw new InvalidKeyException(e);
+            }
+        }
+
+        @Override
+        protected void engineInit(int opmode, Key key, AlgorithmParameterSpec params, SecureRandom random)
+                throws InvalidKeyException, InvalidAlgorithmParameterException {
+            Entry entry = entryOf(key);
+            checkUsable(entry);
+            boolean encrypt = opmode == Cipher.ENCRYPT_MODE || opmode == Cipher.WRAP_MODE;
+            if (encrypt && params != null) {
+                // Randomized encryption is required, the keystore picks the IV
+                throw new InvalidAlgorithmParameterException("Caller-provided IV not permitted");
+            }
+            if (!encrypt && params == null) {
+                throw new InvalidAlgorithmParameterException("IV required when decrypting");
+            }
+            try {
+                delegate = Cipher.getInstance(TRANSFORMATION, "SunJCE");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            SecretKeySpec material = new SecretKeySpec(((StoredSecretKey) entry.key).material,
+                    KeyProperties.KEY_ALGORITHM_AES);
+            if (params == null) {
+                delegate.init(opmode, material, random);
+            } else {
+                delegate.init(opmode, material, params, random);
+            }
+        }
+
+        @Override
+        protected void engineInit(int opmode, Key key, AlgorithmParameters params, SecureRandom random)
+                throws InvalidKeyException, InvalidAlgorithmParameterException {
+            try {
+                engineInit(opmode, key, params == null ? null
+                        : params.getParameterSpec(javax.crypto.spec.GCMParameterSpec.class), random);
+            } catch (java.security.spec.InvalidParameterSpecException e) {
+                throw new InvalidAlgorithmParameterException(e);
+            }
+        }
+
+        @Override
+        protected byte[] engineUpdate(byte[] input, int inputOffset, int inputLen) {
+            return delegate.update(input, inputOffset, inputLen);
+        }
+
+        @Override
+        protected int engineUpdate(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset)
+                throws javax.crypto.ShortBufferException {
+            return delegate.update(input, inputOffset, inputLen, output, outputOffset);
+        }
+
+        @Override
+        protected void engineUpdateAAD(byte[] src, int offset, int len) {
+            delegate.updateAAD(src, offset, len);
+        }
+
+        @Override
+        protected void engineUpdateAAD(ByteBuffer src) {
+            delegate.updateAAD(src);
+        }
+
+        @Override
+        protected byte[] engineDoFinal(byte[] input, int inputOffset, int inputLen)
+                throws javax.crypto.IllegalBlockSizeException, javax.crypto.BadPaddingException {
+            return delegate.doFinal(input, inputOffset, inputLen);
+        }
+
+        @Override
+        protected int engineDoFinal(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset)
+                throws javax.crypto.ShortBufferException, javax.crypto.IllegalBlockSizeException,
+                javax.crypto.BadPaddingException {
+            return delegate.doFinal(input, inputOffset, inputLen, output, outputOffset);
+        }
+    }
+
+    /**
+     * ECDSA with the private key material through the platform provider.
+     */
+    public static final class EcSignature extends SignatureSpi {
+        private Signature delegate;
+
+        @Override
+        protected void engineInitVerify(PublicKey publicKey) throws InvalidKeyException {
+            throw new InvalidKeyException("Verify with the public key on the platform provider");
+        }
+
+        @Override
+        protected void engineInitSign(PrivateKey privateKey) throws InvalidKeyException {
+            Entry entry = entryOf(privateKey);
+            checkUsable(entry);
+            try {
+                delegate = Signature.getInstance(SIGNATURE_ALGORITHM, "SunEC");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            delegate.initSign(((StoredPrivateKey) entry.key).material);
+        }
+
+        @Override
+        protected void engineUpdate(byte b) throws SignatureException {
+            delegate.update(b);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] b, int off, int len) throws SignatureException {
+            delegate.update(b, off, len);
+        }
+
+        @Override
+        protected byte[] engineSign() throws SignatureException {
+            return delegate.sign();
+        }
+
+        @Override
+        protected boolean engineVerify(byte[] sigBytes) throws SignatureException {
+            throw new SignatureException("Not initialized for verification");
+        }
+
+        @Override
+        @Deprecated
+        protected void engineSetParameter(String param, Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @Deprecated
+        protected Object engineGetParameter(String param) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
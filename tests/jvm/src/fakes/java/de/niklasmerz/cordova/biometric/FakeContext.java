@@ -0,0 +1,140 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.app.KeyguardManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The application context of a test: files under a directory of the test, in-memory preferences,
+ * a KeyguardManager and a package manager with a configurable StrongBox feature.
+ */
+final class FakeContext extends Context {
+
+    static final String PACKAGE_NAME = "de.niklasmerz.cordova.biometric.test";
+    static final String APPLICATION_LABEL = "Test App";
+    static final int BIOMETRIC_LAYOUT_ID = 0x7f0b0001;
+
+    private final File mDataDir;
+    private final Map<String, FakeSharedPreferences> mPreferences = new HashMap<>();
+    private final KeyguardManager mKeyguardManager = new KeyguardManager();
+    private final Resources mResources = new Resources();
+    private final FakePackageManager mPackageManager = new FakePackageManager();
+
+    FakeContext(File dataDir) {
+        mDataDir = dataDir;
+        mResources.addIdentifier("biometric_activity", "layout", PACKAGE_NAME, BIOMETRIC_LAYOUT_ID);
+    }
+
+    KeyguardManager getKeyguardManager() {
+        return mKeyguardManager;
+    }
+
+    void setSystemFeature(String name, boolean available) {
+        mPackageManager.setFeature(name, available);
+    }
+
+    @Override
+    public PackageManager getPackageManager() {
+        return mPackageManager;
+    }
+
+    @Override
+    public String getPackageName() {
+        return PACKAGE_NAME;
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        FakeSharedPreferences preferences = mPreferences.get(name);
+        if (preferences == null) {
+            preferences = new FakeSharedPreferences();
+            mPreferences.put(name, preferences);
+        }
+        return preferences;
+    }
+
+    @Override
+    public File getFilesDir() {
+        return dir("files");
+    }
+
+    @Override
+    public File getNoBackupFilesDir() {
+        return dir("no_backup");
+    }
+
+    @Override
+    public File getCacheDir() {
+        return dir("cache");
+    }
+
+    @Override
+    public Resources getResources() {
+        return mResources;
+    }
+
+    @Override
+    public Object getSystemService(String name) {
+        return KEYGUARD_SERVICE.equals(name) ? mKeyguardManager : null;
+    }
+
+    @Override
+    public void startActivity(Intent intent) {
+        throw new UnsupportedOperationException("The plugin only starts activities for a result");
+    }
+
+    private File dir(String name) {
+        File dir = new File(mDataDir, name);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + dir);
+        }
+        return dir;
+    }
+
+    private static final class FakePackageManager extends PackageManager {
+        private final Set<String> mFeatures = new HashSet<>();
+
+        synchronized void setFeature(String name, boolean available) {
+            if (available) {
+                mFeatures.add(name);
+            } else {
+                mFeatures.remove(name);
+            }
+        }
+
+        @Override
+        public ApplicationInfo getApplicationInfo(String packageName, int flags) throws NameNotFoundException {
+            if (!PACKAGE_NAME.equals(packageName)) {
+                throw new NameNotFoundException(packageName);
+            }
+            ApplicationInfo info = new ApplicationInfo();
+            info.packageName = packageName;
+            return info;
+        }
+
+        @Override
+        public CharSequence getApplicationLabel(ApplicationInfo info) {
+            return APPLICATION_LABEL;
+        }
+
+        @Override
+        public synchronized boolean hasSystemFeature(String name) {
+            return mFeatures.contains(name);
+        }
+    }
+}
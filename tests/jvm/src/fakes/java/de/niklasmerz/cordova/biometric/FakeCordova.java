@@ -0,0 +1,95 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+
+import androidx.fragment.app.FragmentActivity;
+
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaPlugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The Cordova host: a FragmentActivity on the test context, a real thread pool, and the
+ * activities plugins start for a result.
+ */
+final class FakeCordova implements CordovaInterface {
+
+    /**
+     * An activity a plugin started, whose result goes back to that plugin.
+     */
+    static final class Launch {
+        final CordovaPlugin plugin;
+        final Intent intent;
+        final int requestCode;
+
+        Launch(CordovaPlugin plugin, Intent intent, int requestCode) {
+            this.plugin = plugin;
+            this.intent = intent;
+            this.requestCode = requestCode;
+        }
+
+        void finish(int resultCode, Intent data) {
+            plugin.onActivityResult(requestCode, resultCode, data);
+        }
+    }
+
+    private final CordovaActivity mActivity;
+    private final ExecutorService mThreadPool = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "cordova-pool");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Launch> mLaunches = new ArrayList<>();
+
+    FakeCordova(Context context) {
+        mActivity = new CordovaActivity(context);
+    }
+
+    @Override
+    public synchronized void startActivityForResult(CordovaPlugin command, Intent intent, int requestCode) {
+        mLaunches.add(new Launch(command, intent, requestCode));
+    }
+
+    synchronized List<Launch> getLaunches() {
+        return new ArrayList<>(mLaunches);
+    }
+
+    synchronized Launch takeLaunch() {
+        return mLaunches.isEmpty() ? null : mLaunches.remove(0);
+    }
+
+    @Override
+    public void setActivityResultCallback(CordovaPlugin plugin) {
+    }
+
+    @Override
+    public Activity getActivity() {
+        return mActivity;
+    }
+
+    @Override
+    public Context getContext() {
+        return mActivity;
+    }
+
+    @Override
+    public ExecutorService getThreadPool() {
+        return mThreadPool;
+    }
+
+    void shutdown() {
+        mThreadPool.shutdownNow();
+    }
+
+    static final class CordovaActivity extends FragmentActivity {
+        CordovaActivity(Context base) {
+            attachBaseContext(base);
+        }
+    }
+}
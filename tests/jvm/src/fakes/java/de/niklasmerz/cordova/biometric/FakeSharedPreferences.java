@@ -0,0 +1,132 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory preferences. apply and commit both write through immediately.
+ */
+final class FakeSharedPreferences implements SharedPreferences {
+
+    private final Map<String, Object> mValues = new HashMap<>();
+
+    @Override
+    public synchronized String getString(String key, String defValue) {
+        Object value = mValues.get(key);
+        return value instanceof String ? (String) value : defValue;
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defValue) {
+        Object value = mValues.get(key);
+        return value instanceof Integer ? (Integer) value : defValue;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defValue) {
+        Object value = mValues.get(key);
+        return value instanceof Long ? (Long) value : defValue;
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defValue) {
+        Object value = mValues.get(key);
+        return value instanceof Boolean ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return mValues.containsKey(key);
+    }
+
+    @Override
+    public synchronized Map<String, ?> getAll() {
+        return new HashMap<>(mValues);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized Set<String> getStringSet(String key, Set<String> defValues) {
+        Object value = mValues.get(key);
+        return value instanceof Set ? new HashSet<>((Set<String>) value) : defValues;
+    }
+
+    @Override
+    public Editor edit() {
+        return new FakeEditor();
+    }
+
+    private final class FakeEditor implements Editor {
+        private final Map<String, Object> mChanges = new HashMap<>();
+        private boolean mClear;
+
+        @Override
+        public Editor putString(String key, String value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values) {
+            mChanges.put(key, values == null ? null : new HashSet<>(values));
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            // Like the framework, a removal is a change to null
+            mChanges.put(key, null);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            mClear = true;
+            return this;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+
+        @Override
+        public boolean commit() {
+            synchronized (FakeSharedPreferences.this) {
+                if (mClear) {
+                    mValues.clear();
+                }
+                for (Map.Entry<String, Object> change : mChanges.entrySet()) {
+                    if (change.getValue() == null) {
+                        mValues.remove(change.getKey());
+                    } else {
+                        mValues.put(change.getKey(), change.getValue());
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package de.niklasmerz.cordova.biometric;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps every plugin result sent to JavaScript, in order.
+ */
+final class RecordingWebView implements CordovaWebView {
+
+    /**
+     * A result together with the call it was sent to.
+     */
+    static final class Sent {
+        final String callbackId;
+        final PluginResult result;
+        final boolean onMainThread;
+
+        Sent(String callbackId, PluginResult result, boolean onMainThread) {
+            this.callbackId = callbackId;
+            this.result = result;
+            this.onMainThread = onMainThread;
+        }
+    }
+
+    private final List<Sent> mSent = new ArrayList<>();
+    private int mNextCallbackId = 1;
+
+    synchronized CallbackContext newCallback() {
+        return new CallbackContext("Fingerprint" + mNextCallbackId++, this);
+    }
+
+    @Override
+    public synchronized void sendPluginResult(PluginResult result, String callbackId) {
+        mSent.add(new Sent(callbackId, result, android.os.Looper.getMainLooper().isCurrentThread()));
+    }
+
+    /**
+     * Results sent to the call, except the NO_RESULT that keeps it open while a prompt is queued.
+     */
+    synchronized List<Sent> resultsFor(CallbackContext callbackContext) {
+        List<Sent> results = new ArrayList<>();
+        for (Sent sent : mSent) {
+            if (sent.callbackId.equals(callbackContext.getCallbackId())
+                    && sent.result.getStatus() != PluginResult.Status.NO_RESULT.ordinal()) {
+                results.add(sent);
+            }
+        }
+        return results;
+    }
+}
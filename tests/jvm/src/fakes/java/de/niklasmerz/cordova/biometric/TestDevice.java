@@ -0,0 +1,123 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.os.Build;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.biometric.BiometricManager;
+import androidx.biometric.BiometricPrompt;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A fresh device for each test: the calling thread becomes the main thread, the clock, the
+ * biometric stand-ins and the keystore start over, and the process-wide state of the plugin is
+ * dropped as if the app process had been restarted.
+ */
+final class TestDevice {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    final FakeContext context;
+
+    private TestDevice(FakeContext context) {
+        this.context = context;
+    }
+
+    static TestDevice create(File dataDir) {
+        Looper.prepareMainLooper();
+        SystemClock.reset();
+        Build.VERSION.SDK_INT = Build.VERSION_CODES.TIRAMISU;
+        BiometricManager.reset();
+        BiometricPrompt.reset();
+        FakeAndroidKeyStore.install();
+        FakeAndroidKeyStore.reset();
+        resetPlugin();
+        return new TestDevice(new FakeContext(dataDir));
+    }
+
+    /**
+     * Runs what is due on the main thread.
+     */
+    void idle() {
+        Looper.getMainLooper().idle();
+    }
+
+    /**
+     * Lets the given time pass on the main thread, running what falls due on the way.
+     */
+    void idleFor(long ms) {
+        Looper.getMainLooper().idleFor(ms);
+    }
+
+    /**
+     * Keeps the main thread running until the condition holds, while background threads finish
+     * their work. Fails after a few seconds.
+     */
+    void runUntil(String what, BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TIMEOUT_MS * 1_000_000;
+        while (true) {
+            idle();
+            if (condition.getAsBoolean()) {
+                return;
+            }
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Timed out waiting for " + what);
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    /**
+     * Forgets the loaded keystore and the keys CryptographyManagerImpl resolved, as in a new app
+     * process. The keys stay in the keystore.
+     */
+    static void dropKeyCaches() {
+        setStatic(CryptographyManagerImpl.class, "sKeyStore", null);
+        ((Map<?, ?>) getStatic(CryptographyManagerImpl.class, "sSecretKeys")).clear();
+    }
+
+    private static void resetPlugin() {
+        setStatic(SecretVault.class, "sInstance", null);
+        setStatic(AttemptCounter.class, "sInstance", null);
+        dropKeyCaches();
+        ((Map<?, ?>) getStatic(PromptInfo.class, "sHandedOver")).clear();
+        setStatic(KeyBacking.class, "sLatency", null);
+        setStatic(BiometricActivity.class, "sLayoutId", 0);
+        PreparedCrypto.offer(null);
+        BiometricCapabilities.invalidate();
+        AuthSession.clear();
+        DataKeyHolder.clear();
+        SecretRegistry.clear();
+        PluginEvents.clear();
+        AuthMetrics.clear();
+    }
+
+    private static Object getStatic(Class<?> owner, String name) {
+        try {
+            Field field = owner.getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void setStatic(Class<?> owner, String name, Object value) {
+        try {
+            Field field = owner.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(null, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
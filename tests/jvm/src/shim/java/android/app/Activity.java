@@ -0,0 +1,141 @@
+package android.app;
+
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records what the code under test does with the activity: its result, whether it finished and
+ * the activities it started. The lifecycle is driven by the test.
+ */
+public class Activity extends ContextWrapper {
+
+    public static final int RESULT_OK = -1;
+    public static final int RESULT_CANCELED = 0;
+
+    /**
+     * An activity started with startActivityForResult.
+     */
+    public static final class StartedActivity {
+        public final Intent intent;
+        public final int requestCode;
+
+        StartedActivity(Intent intent, int requestCode) {
+            this.intent = intent;
+            this.requestCode = requestCode;
+        }
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<StartedActivity> mStarted = new ArrayList<>();
+    private Intent mIntent;
+    private int mResultCode = RESULT_CANCELED;
+    private Intent mResultData;
+    private boolean mFinishing;
+    private boolean mChangingConfigurations;
+    private boolean mDestroyed;
+    private int mContentView;
+
+    public Activity() {
+        super(null);
+    }
+
+    protected void onCreate(Bundle savedInstanceState) {
+    }
+
+    protected void onResume() {
+    }
+
+    protected void onPause() {
+    }
+
+    protected void onSaveInstanceState(Bundle outState) {
+    }
+
+    protected void onDestroy() {
+        mDestroyed = true;
+    }
+
+    public void runOnUiThread(Runnable action) {
+        if (Looper.getMainLooper().isCurrentThread()) {
+            action.run();
+        } else {
+            mHandler.post(action);
+        }
+    }
+
+    public Intent getIntent() {
+        return mIntent;
+    }
+
+    public void setIntent(Intent intent) {
+        mIntent = intent;
+    }
+
+    public final void setResult(int resultCode) {
+        setResult(resultCode, null);
+    }
+
+    public final void setResult(int resultCode, Intent data) {
+        mResultCode = resultCode;
+        mResultData = data;
+    }
+
+    public int getResultCode() {
+        return mResultCode;
+    }
+
+    public Intent getResultData() {
+        return mResultData;
+    }
+
+    public void finish() {
+        mFinishing = true;
+    }
+
+    public boolean isFinishing() {
+        return mFinishing;
+    }
+
+    public boolean isDestroyed() {
+        return mDestroyed;
+    }
+
+    public boolean isChangingConfigurations() {
+        return mChangingConfigurations;
+    }
+
+    public void setChangingConfigurations(boolean changingConfigurations) {
+        mChangingConfigurations = changingConfigurations;
+    }
+
+    public void startActivityForResult(Intent intent, int requestCode) {
+        mStarted.add(new StartedActivity(intent, requestCode));
+    }
+
+    public List<StartedActivity> getStartedActivities() {
+        return mStarted;
+    }
+
+    public void onActivityResult(int requestCode, int resultCode, Intent data) {
+    }
+
+    public void setTitle(CharSequence title) {
+    }
+
+    public void setContentView(int layoutResID) {
+        mContentView = layoutResID;
+    }
+
+    public int getContentView() {
+        return mContentView;
+    }
+
+    public void overridePendingTransition(int enterAnim, int exitAnim) {
+    }
+}
@@ -0,0 +1,36 @@
+package android.app;
+
+import android.content.Intent;
+
+public class KeyguardManager {
+
+    public static final String EXTRA_TITLE = "android.app.extra.TITLE";
+    public static final String EXTRA_DESCRIPTION = "android.app.extra.DESCRIPTION";
+
+    private boolean mSecure = true;
+
+    public void setKeyguardSecure(boolean secure) {
+        mSecure = secure;
+    }
+
+    public boolean isKeyguardSecure() {
+        return mSecure;
+    }
+
+    public boolean isDeviceSecure() {
+        return mSecure;
+    }
+
+    /**
+     * Like the framework, null if there is no credential to confirm.
+     */
+    public Intent createConfirmDeviceCredentialIntent(CharSequence title, CharSequence description) {
+        if (!mSecure) {
+            return null;
+        }
+        Intent intent = new Intent();
+        intent.putExtra(EXTRA_TITLE, title == null ? null : title.toString());
+        intent.putExtra(EXTRA_DESCRIPTION, description == null ? null : description.toString());
+        return intent;
+    }
+}
@@ -0,0 +1,32 @@
+package android.content;
+
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+
+import java.io.File;
+
+public abstract class Context {
+
+    public static final int MODE_PRIVATE = 0;
+    public static final String KEYGUARD_SERVICE = "keyguard";
+
+    public abstract PackageManager getPackageManager();
+
+    public abstract String getPackageName();
+
+    public abstract Context getApplicationContext();
+
+    public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+    public abstract File getFilesDir();
+
+    public abstract File getNoBackupFilesDir();
+
+    public abstract File getCacheDir();
+
+    public abstract Resources getResources();
+
+    public abstract Object getSystemService(String name);
+
+    public abstract void startActivity(Intent intent);
+}
@@ -0,0 +1,110 @@
+package android.content;
+
+import android.os.Bundle;
+
+/**
+ * Extras live in a Bundle as on the device. The target component is kept as a class.
+ */
+public class Intent {
+
+    public static final int FLAG_ACTIVITY_NO_ANIMATION = 0x00010000;
+
+    private Class<?> mComponent;
+    private Bundle mExtras;
+    private int mFlags;
+
+    public Intent() {
+    }
+
+    public Intent(Context packageContext, Class<?> cls) {
+        mComponent = cls;
+    }
+
+    public Class<?> getComponentClass() {
+        return mComponent;
+    }
+
+    public Intent putExtras(Bundle extras) {
+        extras().putAll(extras);
+        return this;
+    }
+
+    public Bundle getExtras() {
+        return mExtras == null ? null : new Bundle(mExtras);
+    }
+
+    public Intent putExtra(String name, String value) {
+        extras().putString(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, int value) {
+        extras().putInt(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, long value) {
+        extras().putLong(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, boolean value) {
+        extras().putBoolean(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, String[] value) {
+        extras().putStringArray(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, byte[] value) {
+        extras().putByteArray(name, value);
+        return this;
+    }
+
+    public String getStringExtra(String name) {
+        return mExtras == null ? null : mExtras.getString(name);
+    }
+
+    public int getIntExtra(String name, int defaultValue) {
+        return mExtras == null ? defaultValue : mExtras.getInt(name, defaultValue);
+    }
+
+    public long getLongExtra(String name, long defaultValue) {
+        return mExtras == null ? defaultValue : mExtras.getLong(name, defaultValue);
+    }
+
+    public boolean getBooleanExtra(String name, boolean defaultValue) {
+        return mExtras == null ? defaultValue : mExtras.getBoolean(name, defaultValue);
+    }
+
+    public String[] getStringArrayExtra(String name) {
+        return mExtras == null ? null : mExtras.getStringArray(name);
+    }
+
+    public boolean hasExtra(String name) {
+        return mExtras != null && mExtras.containsKey(name);
+    }
+
+    public Intent addFlags(int flags) {
+        mFlags |= flags;
+        return this;
+    }
+
+    public Intent setFlags(int flags) {
+        mFlags = flags;
+        return this;
+    }
+
+    public int getFlags() {
+        return mFlags;
+    }
+
+    private Bundle extras() {
+        if (mExtras == null) {
+            mExtras = new Bundle();
+        }
+        return mExtras;
+    }
+}
@@ -0,0 +1,43 @@
+package android.content;
+
+import java.util.Map;
+import java.util.Set;
+
+public interface SharedPreferences {
+
+    String getString(String key, String defValue);
+
+    int getInt(String key, int defValue);
+
+    long getLong(String key, long defValue);
+
+    boolean getBoolean(String key, boolean defValue);
+
+    boolean contains(String key);
+
+    Map<String, ?> getAll();
+
+    Set<String> getStringSet(String key, Set<String> defValues);
+
+    Editor edit();
+
+    interface Editor {
+        Editor putString(String key, String value);
+
+        Editor putInt(String key, int value);
+
+        Editor putLong(String key, long value);
+
+        Editor putBoolean(String key, boolean value);
+
+        Editor putStringSet(String key, Set<String> values);
+
+        Editor remove(String key);
+
+        Editor clear();
+
+        void apply();
+
+        boolean commit();
+    }
+}
@@ -0,0 +1,18 @@
+package android.content.pm;
+
+public abstract class PackageManager {
+
+    public static final String FEATURE_STRONGBOX_KEYSTORE = "android.hardware.strongbox_keystore";
+
+    public static class NameNotFoundException extends Exception {
+        public NameNotFoundException(String name) {
+            super(name);
+        }
+    }
+
+    public abstract ApplicationInfo getApplicationInfo(String packageName, int flags) throws NameNotFoundException;
+
+    public abstract CharSequence getApplicationLabel(ApplicationInfo info);
+
+    public abstract boolean hasSystemFeature(String name);
+}
@@ -0,0 +1,21 @@
+package android.content.res;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves only the identifiers registered with addIdentifier, 0 for the rest as on a device.
+ */
+public class Resources {
+
+    private final Map<String, Integer> mIdentifiers = new HashMap<>();
+
+    public void addIdentifier(String name, String defType, String defPackage, int id) {
+        mIdentifiers.put(defPackage + ":" + defType + "/" + name, id);
+    }
+
+    public int getIdentifier(String name, String defType, String defPackage) {
+        Integer id = mIdentifiers.get(defPackage + ":" + defType + "/" + name);
+        return id == null ? 0 : id;
+    }
+}
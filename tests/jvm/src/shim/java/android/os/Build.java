@@ -0,0 +1,23 @@
+package android.os;
+
+/**
+ * SDK_INT is not final here, so tests can run the code paths of older releases.
+ */
+public class Build {
+
+    public static class VERSION {
+        public static int SDK_INT = VERSION_CODES.TIRAMISU;
+    }
+
+    public static class VERSION_CODES {
+        public static final int LOLLIPOP = 21;
+        public static final int M = 23;
+        public static final int N = 24;
+        public static final int O = 26;
+        public static final int P = 28;
+        public static final int Q = 29;
+        public static final int R = 30;
+        public static final int S = 31;
+        public static final int TIRAMISU = 33;
+    }
+}
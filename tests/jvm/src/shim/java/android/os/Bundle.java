@@ -0,0 +1,98 @@
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A string-keyed map like the framework class, without the Parcel behind it.
+ */
+public class Bundle {
+
+    private final Map<String, Object> mMap;
+
+    public Bundle() {
+        mMap = new HashMap<>();
+    }
+
+    public Bundle(Bundle b) {
+        mMap = new HashMap<>(b.mMap);
+    }
+
+    public void putString(String key, String value) {
+        mMap.put(key, value);
+    }
+
+    public void putBoolean(String key, boolean value) {
+        mMap.put(key, value);
+    }
+
+    public void putInt(String key, int value) {
+        mMap.put(key, value);
+    }
+
+    public void putLong(String key, long value) {
+        mMap.put(key, value);
+    }
+
+    public void putStringArray(String key, String[] value) {
+        mMap.put(key, value);
+    }
+
+    public void putByteArray(String key, byte[] value) {
+        mMap.put(key, value);
+    }
+
+    public String getString(String key) {
+        Object value = mMap.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    public boolean getBoolean(String key) {
+        return getBoolean(key, false);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = mMap.get(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    public int getInt(String key) {
+        return getInt(key, 0);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object value = mMap.get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public long getLong(String key) {
+        return getLong(key, 0);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Object value = mMap.get(key);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+
+    public String[] getStringArray(String key) {
+        Object value = mMap.get(key);
+        return value instanceof String[] ? (String[]) value : null;
+    }
+
+    public byte[] getByteArray(String key) {
+        Object value = mMap.get(key);
+        return value instanceof byte[] ? (byte[]) value : null;
+    }
+
+    public void putAll(Bundle bundle) {
+        mMap.putAll(bundle.mMap);
+    }
+
+    public boolean containsKey(String key) {
+        return mMap.containsKey(key);
+    }
+
+    public int size() {
+        return mMap.size();
+    }
+}
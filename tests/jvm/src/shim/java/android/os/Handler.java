@@ -0,0 +1,37 @@
+package android.os;
+
+public class Handler {
+
+    private final Looper mLooper;
+
+    public Handler(Looper looper) {
+        mLooper = looper;
+    }
+
+    public final Looper getLooper() {
+        return mLooper;
+    }
+
+    public final boolean post(Runnable r) {
+        return postDelayed(r, 0);
+    }
+
+    public final boolean postDelayed(Runnable r, long delayMillis) {
+        mLooper.enqueue(this, r, SystemClock.uptimeMillis() + Math.max(0, delayMillis));
+        return true;
+    }
+
+    public final void removeCallbacks(Runnable r) {
+        mLooper.remove(this, r);
+    }
+
+    /**
+     * Only a null token, which removes everything posted through this handler, is supported.
+     */
+    public final void removeCallbacksAndMessages(Object token) {
+        if (token != null) {
+            throw new UnsupportedOperationException("Tokens are not supported");
+        }
+        mLooper.remove(this, null);
+    }
+}
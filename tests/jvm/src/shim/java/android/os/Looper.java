@@ -0,0 +1,158 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The main looper of a test: a queue of runnables ordered by due time on SystemClock, run only
+ * when the test idles it on the thread that prepared it. Nothing runs behind the test's back, so
+ * the order of callbacks on the main thread is deterministic.
+ */
+public final class Looper {
+
+    private static Looper sMainLooper;
+
+    // Handlers keep their looper, so a new test only moves it to its thread
+    private volatile Thread mThread;
+    private final List<Message> mQueue = new ArrayList<>();
+    private long mSequence = 0;
+
+    private Looper(Thread thread) {
+        mThread = thread;
+    }
+
+    /**
+     * Makes the calling thread the main thread and drops everything queued so far.
+     */
+    public static synchronized void prepareMainLooper() {
+        if (sMainLooper == null) {
+            sMainLooper = new Looper(Thread.currentThread());
+        } else {
+            sMainLooper.reset(Thread.currentThread());
+        }
+    }
+
+    public static synchronized Looper getMainLooper() {
+        if (sMainLooper == null) {
+            throw new IllegalStateException("Main looper not prepared");
+        }
+        return sMainLooper;
+    }
+
+    public static Looper myLooper() {
+        Looper main = getMainLooper();
+        return main.isCurrentThread() ? main : null;
+    }
+
+    public boolean isCurrentThread() {
+        return Thread.currentThread() == mThread;
+    }
+
+    public Thread getThread() {
+        return mThread;
+    }
+
+    /**
+     * Runs everything that is due now, including what it posts for now.
+     */
+    public void idle() {
+        checkThread();
+        Message message;
+        while ((message = next(SystemClock.elapsedRealtime())) != null) {
+            message.callback.run();
+        }
+    }
+
+    /**
+     * Advances the clock in steps to each due message within the duration and runs it.
+     */
+    public void idleFor(long ms) {
+        checkThread();
+        long end = SystemClock.elapsedRealtime() + ms;
+        while (true) {
+            idle();
+            long due = nextDue();
+            if (due < 0 || due > end) {
+                break;
+            }
+            SystemClock.advance(due - SystemClock.elapsedRealtime());
+        }
+        SystemClock.advance(end - SystemClock.elapsedRealtime());
+        idle();
+    }
+
+    public synchronized boolean isIdle() {
+        long now = SystemClock.elapsedRealtime();
+        for (Message message : mQueue) {
+            if (message.when <= now) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    synchronized void enqueue(Handler target, Runnable callback, long when) {
+        mQueue.add(new Message(target, callback, when, mSequence++));
+    }
+
+    synchronized void remove(Handler target, Runnable callback) {
+        Iterator<Message> iterator = mQueue.iterator();
+        while (iterator.hasNext()) {
+            Message message = iterator.next();
+            if (message.target == target && (callback == null || message.callback == callback)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private synchronized Message next(long now) {
+        Message next = null;
+        for (Message message : mQueue) {
+            if (message.when <= now && (next == null || message.before(next))) {
+                next = message;
+            }
+        }
+        mQueue.remove(next);
+        return next;
+    }
+
+    private synchronized long nextDue() {
+        long due = -1;
+        for (Message message : mQueue) {
+            if (due < 0 || message.when < due) {
+                due = message.when;
+            }
+        }
+        return due;
+    }
+
+    private synchronized void reset(Thread thread) {
+        mQueue.clear();
+        mThread = thread;
+    }
+
+    private void checkThread() {
+        if (!isCurrentThread()) {
+            throw new IllegalStateException("Not on the main thread");
+        }
+    }
+
+    private static final class Message {
+        final Handler target;
+        final Runnable callback;
+        final long when;
+        final long sequence;
+
+        Message(Handler target, Runnable callback, long when, long sequence) {
+            this.target = target;
+            this.callback = callback;
+            this.when = when;
+            this.sequence = sequence;
+        }
+
+        boolean before(Message other) {
+            return when < other.when || (when == other.when && sequence < other.sequence);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package android.os;
+
+/**
+ * A manual clock for elapsedRealtime and uptimeMillis, so tests decide when timeouts and decay
+ * windows pass. It starts well after boot, like on a device. elapsedRealtimeNanos follows the
+ * real time, since it is only used to measure durations.
+ */
+public final class SystemClock {
+
+    private static final long BOOT_OFFSET_MS = 1_000_000;
+
+    private static long sNowMs = BOOT_OFFSET_MS;
+
+    private SystemClock() {
+    }
+
+    public static synchronized long elapsedRealtime() {
+        return sNowMs;
+    }
+
+    public static synchronized long uptimeMillis() {
+        return sNowMs;
+    }
+
+    public static long elapsedRealtimeNanos() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Moves the clock forward. Does not run anything, see Looper.idleMainFor.
+     */
+    public static synchronized void advance(long ms) {
+        sNowMs += ms;
+    }
+
+    public static synchronized void reset() {
+        sNowMs = BOOT_OFFSET_MS;
+    }
+}
@@ -0,0 +1,54 @@
+package android.security;
+
+import android.content.Context;
+
+import java.math.BigInteger;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Date;
+
+import javax.security.auth.x500.X500Principal;
+
+public final class KeyPairGeneratorSpec implements AlgorithmParameterSpec {
+
+    private final String mKeystoreAlias;
+
+    private KeyPairGeneratorSpec(String keystoreAlias) {
+        mKeystoreAlias = keystoreAlias;
+    }
+
+    public String getKeystoreAlias() {
+        return mKeystoreAlias;
+    }
+
+    public static final class Builder {
+        private String mKeystoreAlias;
+
+        public Builder(Context context) {
+        }
+
+        public Builder setAlias(String alias) {
+            mKeystoreAlias = alias;
+            return this;
+        }
+
+        public Builder setSubject(X500Principal subject) {
+            return this;
+        }
+
+        public Builder setSerialNumber(BigInteger serialNumber) {
+            return this;
+        }
+
+        public Builder setStartDate(Date startDate) {
+            return this;
+        }
+
+        public Builder setEndDate(Date endDate) {
+            return this;
+        }
+
+        public KeyPairGeneratorSpec build() {
+            return new KeyPairGeneratorSpec(mKeystoreAlias);
+        }
+    }
+}
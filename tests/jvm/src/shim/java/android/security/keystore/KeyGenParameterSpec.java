@@ -0,0 +1,124 @@
+package android.security.keystore;
+
+import java.security.spec.AlgorithmParameterSpec;
+
+public final class KeyGenParameterSpec implements AlgorithmParameterSpec {
+
+    private final String mKeystoreAlias;
+    private final int mPurposes;
+    private final String[] mBlockModes;
+    private final String[] mEncryptionPaddings;
+    private final String[] mDigests;
+    private final int mKeySize;
+    private final boolean mUserAuthenticationRequired;
+    private final boolean mInvalidatedByBiometricEnrollment;
+    private final boolean mStrongBoxBacked;
+
+    private KeyGenParameterSpec(Builder builder) {
+        mKeystoreAlias = builder.mKeystoreAlias;
+        mPurposes = builder.mPurposes;
+        mBlockModes = builder.mBlockModes;
+        mEncryptionPaddings = builder.mEncryptionPaddings;
+        mDigests = builder.mDigests;
+        mKeySize = builder.mKeySize;
+        mUserAuthenticationRequired = builder.mUserAuthenticationRequired;
+        mInvalidatedByBiometricEnrollment = builder.mInvalidatedByBiometricEnrollment;
+        mStrongBoxBacked = builder.mStrongBoxBacked;
+    }
+
+    public String getKeystoreAlias() {
+        return mKeystoreAlias;
+    }
+
+    public int getPurposes() {
+        return mPurposes;
+    }
+
+    public String[] getBlockModes() {
+        return mBlockModes.clone();
+    }
+
+    public String[] getEncryptionPaddings() {
+        return mEncryptionPaddings.clone();
+    }
+
+    public String[] getDigests() {
+        return mDigests.clone();
+    }
+
+    public int getKeySize() {
+        return mKeySize;
+    }
+
+    public boolean isUserAuthenticationRequired() {
+        return mUserAuthenticationRequired;
+    }
+
+    public boolean isInvalidatedByBiometricEnrollment() {
+        return mInvalidatedByBiometricEnrollment;
+    }
+
+    public boolean isStrongBoxBacked() {
+        return mStrongBoxBacked;
+    }
+
+    public static final class Builder {
+        private final String mKeystoreAlias;
+        private final int mPurposes;
+        private String[] mBlockModes = new String[0];
+        private String[] mEncryptionPaddings = new String[0];
+        private String[] mDigests = new String[0];
+        private int mKeySize = -1;
+        private boolean mUserAuthenticationRequired;
+        // Same default as the framework
+        private boolean mInvalidatedByBiometricEnrollment = true;
+        private boolean mStrongBoxBacked;
+
+        public Builder(String keystoreAlias, int purposes) {
+            if (keystoreAlias == null || keystoreAlias.isEmpty()) {
+                throw new IllegalArgumentException("keystoreAlias must not be empty");
+            }
+            mKeystoreAlias = keystoreAlias;
+            mPurposes = purposes;
+        }
+
+        public Builder setBlockModes(String... blockModes) {
+            mBlockModes = blockModes.clone();
+            return this;
+        }
+
+        public Builder setEncryptionPaddings(String... paddings) {
+            mEncryptionPaddings = paddings.clone();
+            return this;
+        }
+
+        public Builder setDigests(String... digests) {
+            mDigests = digests.clone();
+            return this;
+        }
+
+        public Builder setKeySize(int keySize) {
+            mKeySize = keySize;
+            return this;
+        }
+
+        public Builder setUserAuthenticationRequired(boolean required) {
+            mUserAuthenticationRequired = required;
+            return this;
+        }
+
+        public Builder setInvalidatedByBiometricEnrollment(boolean invalidateKey) {
+            mInvalidatedByBiometricEnrollment = invalidateKey;
+            return this;
+        }
+
+        public Builder setIsStrongBoxBacked(boolean isStrongBoxBacked) {
+            mStrongBoxBacked = isStrongBoxBacked;
+            return this;
+        }
+
+        public KeyGenParameterSpec build() {
+            return new KeyGenParameterSpec(this);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package android.security.keystore;
+
+import java.security.spec.KeySpec;
+
+public class KeyInfo implements KeySpec {
+
+    private final boolean mInsideSecureHardware;
+    private final int mSecurityLevel;
+
+    public KeyInfo(boolean insideSecureHardware, int securityLevel) {
+        mInsideSecureHardware = insideSecureHardware;
+        mSecurityLevel = securityLevel;
+    }
+
+    public boolean isInsideSecureHardware() {
+        return mInsideSecureHardware;
+    }
+
+    public int getSecurityLevel() {
+        return mSecurityLevel;
+    }
+}
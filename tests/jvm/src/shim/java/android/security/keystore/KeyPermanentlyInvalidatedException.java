@@ -0,0 +1,10 @@
+package android.security.keystore;
+
+import java.security.InvalidKeyException;
+
+public class KeyPermanentlyInvalidatedException extends InvalidKeyException {
+
+    public KeyPermanentlyInvalidatedException() {
+        super("Key permanently invalidated");
+    }
+}
@@ -0,0 +1,10 @@
+package android.security.keystore;
+
+import java.security.ProviderException;
+
+public class StrongBoxUnavailableException extends ProviderException {
+
+    public StrongBoxUnavailableException() {
+        super("No StrongBox available");
+    }
+}
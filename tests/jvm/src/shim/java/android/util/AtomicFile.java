@@ -0,0 +1,53 @@
+package android.util;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Same contract as the framework class: writes go to a side file that replaces the base file on
+ * finishWrite and is dropped on failWrite.
+ */
+public class AtomicFile {
+
+    private final File mBaseName;
+    private final File mNewName;
+
+    public AtomicFile(File baseName) {
+        mBaseName = baseName;
+        mNewName = new File(baseName.getPath() + ".new");
+    }
+
+    public File getBaseFile() {
+        return mBaseName;
+    }
+
+    public FileOutputStream startWrite() throws IOException {
+        return new FileOutputStream(mNewName);
+    }
+
+    public void finishWrite(FileOutputStream str) throws IOException {
+        str.getFD().sync();
+        str.close();
+        Files.move(mNewName.toPath(), mBaseName.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void failWrite(FileOutputStream str) {
+        try {
+            str.close();
+        } catch (IOException ignored) {
+        }
+        mNewName.delete();
+    }
+
+    public byte[] readFully() throws IOException {
+        if (!mBaseName.exists()) {
+            throw new FileNotFoundException(mBaseName.getPath());
+        }
+        return Files.readAllBytes(mBaseName.toPath());
+    }
+}
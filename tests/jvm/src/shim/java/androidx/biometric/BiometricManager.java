@@ -0,0 +1,62 @@
+package androidx.biometric;
+
+import android.content.Context;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Answers canAuthenticate from statuses set by the test, BIOMETRIC_SUCCESS by default, and counts
+ * the calls since each one is a binder call on a device.
+ */
+public class BiometricManager {
+
+    public static final int BIOMETRIC_SUCCESS = 0;
+    public static final int BIOMETRIC_STATUS_UNKNOWN = -1;
+    public static final int BIOMETRIC_ERROR_UNSUPPORTED = -2;
+    public static final int BIOMETRIC_ERROR_HW_UNAVAILABLE = 1;
+    public static final int BIOMETRIC_ERROR_NONE_ENROLLED = 11;
+    public static final int BIOMETRIC_ERROR_NO_HARDWARE = 12;
+    public static final int BIOMETRIC_ERROR_SECURITY_UPDATE_REQUIRED = 15;
+
+    public interface Authenticators {
+        int BIOMETRIC_STRONG = 0x000F;
+        int BIOMETRIC_WEAK = 0x00FF;
+        int DEVICE_CREDENTIAL = 1 << 15;
+    }
+
+    private static final Map<Integer, Integer> sStatuses = new HashMap<>();
+    private static int sCalls;
+
+    private BiometricManager() {
+    }
+
+    public static BiometricManager from(Context context) {
+        return new BiometricManager();
+    }
+
+    public static synchronized void setStatus(int authenticators, int status) {
+        sStatuses.put(authenticators, status);
+    }
+
+    public static synchronized int getCanAuthenticateCalls() {
+        return sCalls;
+    }
+
+    public static synchronized void reset() {
+        sStatuses.clear();
+        sCalls = 0;
+    }
+
+    public int canAuthenticate(int authenticators) {
+        synchronized (BiometricManager.class) {
+            sCalls++;
+            Integer status = sStatuses.get(authenticators);
+            return status == null ? BIOMETRIC_SUCCESS : status;
+        }
+    }
+
+    public int canAuthenticate() {
+        return canAuthenticate(Authenticators.BIOMETRIC_WEAK);
+    }
+}
@@ -0,0 +1,382 @@
+package androidx.biometric;
+
+import android.os.Build;
+
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
+
+import java.security.Signature;
+import java.util.concurrent.Executor;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+
+/**
+ * Validates prompts like the library and shows them as its headless fragment on the activity.
+ * The test plays the user: succeed, fail or error on the prompt returned by getShowing. Results
+ * go through the executor given by the caller, and every result except a failed attempt
+ * dismisses the prompt first.
+ */
+public class BiometricPrompt {
+
+    public static final int ERROR_HW_UNAVAILABLE = 1;
+    public static final int ERROR_UNABLE_TO_PROCESS = 2;
+    public static final int ERROR_TIMEOUT = 3;
+    public static final int ERROR_NO_SPACE = 4;
+    public static final int ERROR_CANCELED = 5;
+    public static final int ERROR_LOCKOUT = 7;
+    public static final int ERROR_VENDOR = 8;
+    public static final int ERROR_LOCKOUT_PERMANENT = 9;
+    public static final int ERROR_USER_CANCELED = 10;
+    public static final int ERROR_NO_BIOMETRICS = 11;
+    public static final int ERROR_HW_NOT_PRESENT = 12;
+    public static final int ERROR_NEGATIVE_BUTTON = 13;
+    public static final int ERROR_NO_DEVICE_CREDENTIAL = 14;
+
+    public static final int AUTHENTICATION_RESULT_TYPE_DEVICE_CREDENTIAL = 1;
+    public static final int AUTHENTICATION_RESULT_TYPE_BIOMETRIC = 2;
+
+    static final String FRAGMENT_TAG = "androidx.biometric.BiometricFragment";
+
+    private static BiometricPrompt sShowing;
+    private static int sAuthenticateCalls;
+
+    private final FragmentActivity mActivity;
+    private final Executor mExecutor;
+    private final AuthenticationCallback mCallback;
+    private PromptInfo mPromptInfo;
+    private CryptoObject mCryptoObject;
+    private Fragment mFragment;
+
+    public BiometricPrompt(FragmentActivity activity, Executor executor, AuthenticationCallback callback) {
+        if (activity == null || executor == null || callback == null) {
+            throw new IllegalArgumentException("Activity, executor and callback must not be null.");
+        }
+        mActivity = activity;
+        mExecutor = executor;
+        mCallback = callback;
+    }
+
+    public static synchronized BiometricPrompt getShowing() {
+        return sShowing;
+    }
+
+    public static synchronized int getAuthenticateCalls() {
+        return sAuthenticateCalls;
+    }
+
+    public static synchronized void reset() {
+        sShowing = null;
+        sAuthenticateCalls = 0;
+    }
+
+    public void authenticate(PromptInfo info) {
+        if (info == null) {
+            throw new IllegalArgumentException("PromptInfo cannot be null.");
+        }
+        show(info, null);
+    }
+
+    public void authenticate(PromptInfo info, CryptoObject crypto) {
+        if (info == null) {
+            throw new IllegalArgumentException("PromptInfo cannot be null.");
+        }
+        if (crypto == null) {
+            throw new IllegalArgumentException("CryptoObject cannot be null.");
+        }
+        int authenticators = info.getEffectiveAuthenticators(crypto);
+        if ((authenticators & BiometricManager.Authenticators.BIOMETRIC_WEAK) == BiometricManager.Authenticators.BIOMETRIC_WEAK) {
+            throw new IllegalArgumentException(
+                    "Crypto-based authentication is not supported for Class 2 (Weak) biometrics.");
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R
+                && (authenticators & BiometricManager.Authenticators.DEVICE_CREDENTIAL) != 0) {
+            throw new IllegalArgumentException("Crypto-based authentication is not supported for "
+                    + "device credential prior to API 30.");
+        }
+        show(info, crypto);
+    }
+
+    public void cancelAuthentication() {
+        if (dismiss()) {
+            mExecutor.execute(() -> mCallback.onAuthenticationError(ERROR_CANCELED, "Authentication canceled"));
+        }
+    }
+
+    public PromptInfo getPromptInfo() {
+        return mPromptInfo;
+    }
+
+    public CryptoObject getCryptoObject() {
+        return mCryptoObject;
+    }
+
+    public boolean isShowing() {
+        return mFragment != null;
+    }
+
+    public void succeed() {
+        CryptoObject cryptoObject = mCryptoObject;
+        requireShowing();
+        dismiss();
+        mExecutor.execute(() -> mCallback.onAuthenticationSucceeded(
+                new AuthenticationResult(cryptoObject, AUTHENTICATION_RESULT_TYPE_BIOMETRIC)));
+    }
+
+    public void fail() {
+        requireShowing();
+        mExecutor.execute(mCallback::onAuthenticationFailed);
+    }
+
+    public void error(int errorCode, CharSequence errString) {
+        requireShowing();
+        dismiss();
+        mExecutor.execute(() -> mCallback.onAuthenticationError(errorCode, errString));
+    }
+
+    private void show(PromptInfo info, CryptoObject crypto) {
+        synchronized (BiometricPrompt.class) {
+            sAuthenticateCalls++;
+            sShowing = this;
+        }
+        mPromptInfo = info;
+        mCryptoObject = crypto;
+        if (mFragment == null) {
+            mFragment = new Fragment();
+            mActivity.getSupportFragmentManager().add(mFragment, FRAGMENT_TAG);
+        }
+    }
+
+    private boolean dismiss() {
+        if (mFragment == null) {
+            return false;
+        }
+        Fragment fragment = mFragment;
+        mFragment = null;
+        synchronized (BiometricPrompt.class) {
+            if (sShowing == this) {
+                sShowing = null;
+            }
+        }
+        mActivity.getSupportFragmentManager().remove(fragment);
+        return true;
+    }
+
+    private void requireShowing() {
+        if (mFragment == null) {
+            throw new IllegalStateException("No prompt showing");
+        }
+    }
+
+    public static class CryptoObject {
+        private final Cipher mCipher;
+        private final Signature mSignature;
+        private final Mac mMac;
+
+        public CryptoObject(Cipher cipher) {
+            this(cipher, null, null);
+        }
+
+        public CryptoObject(Signature signature) {
+            this(null, signature, null);
+        }
+
+        public CryptoObject(Mac mac) {
+            this(null, null, mac);
+        }
+
+        private CryptoObject(Cipher cipher, Signature signature, Mac mac) {
+            mCipher = cipher;
+            mSignature = signature;
+            mMac = mac;
+        }
+
+        public Cipher getCipher() {
+            return mCipher;
+        }
+
+        public Signature getSignature() {
+            return mSignature;
+        }
+
+        public Mac getMac() {
+            return mMac;
+        }
+    }
+
+    public static class AuthenticationResult {
+        private final CryptoObject mCryptoObject;
+        private final int mAuthenticationType;
+
+        public AuthenticationResult(CryptoObject cryptoObject, int authenticationType) {
+            mCryptoObject = cryptoObject;
+            mAuthenticationType = authenticationType;
+        }
+
+        public CryptoObject getCryptoObject() {
+            return mCryptoObject;
+        }
+
+        public int getAuthenticationType() {
+            return mAuthenticationType;
+        }
+    }
+
+    public abstract static class AuthenticationCallback {
+        public void onAuthenticationError(int errorCode, CharSequence errString) {
+        }
+
+        public void onAuthenticationSucceeded(AuthenticationResult result) {
+        }
+
+        public void onAuthenticationFailed() {
+        }
+    }
+
+    public static class PromptInfo {
+        private final CharSequence mTitle;
+        private final CharSequence mSubtitle;
+        private final CharSequence mDescription;
+        private final CharSequence mNegativeButtonText;
+        private final boolean mConfirmationRequired;
+        private final boolean mDeviceCredentialAllowed;
+        private final int mAllowedAuthenticators;
+
+        private PromptInfo(Builder builder) {
+            mTitle = builder.mTitle;
+            mSubtitle = builder.mSubtitle;
+            mDescription = builder.mDescription;
+            mNegativeButtonText = builder.mNegativeButtonText;
+            mConfirmationRequired = builder.mConfirmationRequired;
+            mDeviceCredentialAllowed = builder.mDeviceCredentialAllowed;
+            mAllowedAuthenticators = builder.mAllowedAuthenticators;
+        }
+
+        public CharSequence getTitle() {
+            return mTitle;
+        }
+
+        public CharSequence getSubtitle() {
+            return mSubtitle;
+        }
+
+        public CharSequence getDescription() {
+            return mDescription;
+        }
+
+        public CharSequence getNegativeButtonText() {
+            return mNegativeButtonText;
+        }
+
+        public boolean isConfirmationRequired() {
+            return mConfirmationRequired;
+        }
+
+        public boolean isDeviceCredentialAllowed() {
+            return mDeviceCredentialAllowed;
+        }
+
+        public int getAllowedAuthenticators() {
+            return mAllowedAuthenticators;
+        }
+
+        /**
+         * Like androidx: without explicit authenticators a crypto prompt asks for Class 3 biometrics.
+         */
+        int getEffectiveAuthenticators(CryptoObject crypto) {
+            if (mAllowedAuthenticators != 0) {
+                return mAllowedAuthenticators;
+            }
+            int authenticators = crypto != null
+                    ? BiometricManager.Authenticators.BIOMETRIC_STRONG
+                    : BiometricManager.Authenticators.BIOMETRIC_WEAK;
+            return mDeviceCredentialAllowed
+                    ? authenticators | BiometricManager.Authenticators.DEVICE_CREDENTIAL
+                    : authenticators;
+        }
+
+        public static class Builder {
+            private CharSequence mTitle;
+            private CharSequence mSubtitle;
+            private CharSequence mDescription;
+            private CharSequence mNegativeButtonText;
+            private boolean mConfirmationRequired = true;
+            private boolean mDeviceCredentialAllowed;
+            private int mAllowedAuthenticators;
+
+            public Builder setTitle(CharSequence title) {
+                mTitle = title;
+                return this;
+            }
+
+            public Builder setSubtitle(CharSequence subtitle) {
+                mSubtitle = subtitle;
+                return this;
+            }
+
+            public Builder setDescription(CharSequence description) {
+                mDescription = description;
+                return this;
+            }
+
+            public Builder setNegativeButtonText(CharSequence negativeButtonText) {
+                mNegativeButtonText = negativeButtonText;
+                return this;
+            }
+
+            public Builder setConfirmationRequired(boolean confirmationRequired) {
+                mConfirmationRequired = confirmationRequired;
+                return this;
+            }
+
+            public Builder setDeviceCredentialAllowed(boolean deviceCredentialAllowed) {
+                mDeviceCredentialAllowed = deviceCredentialAllowed;
+                return this;
+            }
+
+            public Builder setAllowedAuthenticators(int allowedAuthenticators) {
+                mAllowedAuthenticators = allowedAuthenticators;
+                return this;
+            }
+
+            public PromptInfo build() {
+                if (mTitle == null || mTitle.length() == 0) {
+                    throw new IllegalArgumentException("Title must be set and non-empty.");
+                }
+                if (!isSupportedCombination(mAllowedAuthenticators)) {
+                    throw new IllegalArgumentException("Authenticator combination is unsupported on API "
+                            + Build.VERSION.SDK_INT + ": " + mAllowedAuthenticators);
+                }
+                boolean deviceCredentialAllowed = mAllowedAuthenticators != 0
+                        ? (mAllowedAuthenticators & BiometricManager.Authenticators.DEVICE_CREDENTIAL) != 0
+                        : mDeviceCredentialAllowed;
+                boolean hasNegativeText = mNegativeButtonText != null && mNegativeButtonText.length() > 0;
+                if (!hasNegativeText && !deviceCredentialAllowed) {
+                    throw new IllegalArgumentException("Negative text must be set and non-empty.");
+                }
+                if (hasNegativeText && deviceCredentialAllowed) {
+                    throw new IllegalArgumentException(
+                            "Negative text must not be set if device credential authentication is allowed.");
+                }
+                return new PromptInfo(this);
+            }
+
+            private static boolean isSupportedCombination(int authenticators) {
+                switch (authenticators) {
+                    case 0:
+                    case BiometricManager.Authenticators.BIOMETRIC_STRONG:
+                    case BiometricManager.Authenticators.BIOMETRIC_WEAK:
+                    case BiometricManager.Authenticators.BIOMETRIC_WEAK | BiometricManager.Authenticators.DEVICE_CREDENTIAL:
+                        return true;
+                    case BiometricManager.Authenticators.DEVICE_CREDENTIAL:
+                        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+                    case BiometricManager.Authenticators.BIOMETRIC_STRONG | BiometricManager.Authenticators.DEVICE_CREDENTIAL:
+                        return Build.VERSION.SDK_INT < Build.VERSION_CODES.P
+                                || Build.VERSION.SDK_INT > Build.VERSION_CODES.Q;
+                    default:
+                        return false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package androidx.core.content;
+
+import android.app.KeyguardManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+public final class ContextCompat {
+
+    private ContextCompat() {
+    }
+
+    /**
+     * Only the services the plugin asks for are mapped to their names.
+     */
+    public static <T> T getSystemService(Context context, Class<T> serviceClass) {
+        if (serviceClass == KeyguardManager.class) {
+            return serviceClass.cast(context.getSystemService(Context.KEYGUARD_SERVICE));
+        }
+        return null;
+    }
+
+    public static Executor getMainExecutor(Context context) {
+        return new Handler(Looper.getMainLooper())::post;
+    }
+}
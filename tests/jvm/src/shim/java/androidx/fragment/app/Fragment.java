@@ -0,0 +1,10 @@
+package androidx.fragment.app;
+
+public class Fragment {
+
+    String mTag;
+
+    public final String getTag() {
+        return mTag;
+    }
+}
@@ -0,0 +1,48 @@
+package androidx.fragment.app;
+
+import android.app.Activity;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.ViewModelStore;
+import androidx.lifecycle.ViewModelStoreOwner;
+
+public class FragmentActivity extends Activity implements ViewModelStoreOwner, LifecycleOwner {
+
+    private final FragmentManager mFragmentManager = new FragmentManager(this);
+    private final Lifecycle mLifecycle = new Lifecycle() {
+    };
+    private ViewModelStore mViewModelStore = new ViewModelStore();
+
+    public FragmentManager getSupportFragmentManager() {
+        return mFragmentManager;
+    }
+
+    @Override
+    public ViewModelStore getViewModelStore() {
+        return mViewModelStore;
+    }
+
+    @Override
+    public Lifecycle getLifecycle() {
+        return mLifecycle;
+    }
+
+    /**
+     * Takes over the view models of the instance this one replaces after a configuration change.
+     */
+    public void retainViewModelsOf(FragmentActivity previous) {
+        mViewModelStore = previous.mViewModelStore;
+    }
+
+    /**
+     * View models are cleared unless the activity is only recreated for a configuration change.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (!isChangingConfigurations()) {
+            mViewModelStore.clear();
+        }
+    }
+}
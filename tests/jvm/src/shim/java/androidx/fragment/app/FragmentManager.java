@@ -0,0 +1,79 @@
+package androidx.fragment.app;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the fragments of one activity. Adding and removing is immediate, where the library
+ * commits a transaction; the lifecycle callbacks fire in the same order.
+ */
+public class FragmentManager {
+
+    public abstract static class FragmentLifecycleCallbacks {
+        public void onFragmentAttached(FragmentManager fm, Fragment f, Context context) {
+        }
+
+        public void onFragmentResumed(FragmentManager fm, Fragment f) {
+        }
+
+        public void onFragmentViewDestroyed(FragmentManager fm, Fragment f) {
+        }
+
+        public void onFragmentDestroyed(FragmentManager fm, Fragment f) {
+        }
+
+        public void onFragmentDetached(FragmentManager fm, Fragment f) {
+        }
+    }
+
+    private final FragmentActivity mHost;
+    private final List<Fragment> mFragments = new ArrayList<>();
+    private final List<FragmentLifecycleCallbacks> mCallbacks = new ArrayList<>();
+
+    FragmentManager(FragmentActivity host) {
+        mHost = host;
+    }
+
+    public Fragment findFragmentByTag(String tag) {
+        for (Fragment fragment : mFragments) {
+            if (tag != null && tag.equals(fragment.getTag())) {
+                return fragment;
+            }
+        }
+        return null;
+    }
+
+    public void registerFragmentLifecycleCallbacks(FragmentLifecycleCallbacks cb, boolean recursive) {
+        mCallbacks.add(cb);
+    }
+
+    public void unregisterFragmentLifecycleCallbacks(FragmentLifecycleCallbacks cb) {
+        mCallbacks.remove(cb);
+    }
+
+    public int getRegisteredCallbackCount() {
+        return mCallbacks.size();
+    }
+
+    public void add(Fragment fragment, String tag) {
+        fragment.mTag = tag;
+        mFragments.add(fragment);
+        for (FragmentLifecycleCallbacks cb : new ArrayList<>(mCallbacks)) {
+            cb.onFragmentAttached(this, fragment, mHost);
+            cb.onFragmentResumed(this, fragment);
+        }
+    }
+
+    public void remove(Fragment fragment) {
+        if (!mFragments.remove(fragment)) {
+            return;
+        }
+        for (FragmentLifecycleCallbacks cb : new ArrayList<>(mCallbacks)) {
+            cb.onFragmentViewDestroyed(this, fragment);
+            cb.onFragmentDestroyed(this, fragment);
+            cb.onFragmentDetached(this, fragment);
+        }
+    }
+}
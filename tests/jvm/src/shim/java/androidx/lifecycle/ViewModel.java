@@ -0,0 +1,7 @@
+package androidx.lifecycle;
+
+public abstract class ViewModel {
+
+    protected void onCleared() {
+    }
+}
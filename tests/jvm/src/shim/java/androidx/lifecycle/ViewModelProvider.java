@@ -0,0 +1,28 @@
+package androidx.lifecycle;
+
+/**
+ * Creates view models with their no-argument constructor, like the default factory.
+ */
+public class ViewModelProvider {
+
+    private final ViewModelStore mStore;
+
+    public ViewModelProvider(ViewModelStoreOwner owner) {
+        mStore = owner.getViewModelStore();
+    }
+
+    public <T extends ViewModel> T get(Class<T> modelClass) {
+        String key = "androidx.lifecycle.ViewModelProvider.DefaultKey:" + modelClass.getCanonicalName();
+        ViewModel viewModel = mStore.get(key);
+        if (modelClass.isInstance(viewModel)) {
+            return modelClass.cast(viewModel);
+        }
+        try {
+            T created = modelClass.getDeclaredConstructor().newInstance();
+            mStore.put(key, created);
+            return created;
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Cannot create an instance of " + modelClass, e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package androidx.lifecycle;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ViewModelStore {
+
+    private final Map<String, ViewModel> mMap = new HashMap<>();
+
+    ViewModel get(String key) {
+        return mMap.get(key);
+    }
+
+    void put(String key, ViewModel viewModel) {
+        mMap.put(key, viewModel);
+    }
+
+    public final void clear() {
+        for (ViewModel viewModel : mMap.values()) {
+            viewModel.onCleared();
+        }
+        mMap.clear();
+    }
+}
@@ -0,0 +1,67 @@
+package org.apache.cordova;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Same contract as the framework class: once a result without keepCallback was sent, later
+ * results are dropped.
+ */
+public class CallbackContext {
+
+    private static final String LOG_TAG = "CordovaPlugin";
+
+    private final String mCallbackId;
+    private final CordovaWebView mWebView;
+    private boolean mFinished;
+
+    public CallbackContext(String callbackId, CordovaWebView webView) {
+        mCallbackId = callbackId;
+        mWebView = webView;
+    }
+
+    public String getCallbackId() {
+        return mCallbackId;
+    }
+
+    public boolean isFinished() {
+        return mFinished;
+    }
+
+    public void sendPluginResult(PluginResult pluginResult) {
+        synchronized (this) {
+            if (mFinished) {
+                Log.w(LOG_TAG, "Attempted to send a second callback for ID: " + mCallbackId);
+                return;
+            }
+            mFinished = !pluginResult.getKeepCallback();
+        }
+        mWebView.sendPluginResult(pluginResult, mCallbackId);
+    }
+
+    public void success(JSONObject message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    public void success(JSONArray message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    public void success(String message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    public void success() {
+        sendPluginResult(new PluginResult(PluginResult.Status.OK));
+    }
+
+    public void error(JSONObject message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
+    }
+
+    public void error(String message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
+    }
+}
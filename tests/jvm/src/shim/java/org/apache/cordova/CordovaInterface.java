@@ -0,0 +1,19 @@
+package org.apache.cordova;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+
+import java.util.concurrent.ExecutorService;
+
+public interface CordovaInterface {
+    void startActivityForResult(CordovaPlugin command, Intent intent, int requestCode);
+
+    void setActivityResultCallback(CordovaPlugin plugin);
+
+    Activity getActivity();
+
+    Context getContext();
+
+    ExecutorService getThreadPool();
+}
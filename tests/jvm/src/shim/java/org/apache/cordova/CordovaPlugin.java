@@ -0,0 +1,49 @@
+package org.apache.cordova;
+
+import android.content.Intent;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+public class CordovaPlugin {
+
+    public CordovaWebView webView;
+    public CordovaInterface cordova;
+
+    /**
+     * Sets the fields the framework sets before calling initialize, so overrides can rely on them.
+     */
+    public void initialize(CordovaInterface cordova, CordovaWebView webView) {
+        this.cordova = cordova;
+        this.webView = webView;
+        pluginInitialize();
+    }
+
+    protected void pluginInitialize() {
+    }
+
+    public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+        return false;
+    }
+
+    public void onActivityResult(int requestCode, int resultCode, Intent intent) {
+    }
+
+    public void onStart() {
+    }
+
+    public void onStop() {
+    }
+
+    public void onPause(boolean multitasking) {
+    }
+
+    public void onResume(boolean multitasking) {
+    }
+
+    public void onReset() {
+    }
+
+    public void onDestroy() {
+    }
+}
@@ -0,0 +1,5 @@
+package org.apache.cordova;
+
+public interface CordovaWebView {
+    void sendPluginResult(PluginResult result, String callbackId);
+}
@@ -0,0 +1,84 @@
+package org.apache.cordova;
+
+import android.util.Base64;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Encodes the message the way the framework sends it to JavaScript.
+ */
+public class PluginResult {
+
+    public enum Status {
+        NO_RESULT,
+        OK,
+        CLASS_NOT_FOUND_EXCEPTION,
+        ILLEGAL_ACCESS_EXCEPTION,
+        INSTANTIATION_EXCEPTION,
+        MALFORMED_URL_EXCEPTION,
+        IO_EXCEPTION,
+        INVALID_ACTION,
+        JSON_EXCEPTION,
+        ERROR
+    }
+
+    private final int mStatus;
+    private final String mStrMessage;
+    private final String mEncodedMessage;
+    private boolean mKeepCallback = false;
+
+    public PluginResult(Status status) {
+        this(status, null, "null");
+    }
+
+    public PluginResult(Status status, String message) {
+        this(status, message, message == null ? "null" : JSONObject.quote(message));
+    }
+
+    public PluginResult(Status status, JSONArray message) {
+        this(status, null, message.toString());
+    }
+
+    public PluginResult(Status status, JSONObject message) {
+        this(status, null, message.toString());
+    }
+
+    public PluginResult(Status status, int i) {
+        this(status, null, String.valueOf(i));
+    }
+
+    public PluginResult(Status status, boolean b) {
+        this(status, null, String.valueOf(b));
+    }
+
+    public PluginResult(Status status, byte[] data) {
+        this(status, null, JSONObject.quote(Base64.encodeToString(data, Base64.NO_WRAP)));
+    }
+
+    private PluginResult(Status status, String strMessage, String encodedMessage) {
+        mStatus = status.ordinal();
+        mStrMessage = strMessage;
+        mEncodedMessage = encodedMessage;
+    }
+
+    public void setKeepCallback(boolean b) {
+        mKeepCallback = b;
+    }
+
+    public int getStatus() {
+        return mStatus;
+    }
+
+    public String getMessage() {
+        return mEncodedMessage;
+    }
+
+    public String getStrMessage() {
+        return mStrMessage;
+    }
+
+    public boolean getKeepCallback() {
+        return mKeepCallback;
+    }
+}
@@ -0,0 +1,95 @@
+package de.niklasmerz.cordova.biometric;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class ArgsTest {
+
+    private static Args decode(String json) {
+        return new Args(new JSONArray("[" + json + "]"));
+    }
+
+    @Test
+    public void decodesKnownOptions() {
+        Args args = decode("{\"title\":\"Unlock\",\"disableBackup\":true,\"maxAttempts\":3,"
+                + "\"slots\":[\"a\",\"b\"]}");
+
+        assertNull(args.getError());
+        assertEquals("Unlock", args.getString("title", null));
+        assertEquals(Boolean.TRUE, args.getBoolean("disableBackup", false));
+        assertEquals(Integer.valueOf(3), args.getInt("maxAttempts", 5));
+        assertArrayEquals(new String[]{"a", "b"}, args.getStringArray("slots", null));
+    }
+
+    @Test
+    public void missingNullAndEmptyValuesFallBackToDefaults() {
+        Args args = decode("{\"title\":\"\",\"subtitle\":null}");
+
+        assertNull(args.getError());
+        assertEquals("Default", args.getString("title", "Default"));
+        assertEquals("Default", args.getString("subtitle", "Default"));
+        assertEquals(Integer.valueOf(5), args.getInt("maxAttempts", 5));
+    }
+
+    @Test
+    public void noOptionsObjectIsValid() {
+        assertNull(new Args(new JSONArray()).getError());
+        assertNull(new Args(null).getError());
+        assertNull(new Args(new JSONArray().put(JSONObject.NULL)).getError());
+    }
+
+    @Test
+    public void rejectsUnknownOption() {
+        Args args = decode("{\"titel\":\"Unlock\"}");
+
+        assertEquals("Unknown option 'titel'", args.getError());
+    }
+
+    @Test
+    public void rejectsMistypedOptions() {
+        assertEquals("Option 'maxAttempts' must be an integer", decode("{\"maxAttempts\":\"3\"}").getError());
+        assertEquals("Option 'maxAttempts' must be an integer", decode("{\"maxAttempts\":2.5}").getError());
+        assertEquals("Option 'disableBackup' must be a boolean", decode("{\"disableBackup\":1}").getError());
+        assertEquals("Option 'slots' must be an array of strings", decode("{\"slots\":[\"a\",1]}").getError());
+        assertEquals("Options must be an object", new Args(new JSONArray("[\"title\"]")).getError());
+    }
+
+    @Test
+    public void invalidOptionsReadAsEmpty() {
+        Args args = decode("{\"title\":\"Unlock\",\"titel\":\"Unlock\"}");
+
+        assertEquals("Default", args.getString("title", "Default"));
+    }
+
+    @Test
+    public void acceptsWholeNumberDoubles() {
+        assertEquals(Integer.valueOf(3), decode("{\"maxAttempts\":3.0}").getInt("maxAttempts", null));
+    }
+
+    @Test
+    public void stringArraysAreCopied() {
+        Args args = decode("{\"slots\":[\"a\"]}");
+
+        args.getStringArray("slots", null)[0] = "changed";
+
+        assertArrayEquals(new String[]{"a"}, args.getStringArray("slots", null));
+    }
+
+    @Test
+    public void equalityIgnoresFieldOrder() {
+        Args first = decode("{\"title\":\"Unlock\",\"slots\":[\"a\",\"b\"]}");
+        Args second = decode("{\"slots\":[\"a\",\"b\"],\"title\":\"Unlock\"}");
+
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertNotEquals(first, decode("{\"slots\":[\"b\",\"a\"],\"title\":\"Unlock\"}"));
+        assertFalse(first.equals(decode("{\"title\":\"Unlock\"}")));
+    }
+}
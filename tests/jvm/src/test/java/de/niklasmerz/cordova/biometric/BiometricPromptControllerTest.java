@@ -0,0 +1,373 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Looper;
+import android.util.Base64;
+
+import androidx.biometric.BiometricManager.Authenticators;
+import androidx.biometric.BiometricPrompt;
+import androidx.fragment.app.FragmentActivity;
+
+import org.json.JSONArray;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BiometricPromptControllerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestDevice mDevice;
+    private FragmentActivity mActivity;
+    private int mNextRequestId = 1;
+
+    @Before
+    public void setUp() {
+        mDevice = TestDevice.create(folder.getRoot());
+        mActivity = new FakeCordova.CordovaActivity(mDevice.context);
+    }
+
+    @Test
+    public void registersAndLoadsTheDefaultSecret() {
+        RecordingHost register = start("{\"secret\":\"s3cr3t\"}", BiometricActivityType.REGISTER_SECRET);
+        BiometricPrompt prompt = BiometricPrompt.getShowing();
+        assertNotNull(prompt.getCryptoObject().getCipher());
+        prompt.succeed();
+        mDevice.idle();
+
+        register.assertSucceeded();
+        assertTrue(SecretVault.get(mDevice.context).contains(SecretVault.DEFAULT_SLOT));
+
+        RecordingHost load = start("{}", BiometricActivityType.LOAD_SECRET);
+        BiometricPrompt.getShowing().succeed();
+        mDevice.idle();
+
+        load.assertSucceeded();
+        Map<String, ByteBuffer> secrets = SecretRegistry.take(load.requestId);
+        assertEquals("s3cr3t", SecretRegistry.decode(secrets.get(SecretVault.DEFAULT_SLOT)));
+    }
+
+    @Test
+    public void namedSlotsShareOneVaultKey() {
+        authenticate("{\"secret\":\"abc\",\"slot\":\"token\"}", BiometricActivityType.REGISTER_SECRET);
+        authenticate("{\"secret\":\"1234\",\"slot\":\"pin\"}", BiometricActivityType.REGISTER_SECRET);
+
+        RecordingHost load = authenticate("{\"slots\":[\"token\",\"pin\"]}", BiometricActivityType.LOAD_SECRET);
+
+        load.assertSucceeded();
+        assertEquals(3, BiometricPrompt.getAuthenticateCalls());
+        assertEquals(1, FakeAndroidKeyStore.getGeneratedKeys());
+        Map<String, ByteBuffer> secrets = SecretRegistry.take(load.requestId);
+        assertEquals("abc", SecretRegistry.decode(secrets.get("token")));
+        assertEquals("1234", SecretRegistry.decode(secrets.get("pin")));
+    }
+
+    @Test
+    public void locksOutAfterMaxAttemptsWithoutBackup() {
+        String options = "{\"secret\":\"s3cr3t\",\"maxAttempts\":2}";
+        RecordingHost host = start(options, BiometricActivityType.REGISTER_SECRET);
+        BiometricPrompt prompt = BiometricPrompt.getShowing();
+        prompt.fail();
+        mDevice.idle();
+        assertEquals(0, host.results);
+
+        prompt.fail();
+        mDevice.idle();
+
+        host.assertError(PluginError.BIOMETRIC_LOCKED_OUT);
+        assertTrue(host.keyguardLaunches.isEmpty());
+
+        // The next prompt does not get a fresh set of attempts
+        int authenticateCalls = BiometricPrompt.getAuthenticateCalls();
+        start(options, BiometricActivityType.REGISTER_SECRET).assertError(PluginError.BIOMETRIC_LOCKED_OUT);
+        assertEquals(authenticateCalls, BiometricPrompt.getAuthenticateCalls());
+    }
+
+    @Test
+    public void successResetsTheFailedAttempts() {
+        start("{\"maxAttempts\":3}", BiometricActivityType.JUST_AUTHENTICATE);
+        BiometricPrompt prompt = BiometricPrompt.getShowing();
+        prompt.fail();
+        mDevice.idle();
+        assertEquals(1, AttemptCounter.get(mDevice.context).getFailures());
+
+        prompt.succeed();
+        mDevice.idle();
+
+        assertEquals(0, AttemptCounter.get(mDevice.context).getFailures());
+    }
+
+    @Test
+    public void negativeButtonWithoutBackupDismisses() {
+        RecordingHost host = start("{\"disableBackup\":true}", BiometricActivityType.JUST_AUTHENTICATE);
+        BiometricPrompt prompt = BiometricPrompt.getShowing();
+        assertEquals("Cancel", prompt.getPromptInfo().getNegativeButtonText());
+
+        prompt.error(BiometricPrompt.ERROR_NEGATIVE_BUTTON, "Cancel");
+        mDevice.idle();
+
+        host.assertError(PluginError.BIOMETRIC_DISMISSED);
+    }
+
+    @Test
+    public void handsOffToKeyguardOnceWhenTheLimitIsReached() {
+        RecordingHost host = start("{\"maxAttempts\":1}", BiometricActivityType.JUST_AUTHENTICATE);
+        BiometricPrompt prompt = BiometricPrompt.getShowing();
+
+        prompt.fail();
+        mDevice.idle();
+        // The fragment detaching and ERROR_CANCELED both report the dismissal, and the safety timeout expires
+        mDevice.idleFor(2000);
+
+        assertFalse(prompt.isShowing());
+        assertEquals(1, host.keyguardLaunches.size());
+        assertEquals(0, host.results);
+
+        assertTrue(host.controller.onActivityResult(
+                BiometricPromptController.REQUEST_CODE_CONFIRM_DEVICE_CREDENTIALS, Activity.RESULT_OK));
+
+        host.assertSucceeded();
+        assertEquals(0, AttemptCounter.get(mDevice.context).getFailures());
+    }
+
+    @Test
+    public void reportsADismissedKeyguard() {
+        RecordingHost host = start("{}", BiometricActivityType.JUST_AUTHENTICATE);
+        BiometricPrompt.getShowing().error(BiometricPrompt.ERROR_LOCKOUT, "Too many attempts");
+        mDevice.idle();
+        assertEquals(1, host.keyguardLaunches.size());
+
+        host.controller.onActivityResult(
+                BiometricPromptController.REQUEST_CODE_CONFIRM_DEVICE_CREDENTIALS, Activity.RESULT_CANCELED);
+
+        host.assertError(PluginError.BIOMETRIC_PIN_OR_PATTERN_DISMISSED);
+    }
+
+    @Test
+    public void reportsAnUnsecuredScreenLockInsteadOfHandingOff() {
+        mDevice.context.getKeyguardManager().setKeyguardSecure(false);
+        RecordingHost host = start("{}", BiometricActivityType.JUST_AUTHENTICATE);
+
+        BiometricPrompt.getShowing().error(BiometricPrompt.ERROR_LOCKOUT, "Too many attempts");
+        mDevice.idle();
+
+        host.assertError(PluginError.BIOMETRIC_SCREEN_GUARD_UNSECURED);
+        assertTrue(host.keyguardLaunches.isEmpty());
+    }
+
+    @Test
+    public void passesTheLockoutMessageOnForCryptoPrompts() {
+        RecordingHost host = start("{\"secret\":\"s3cr3t\"}", BiometricActivityType.REGISTER_SECRET);
+
+        BiometricPrompt.getShowing().error(BiometricPrompt.ERROR_LOCKOUT_PERMANENT, "Disabled");
+        mDevice.idle();
+
+        assertEquals(PluginError.BIOMETRIC_LOCKED_OUT_PERMANENT.getValue(), host.errorCode);
+        assertEquals("Disabled", host.errorMessage);
+    }
+
+    @Test
+    public void signsTheChallenge() throws Exception {
+        PublicKey publicKey = new CryptographyManagerImpl().getOrCreateSigningKey(SecretVault.SIGNING_KEY, false);
+
+        RecordingHost host = authenticate("{\"challenge\":\"nonce\"}", BiometricActivityType.SIGN);
+
+        host.assertSucceeded();
+        Signature verifier = Signature.getInstance("SHA256withECDSA");
+        verifier.initVerify(publicKey);
+        verifier.update("nonce".getBytes(StandardCharsets.UTF_8));
+        assertTrue(verifier.verify(Base64.decode(host.success.getStringExtra(PromptInfo.SIGNATURE_EXTRA), Base64.NO_WRAP)));
+    }
+
+    @Test
+    public void signingNeverHandsOffToKeyguard() throws CryptoException {
+        new CryptographyManagerImpl().getOrCreateSigningKey(SecretVault.SIGNING_KEY, false);
+        RecordingHost host = start("{\"challenge\":\"nonce\",\"maxAttempts\":1}", BiometricActivityType.SIGN);
+        BiometricPrompt prompt = BiometricPrompt.getShowing();
+        assertEquals(Authenticators.BIOMETRIC_STRONG, prompt.getPromptInfo().getAllowedAuthenticators());
+
+        prompt.fail();
+        mDevice.idle();
+
+        host.assertError(PluginError.BIOMETRIC_LOCKED_OUT);
+        assertTrue(host.keyguardLaunches.isEmpty());
+    }
+
+    @Test
+    public void reportsAKeyInvalidatedByANewEnrollment() {
+        authenticate("{\"secret\":\"s3cr3t\",\"invalidateOnEnrollment\":true}", BiometricActivityType.REGISTER_SECRET);
+        FakeAndroidKeyStore.enrollNewBiometric(SecretVault.get(mDevice.context).keyAlias(SecretVault.DEFAULT_SLOT));
+
+        RecordingHost host = start("{}", BiometricActivityType.LOAD_SECRET);
+
+        host.assertError(PluginError.BIOMETRIC_NO_SECRET_FOUND);
+        assertNull(BiometricPrompt.getShowing());
+    }
+
+    @Test
+    public void rotatesTheVaultKeyAndFinishesOnTheUiThread() {
+        authenticate("{\"secret\":\"abc\",\"slot\":\"token\",\"keepUnlockedMs\":60000}",
+                BiometricActivityType.REGISTER_SECRET);
+        SecretVault vault = SecretVault.get(mDevice.context);
+        String previousAlias = vault.getVaultKeyAlias();
+
+        RecordingHost rotate = start("{}", BiometricActivityType.ROTATE_VAULT_KEY);
+        BiometricPrompt.getShowing().succeed();
+        mDevice.runUntil("the rotation", () -> rotate.results > 0);
+
+        rotate.assertSucceeded();
+        assertTrue(rotate.onMainThread);
+        assertNotEquals(previousAlias, vault.getVaultKeyAlias());
+        assertFalse(FakeAndroidKeyStore.containsAlias(previousAlias));
+
+        RecordingHost load = authenticate("{\"slots\":[\"token\"]}", BiometricActivityType.LOAD_SECRET);
+        assertEquals("abc", SecretRegistry.decode(SecretRegistry.take(load.requestId).get("token")));
+    }
+
+    @Test
+    public void cancelReportsNothing() {
+        RecordingHost host = start("{\"secret\":\"s3cr3t\"}", BiometricActivityType.REGISTER_SECRET);
+
+        host.controller.cancel();
+        mDevice.idleFor(2000);
+
+        assertNull(BiometricPrompt.getShowing());
+        assertEquals(0, host.results);
+    }
+
+    /**
+     * androidx.biometric rejects option combinations per API level at build and authenticate time;
+     * the shim does the same, so every prompt the controller builds has to pass.
+     */
+    @Test
+    public void buildsAValidPromptOnEveryApiLevel() {
+        int[] apiLevels = {Build.VERSION_CODES.P, Build.VERSION_CODES.Q, Build.VERSION_CODES.R,
+                Build.VERSION_CODES.TIRAMISU};
+        for (int apiLevel : apiLevels) {
+            Build.VERSION.SDK_INT = apiLevel;
+            for (boolean disableBackup : new boolean[]{false, true}) {
+                for (BiometricActivityType type : new BiometricActivityType[]{
+                        BiometricActivityType.JUST_AUTHENTICATE, BiometricActivityType.REGISTER_SECRET}) {
+                    String what = "API " + apiLevel + " " + type + " disableBackup=" + disableBackup;
+                    RecordingHost host = start("{\"secret\":\"s3cr3t\",\"disableBackup\":" + disableBackup + "}", type);
+                    BiometricPrompt prompt = BiometricPrompt.getShowing();
+                    assertEquals(what + " " + host.errorCode + " " + host.errorMessage, 0, host.results);
+                    assertNotNull(what, prompt);
+
+                    boolean credentialInPrompt = type == BiometricActivityType.JUST_AUTHENTICATE && !disableBackup
+                            && apiLevel >= Build.VERSION_CODES.Q;
+                    assertEquals(what, credentialInPrompt, prompt.getPromptInfo().getNegativeButtonText() == null);
+                    if (type == BiometricActivityType.JUST_AUTHENTICATE && !disableBackup
+                            && apiLevel < Build.VERSION_CODES.Q) {
+                        assertEquals(what, "Use backup", prompt.getPromptInfo().getNegativeButtonText());
+                    }
+
+                    host.controller.cancel();
+                    mDevice.idle();
+                }
+            }
+        }
+    }
+
+    private PromptInfo promptInfo(String options, BiometricActivityType type) {
+        PromptInfo.Builder builder = new PromptInfo.Builder(FakeContext.APPLICATION_LABEL);
+        builder.parseArgs(new Args(new JSONArray("[" + options + "]")), type);
+        builder.setStrongBiometricsAvailable(true);
+        builder.setRequestId(mNextRequestId++);
+        return builder.build();
+    }
+
+    private RecordingHost start(String options, BiometricActivityType type) {
+        PromptInfo promptInfo = promptInfo(options, type);
+        RecordingHost host = new RecordingHost(mActivity, promptInfo.getRequestId());
+        host.controller = new BiometricPromptController(host, promptInfo);
+        host.controller.start();
+        return host;
+    }
+
+    /**
+     * Starts the prompt and passes it with the first try.
+     */
+    private RecordingHost authenticate(String options, BiometricActivityType type) {
+        RecordingHost host = start(options, type);
+        BiometricPrompt.getShowing().succeed();
+        mDevice.runUntil(type + " result", () -> host.results > 0);
+        host.assertSucceeded();
+        return host;
+    }
+
+    private static final class RecordingHost implements BiometricPromptController.Host {
+        final FragmentActivity activity;
+        final int requestId;
+        final List<Intent> keyguardLaunches = new ArrayList<>();
+        BiometricPromptController controller;
+        int results;
+        boolean onMainThread;
+        Intent success;
+        int errorCode;
+        String errorMessage;
+
+        RecordingHost(FragmentActivity activity, int requestId) {
+            this.activity = activity;
+            this.requestId = requestId;
+        }
+
+        @Override
+        public FragmentActivity getActivity() {
+            return activity;
+        }
+
+        @Override
+        public void startActivityForResult(Intent intent, int requestCode) {
+            assertEquals(BiometricPromptController.REQUEST_CODE_CONFIRM_DEVICE_CREDENTIALS, requestCode);
+            keyguardLaunches.add(intent);
+        }
+
+        @Override
+        public void onSuccess(Intent result) {
+            record();
+            success = result;
+        }
+
+        @Override
+        public void onError(int code, String message) {
+            record();
+            errorCode = code;
+            errorMessage = message;
+        }
+
+        private void record() {
+            results++;
+            onMainThread = Looper.getMainLooper().isCurrentThread();
+        }
+
+        void assertSucceeded() {
+            assertEquals("error " + errorCode + " " + errorMessage, 0, errorCode);
+            assertEquals(1, results);
+        }
+
+        void assertError(PluginError error) {
+            assertEquals(1, results);
+            assertEquals(error.getValue(), errorCode);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package de.niklasmerz.cordova.biometric;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ChunkedStreamTest {
+
+    // Magic, version and nonce prefix
+    private static final int HEADER_LENGTH = 4 + 1 + 8;
+    // Final flag and length in front of each chunk
+    private static final int CHUNK_HEADER_LENGTH = 1 + 4;
+    private static final int TAG_LENGTH = 16;
+
+    private final byte[] mKey = new byte[32];
+
+    public ChunkedStreamTest() {
+        new Random(1).nextBytes(mKey);
+    }
+
+    private byte[] encrypt(byte[] plaintext) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedStream.encrypt(new ByteArrayInputStream(plaintext), out, mKey, new SecureRandom());
+        return out.toByteArray();
+    }
+
+    private byte[] decrypt(byte[] ciphertext) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedStream.decrypt(new ByteArrayInputStream(ciphertext), out, mKey);
+        return out.toByteArray();
+    }
+
+    private static byte[] plaintext(int length) {
+        byte[] plaintext = new byte[length];
+        new Random(length).nextBytes(plaintext);
+        return plaintext;
+    }
+
+    @Test
+    public void roundTripsAroundChunkBoundaries() throws Exception {
+        int chunk = ChunkedStream.CHUNK_SIZE;
+        for (int length : new int[]{0, 1, chunk - 1, chunk, chunk + 1, 3 * chunk + 17}) {
+            byte[] plaintext = plaintext(length);
+            assertArrayEquals("length " + length, plaintext, decrypt(encrypt(plaintext)));
+        }
+    }
+
+    @Test
+    public void writesOneChunkPerChunkSize() throws Exception {
+        int chunk = ChunkedStream.CHUNK_SIZE;
+
+        assertEquals(HEADER_LENGTH + CHUNK_HEADER_LENGTH + TAG_LENGTH, encrypt(new byte[0]).length);
+        assertEquals(HEADER_LENGTH + CHUNK_HEADER_LENGTH + TAG_LENGTH + chunk, encrypt(new byte[chunk]).length);
+        assertEquals(HEADER_LENGTH + 2 * (CHUNK_HEADER_LENGTH + TAG_LENGTH) + chunk + 1,
+                encrypt(new byte[chunk + 1]).length);
+    }
+
+    @Test
+    public void rejectsModifiedChunk() throws Exception {
+        byte[] ciphertext = encrypt(plaintext(1000));
+        ciphertext[HEADER_LENGTH + CHUNK_HEADER_LENGTH + 10] ^= 1;
+
+        try {
+            decrypt(ciphertext);
+            fail();
+        } catch (GeneralSecurityException expected) {
+        }
+    }
+
+    @Test
+    public void rejectsStreamCutAtChunkBoundary() throws Exception {
+        int chunk = ChunkedStream.CHUNK_SIZE;
+        byte[] ciphertext = encrypt(plaintext(2 * chunk));
+        byte[] firstChunkOnly = Arrays.copyOf(ciphertext, HEADER_LENGTH + CHUNK_HEADER_LENGTH + TAG_LENGTH + chunk);
+
+        try {
+            decrypt(firstChunkOnly);
+            fail();
+        } catch (IOException e) {
+            assertEquals("Encrypted stream is truncated", e.getMessage());
+        }
+    }
+
+    @Test
+    public void rejectsForgedFinalFlag() throws Exception {
+        int chunk = ChunkedStream.CHUNK_SIZE;
+        byte[] ciphertext = encrypt(plaintext(2 * chunk));
+        byte[] firstChunkOnly = Arrays.copyOf(ciphertext, HEADER_LENGTH + CHUNK_HEADER_LENGTH + TAG_LENGTH + chunk);
+        firstChunkOnly[HEADER_LENGTH] = 1;
+
+        try {
+            decrypt(firstChunkOnly);
+            fail();
+        } catch (GeneralSecurityException expected) {
+        }
+    }
+
+    @Test
+    public void rejectsSwappedChunks() throws Exception {
+        int chunk = ChunkedStream.CHUNK_SIZE;
+        int chunkRecord = CHUNK_HEADER_LENGTH + TAG_LENGTH + chunk;
+        byte[] ciphertext = encrypt(plaintext(3 * chunk));
+        byte[] swapped = ciphertext.clone();
+        System.arraycopy(ciphertext, HEADER_LENGTH, swapped, HEADER_LENGTH + chunkRecord, chunkRecord);
+        System.arraycopy(ciphertext, HEADER_LENGTH + chunkRecord, swapped, HEADER_LENGTH, chunkRecord);
+
+        try {
+            decrypt(swapped);
+            fail();
+        } catch (GeneralSecurityException expected) {
+        }
+    }
+
+    @Test
+    public void rejectsDataAfterFinalChunk() throws Exception {
+        byte[] ciphertext = encrypt(plaintext(1000));
+        byte[] extended = Arrays.copyOf(ciphertext, ciphertext.length + 1);
+
+        try {
+            decrypt(extended);
+            fail();
+        } catch (IOException e) {
+            assertEquals("Trailing data after encrypted stream", e.getMessage());
+        }
+    }
+
+    @Test
+    public void rejectsOtherFormats() throws Exception {
+        try {
+            decrypt(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+            fail();
+        } catch (IOException e) {
+            assertEquals("Not an encrypted stream", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package de.niklasmerz.cordova.biometric;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CryptographyManagerImplTest {
+
+    private static final String KEY = "test_key";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestDevice mDevice;
+    private CryptographyManagerImpl mCrypto;
+
+    @Before
+    public void setUp() {
+        mDevice = TestDevice.create(folder.getRoot());
+        mCrypto = new CryptographyManagerImpl();
+    }
+
+    @Test
+    public void generatesKeyOnceAndResolvesItFromCacheAfterwards() throws CryptoException {
+        mCrypto.getInitializedCipherForEncryption(KEY, false, mDevice.context);
+        assertEquals(1, FakeAndroidKeyStore.getGeneratedKeys());
+        int calls = FakeAndroidKeyStore.getKeyStoreCalls();
+
+        mCrypto.getInitializedCipherForEncryption(KEY, false, mDevice.context);
+        new CryptographyManagerImpl().getInitializedCipherForEncryption(KEY, false, mDevice.context);
+
+        assertEquals(1, FakeAndroidKeyStore.getGeneratedKeys());
+        assertEquals(calls, FakeAndroidKeyStore.getKeyStoreCalls());
+    }
+
+    @Test
+    public void passesEnrollmentInvalidationToTheKey() throws CryptoException {
+        mCrypto.provisionKey("invalidated", true, mDevice.context);
+        mCrypto.provisionKey("kept", false, mDevice.context);
+
+        assertTrue(FakeAndroidKeyStore.isInvalidatedByBiometricEnrollment("invalidated"));
+        assertFalse(FakeAndroidKeyStore.isInvalidatedByBiometricEnrollment("kept"));
+    }
+
+    @Test
+    public void encryptsWithKeystoreCipherAndDecryptsWithItsIv() throws CryptoException {
+        Cipher encrypt = mCrypto.getInitializedCipherForEncryption(KEY, false, mDevice.context);
+        EncryptedData data = mCrypto.encryptData("s3cr3t", encrypt);
+
+        Cipher decrypt = mCrypto.getInitializedCipherForDecryption(KEY, data.getInitializationVector(),
+                mDevice.context);
+
+        assertEquals("s3cr3t", new String(mCrypto.decryptData(data.getCiphertext(), decrypt),
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void unwrapsTheDataKeyItWrapped() throws CryptoException {
+        byte[] dataKey = mCrypto.generateDataKey();
+        EncryptedData wrapped = mCrypto.wrapDataKey(dataKey,
+                mCrypto.getInitializedCipherForEncryption(KEY, false, mDevice.context));
+
+        byte[] unwrapped = mCrypto.unwrapDataKey(wrapped,
+                mCrypto.getInitializedCipherForDecryption(KEY, wrapped.getInitializationVector(), mDevice.context));
+
+        assertEquals(32, dataKey.length);
+        assertArrayEquals(dataKey, unwrapped);
+    }
+
+    @Test
+    public void roundTripsRecordsWithTheDataKey() throws CryptoException {
+        byte[] dataKey = mCrypto.generateDataKey();
+        String[] plaintexts = {"first", "", "\u00fcml\u00e4ut"};
+
+        EncryptedData[] records = mCrypto.encryptData(plaintexts, dataKey);
+
+        assertArrayEquals(plaintexts, mCrypto.decryptData(records, dataKey));
+        assertFalse(java.util.Arrays.equals(records[0].getInitializationVector(),
+                records[1].getInitializationVector()));
+    }
+
+    @Test
+    public void decryptsNamedSlotsWithTheDataKey() throws CryptoException {
+        byte[] dataKey = mCrypto.generateDataKey();
+        Map<String, EncryptedData> entries = new LinkedHashMap<>();
+        entries.put("token", mCrypto.encryptData("abc", dataKey));
+        entries.put("pin", mCrypto.encryptData("1234", dataKey));
+
+        Map<String, byte[]> plaintexts = mCrypto.decryptData(entries, dataKey);
+
+        assertEquals("abc", new String(plaintexts.get("token"), StandardCharsets.UTF_8));
+        assertEquals("1234", new String(plaintexts.get("pin"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void rejectsTamperedRecords() throws CryptoException {
+        byte[] dataKey = mCrypto.generateDataKey();
+        EncryptedData record = mCrypto.encryptData("s3cr3t", dataKey);
+        record.getCiphertext()[0] ^= 1;
+
+        try {
+            mCrypto.decryptData(new EncryptedData[]{record}, dataKey);
+            fail("Tampered record decrypted");
+        } catch (CryptoException e) {
+            assertEquals(PluginError.BIOMETRIC_UNKNOWN_ERROR, e.getError());
+        }
+    }
+
+    @Test
+    public void streamsWithTheDataKey() throws CryptoException {
+        byte[] dataKey = mCrypto.generateDataKey();
+        byte[] plaintext = new byte[ChunkedStream.CHUNK_SIZE * 2 + 17];
+        for (int i = 0; i < plaintext.length; i++) {
+            plaintext[i] = (byte) (i * 31);
+        }
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+
+        mCrypto.encryptStream(new ByteArrayInputStream(plaintext), encrypted, dataKey);
+        mCrypto.decryptStream(new ByteArrayInputStream(encrypted.toByteArray()), decrypted, dataKey);
+
+        assertArrayEquals(plaintext, decrypted.toByteArray());
+    }
+
+    @Test
+    public void replacesAnInvalidatedKeyWhenEncrypting() throws CryptoException {
+        mCrypto.getInitializedCipherForEncryption(KEY, true, mDevice.context);
+        assertTrue(FakeAndroidKeyStore.enrollNewBiometric(KEY));
+
+        Cipher cipher = mCrypto.getInitializedCipherForEncryption(KEY, true, mDevice.context);
+
+        assertEquals(2, FakeAndroidKeyStore.getGeneratedKeys());
+        mCrypto.encryptData("after enrollment", cipher);
+    }
+
+    @Test
+    public void removesAnInvalidatedKeyWhenDecrypting() throws CryptoException {
+        EncryptedData data = mCrypto.encryptData("s3cr3t",
+                mCrypto.getInitializedCipherForEncryption(KEY, true, mDevice.context));
+        FakeAndroidKeyStore.enrollNewBiometric(KEY);
+
+        try {
+            mCrypto.getInitializedCipherForDecryption(KEY, data.getInitializationVector(), mDevice.context);
+            fail("Invalidated key initialized a cipher");
+        } catch (KeyInvalidatedException e) {
+            assertEquals(PluginError.BIOMETRIC_NO_SECRET_FOUND, e.getError());
+        }
+        assertFalse(FakeAndroidKeyStore.containsAlias(KEY));
+    }
+
+    @Test
+    public void reportsKeyUsabilityWithoutCreatingKeys() throws CryptoException {
+        byte[] iv = new byte[12];
+        assertFalse(mCrypto.isKeyUsable(KEY, iv));
+        assertEquals(0, FakeAndroidKeyStore.getGeneratedKeys());
+
+        EncryptedData data = mCrypto.encryptData("s3cr3t",
+                mCrypto.getInitializedCipherForEncryption(KEY, true, mDevice.context));
+        assertTrue(mCrypto.isKeyUsable(KEY, data.getInitializationVector()));
+
+        FakeAndroidKeyStore.enrollNewBiometric(KEY);
+        assertFalse(mCrypto.isKeyUsable(KEY, data.getInitializationVector()));
+        assertFalse(FakeAndroidKeyStore.containsAlias(KEY));
+    }
+
+    @Test
+    public void deletesKeysAndForgetsTheCachedHandle() throws CryptoException {
+        mCrypto.provisionKey(KEY, false, mDevice.context);
+
+        mCrypto.deleteKey(KEY);
+        mCrypto.getInitializedCipherForEncryption(KEY, false, mDevice.context);
+
+        assertEquals(2, FakeAndroidKeyStore.getGeneratedKeys());
+    }
+
+    @Test
+    public void signsWithTheSigningKey() throws Exception {
+        PublicKey publicKey = mCrypto.getOrCreateSigningKey(SecretVault.SIGNING_KEY, false);
+        assertEquals(publicKey, mCrypto.getOrCreateSigningKey(SecretVault.SIGNING_KEY, false));
+        assertEquals(1, FakeAndroidKeyStore.getGeneratedKeys());
+        byte[] challenge = "challenge".getBytes(StandardCharsets.UTF_8);
+
+        byte[] signature = mCrypto.sign(challenge, mCrypto.getInitializedSignature(SecretVault.SIGNING_KEY));
+
+        Signature verifier = Signature.getInstance("SHA256withECDSA");
+        verifier.initVerify(publicKey);
+        verifier.update(challenge);
+        assertTrue(verifier.verify(signature));
+    }
+
+    @Test
+    public void signsTheDigestsOfAllPayloads() throws Exception {
+        PublicKey publicKey = mCrypto.getOrCreateSigningKey(SecretVault.SIGNING_KEY, false);
+        byte[][] payloads = {"a".getBytes(StandardCharsets.UTF_8), "b".getBytes(StandardCharsets.UTF_8)};
+
+        byte[] signature = mCrypto.signAll(payloads, mCrypto.getInitializedSignature(SecretVault.SIGNING_KEY));
+
+        Signature verifier = Signature.getInstance("SHA256withECDSA");
+        verifier.initVerify(publicKey);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (byte[] payload : payloads) {
+            verifier.update(digest.digest(payload));
+        }
+        assertTrue(verifier.verify(signature));
+    }
+
+    @Test
+    public void failsToSignWithoutASigningKey() {
+        try {
+            mCrypto.getInitializedSignature(SecretVault.SIGNING_KEY);
+            fail("Signature initialized without a key");
+        } catch (CryptoException e) {
+            assertEquals(PluginError.BIOMETRIC_NO_SECRET_FOUND, e.getError());
+        }
+    }
+
+    @Test
+    public void generatesInStrongBoxWhenPreferredAndAvailable() throws CryptoException {
+        new CryptographyManagerImpl(true).provisionKey(KEY, false, mDevice.context);
+
+        assertTrue(FakeAndroidKeyStore.isStrongBoxBacked(KEY));
+        assertEquals(KeyBacking.STRONG_BOX, mCrypto.getKeyBacking(KEY));
+    }
+
+    @Test
+    public void fallsBackToTeeWithoutStrongBox() throws CryptoException {
+        FakeAndroidKeyStore.setStrongBoxAvailable(false);
+
+        new CryptographyManagerImpl(true).provisionKey(KEY, false, mDevice.context);
+        new CryptographyManagerImpl(true).getOrCreateSigningKey(SecretVault.SIGNING_KEY, false);
+
+        assertEquals(KeyBacking.TEE, mCrypto.getKeyBacking(KEY));
+        assertEquals(KeyBacking.TEE, mCrypto.getKeyBacking(SecretVault.SIGNING_KEY));
+        assertNull(mCrypto.getKeyBacking("missing"));
+    }
+}
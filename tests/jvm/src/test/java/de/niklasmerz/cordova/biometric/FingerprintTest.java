@@ -0,0 +1,272 @@
+package de.niklasmerz.cordova.biometric;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+
+import androidx.biometric.BiometricManager;
+import androidx.biometric.BiometricPrompt;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestDevice mDevice;
+    private FakeCordova mCordova;
+    private RecordingWebView mWebView;
+    private Fingerprint mPlugin;
+
+    @Before
+    public void setUp() {
+        mDevice = TestDevice.create(folder.getRoot());
+        mCordova = new FakeCordova(mDevice.context);
+        mWebView = new RecordingWebView();
+        mPlugin = new Fingerprint();
+        mPlugin.initialize(mCordova, mWebView);
+    }
+
+    @After
+    public void tearDown() {
+        mCordova.shutdown();
+    }
+
+    @Test
+    public void reportsBiometricAvailability() {
+        CallbackContext call = execute("isAvailable", "[]");
+
+        assertEquals("biometric", success(call).getStrMessage());
+    }
+
+    @Test
+    public void reportsMissingEnrollment() {
+        BiometricManager.setStatus(BiometricManager.Authenticators.BIOMETRIC_WEAK,
+                BiometricManager.BIOMETRIC_ERROR_NONE_ENROLLED);
+
+        CallbackContext call = execute("isAvailable", "[]");
+
+        assertEquals(PluginError.BIOMETRIC_NOT_ENROLLED.getValue(), error(call).getInt("code"));
+    }
+
+    @Test
+    public void rejectsMistypedOptionsBeforePrompting() {
+        CallbackContext call = execute("authenticate", "[{\"title\":5}]");
+
+        JSONObject error = error(call);
+        assertEquals(PluginError.BIOMETRIC_ARGS_PARSING_FAILED.getValue(), error.getInt("code"));
+        assertEquals("Option 'title' must be a string", error.getString("message"));
+        assertEquals(0, BiometricPrompt.getAuthenticateCalls());
+    }
+
+    @Test
+    public void leavesUnknownActionsToCordova() {
+        assertFalse(mPlugin.execute("unknown", new JSONArray(), mWebView.newCallback()));
+    }
+
+    @Test
+    public void registersAndLoadsASecretInProcess() {
+        CallbackContext register = execute("registerBiometricSecret",
+                "[{\"secret\":\"s3cr3t\",\"inProcessPrompt\":true}]");
+        BiometricPrompt.getShowing().succeed();
+        assertEquals("biometric_success", success(register).getStrMessage());
+
+        CallbackContext load = execute("loadBiometricSecret", "[{\"inProcessPrompt\":true}]");
+        BiometricPrompt.getShowing().succeed();
+        assertEquals("s3cr3t", success(load).getStrMessage());
+
+        assertTrue(mCordova.getLaunches().isEmpty());
+    }
+
+    @Test
+    public void passesOnlyTheRequestIdToBiometricActivity() {
+        CallbackContext register = execute("registerBiometricSecret", "[{\"secret\":\"s3cr3t\"}]");
+        FakeCordova.Launch launch = mCordova.takeLaunch();
+        assertSame(BiometricActivity.class, launch.intent.getComponentClass());
+        assertEquals(1, launch.intent.getExtras().size());
+        assertTrue(launch.intent.hasExtra(PromptInfo.REQUEST_ID_EXTRA));
+
+        BiometricActivity activity = createActivity(launch, null);
+        assertEquals(FakeContext.BIOMETRIC_LAYOUT_ID, activity.getContentView());
+        BiometricPrompt.getShowing().succeed();
+        finish(launch, activity);
+        assertEquals("biometric_success", success(register).getStrMessage());
+
+        CallbackContext load = execute("loadBiometricSecret", "[]");
+        launch = mCordova.takeLaunch();
+        activity = createActivity(launch, null);
+        BiometricPrompt.getShowing().succeed();
+        finish(launch, activity);
+        assertEquals("s3cr3t", success(load).getStrMessage());
+    }
+
+    @Test
+    public void reportsAnErrorFromBiometricActivity() {
+        CallbackContext call = execute("authenticate", "[{\"disableBackup\":true}]");
+        FakeCordova.Launch launch = mCordova.takeLaunch();
+        BiometricActivity activity = createActivity(launch, null);
+
+        BiometricPrompt.getShowing().error(BiometricPrompt.ERROR_NEGATIVE_BUTTON, "Cancel");
+        finish(launch, activity);
+
+        assertEquals(PluginError.BIOMETRIC_DISMISSED.getValue(), error(call).getInt("code"));
+    }
+
+    @Test
+    public void continuesThePromptAfterAConfigurationChange() {
+        CallbackContext call = execute("authenticate", "[]");
+        FakeCordova.Launch launch = mCordova.takeLaunch();
+        BiometricActivity first = createActivity(launch, null);
+        first.setChangingConfigurations(true);
+        first.onDestroy();
+
+        BiometricActivity second = new TestBiometricActivity(mDevice.context);
+        second.retainViewModelsOf(first);
+        second.setIntent(launch.intent);
+        second.onCreate(new Bundle());
+        BiometricPrompt.getShowing().succeed();
+        finish(launch, second);
+
+        assertFalse(first.isFinishing());
+        assertEquals("biometric_success", success(call).getStrMessage());
+        assertEquals(1, BiometricPrompt.getAuthenticateCalls());
+    }
+
+    @Test
+    public void finishesARelaunchWithoutAPendingCall() {
+        Intent intent = new Intent(mDevice.context, BiometricActivity.class);
+        intent.putExtra(PromptInfo.REQUEST_ID_EXTRA, 99);
+        BiometricActivity activity = new TestBiometricActivity(mDevice.context);
+        activity.setIntent(intent);
+
+        activity.onCreate(null);
+
+        assertTrue(activity.isFinishing());
+        assertEquals(Activity.RESULT_CANCELED, activity.getResultCode());
+        assertEquals(0, BiometricPrompt.getAuthenticateCalls());
+    }
+
+    @Test
+    public void runsPromptsOneAtATime() {
+        CallbackContext register = execute("registerBiometricSecret",
+                "[{\"secret\":\"s3cr3t\",\"inProcessPrompt\":true}]");
+        CallbackContext authenticate = execute("authenticate", "[{\"inProcessPrompt\":true}]");
+        assertEquals(1, BiometricPrompt.getAuthenticateCalls());
+
+        BiometricPrompt.getShowing().succeed();
+        assertEquals("biometric_success", success(register).getStrMessage());
+        assertTrue(mWebView.resultsFor(authenticate).isEmpty());
+        assertEquals(2, BiometricPrompt.getAuthenticateCalls());
+
+        BiometricPrompt.getShowing().succeed();
+        assertEquals("biometric_success", success(authenticate).getStrMessage());
+    }
+
+    @Test
+    public void joinsIdenticalAuthenticateCalls() {
+        CallbackContext first = execute("authenticate", "[{\"inProcessPrompt\":true}]");
+        CallbackContext second = execute("authenticate", "[{\"inProcessPrompt\":true}]");
+
+        BiometricPrompt.getShowing().succeed();
+
+        assertEquals("biometric_success", success(first).getStrMessage());
+        assertEquals("biometric_success", success(second).getStrMessage());
+        assertEquals(1, BiometricPrompt.getAuthenticateCalls());
+    }
+
+    @Test
+    public void keepsTheDataKeyUnlockedForRecords() throws Exception {
+        CallbackContext encrypt = execute("encryptRecords",
+                "[{\"records\":[\"a\",\"b\"],\"keepUnlockedMs\":60000,\"inProcessPrompt\":true}]");
+        BiometricPrompt.getShowing().succeed();
+        JSONArray encrypted = new JSONArray(success(encrypt).getMessage());
+        assertEquals(2, encrypted.length());
+        assertNotEquals("a", encrypted.getString(0));
+
+        CallbackContext decrypt = execute("decryptRecords",
+                "[{\"records\":" + encrypted + ",\"inProcessPrompt\":true}]");
+
+        JSONArray decrypted = new JSONArray(success(decrypt).getMessage());
+        assertEquals("a", decrypted.getString(0));
+        assertEquals("b", decrypted.getString(1));
+        assertEquals(1, BiometricPrompt.getAuthenticateCalls());
+    }
+
+    @Test
+    public void recomputesCapabilitiesAfterPause() {
+        success(execute("isAvailable", "[]"));
+        success(execute("isAvailable", "[]"));
+        int calls = BiometricManager.getCanAuthenticateCalls();
+
+        mPlugin.onPause(false);
+        success(execute("isAvailable", "[]"));
+
+        assertTrue(BiometricManager.getCanAuthenticateCalls() > calls);
+    }
+
+    private CallbackContext execute(String action, String args) {
+        CallbackContext call = mWebView.newCallback();
+        assertTrue(mPlugin.execute(action, new JSONArray(args), call));
+        mDevice.idle();
+        return call;
+    }
+
+    private BiometricActivity createActivity(FakeCordova.Launch launch, Bundle savedInstanceState) {
+        BiometricActivity activity = new TestBiometricActivity(mDevice.context);
+        activity.setIntent(launch.intent);
+        activity.onCreate(savedInstanceState);
+        return activity;
+    }
+
+    /**
+     * Passes the result of the finished activity back to the plugin, as the Cordova activity does.
+     */
+    private void finish(FakeCordova.Launch launch, BiometricActivity activity) {
+        mDevice.runUntil("the activity to finish", activity::isFinishing);
+        launch.finish(activity.getResultCode(), activity.getResultData());
+    }
+
+    private PluginResult success(CallbackContext call) {
+        PluginResult result = onlyResult(call);
+        assertEquals(result.getMessage(), PluginResult.Status.OK.ordinal(), result.getStatus());
+        return result;
+    }
+
+    private JSONObject error(CallbackContext call) {
+        PluginResult result = onlyResult(call);
+        assertEquals(PluginResult.Status.ERROR.ordinal(), result.getStatus());
+        return new JSONObject(result.getMessage());
+    }
+
+    private PluginResult onlyResult(CallbackContext call) {
+        mDevice.runUntil("a result for " + call.getCallbackId(), () -> !mWebView.resultsFor(call).isEmpty());
+        List<RecordingWebView.Sent> results = mWebView.resultsFor(call);
+        assertEquals(1, results.size());
+        assertTrue("results are delivered on the main thread", results.get(0).onMainThread);
+        return results.get(0).result;
+    }
+
+    private static final class TestBiometricActivity extends BiometricActivity {
+        TestBiometricActivity(Context base) {
+            attachBaseContext(base);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package de.niklasmerz.cordova.biometric;
+
+import androidx.biometric.BiometricManager.Authenticators;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PromptInfoTest {
+
+    private static PromptInfo build(String json, BiometricActivityType type, boolean strongAvailable) {
+        PromptInfo.Builder builder = new PromptInfo.Builder("Test App");
+        builder.parseArgs(new Args(new JSONArray("[" + json + "]")), type);
+        builder.setStrongBiometricsAvailable(strongAvailable);
+        return builder.build();
+    }
+
+    @Test
+    public void defaultsToTheApplicationLabel() {
+        PromptInfo promptInfo = build("{}", BiometricActivityType.JUST_AUTHENTICATE, true);
+
+        assertEquals("Test App Biometric Sign On", promptInfo.getTitle());
+        assertEquals("Biometric Sign On", new PromptInfo.Builder(null).build().getTitle());
+        assertNull(promptInfo.getSubtitle());
+        assertEquals("Use backup", promptInfo.getFallbackButtonTitle());
+        assertEquals("Cancel", promptInfo.getCancelButtonTitle());
+        assertTrue(promptInfo.getConfirmationRequired());
+        assertEquals(5, promptInfo.getMaxAttempts());
+        assertEquals(SecretVault.DEFAULT_SLOT, promptInfo.getSlot());
+        assertFalse(promptInfo.isBatch());
+    }
+
+    @Test
+    public void readsEveryOption() {
+        PromptInfo promptInfo = build("{\"title\":\"Unlock\",\"subtitle\":\"Vault\",\"description\":\"Confirm\","
+                + "\"fallbackButtonTitle\":\"PIN\",\"cancelButtonTitle\":\"Stop\",\"confirmationRequired\":false,"
+                + "\"invalidateOnEnrollment\":true,\"secret\":\"s3cr3t\",\"slot\":\"token\",\"maxAttempts\":3,"
+                + "\"sessionTtlMs\":1000,\"keepUnlockedMs\":2000,\"inProcessPrompt\":true,\"preferStrongBox\":true}",
+                BiometricActivityType.REGISTER_SECRET, true);
+
+        assertEquals("Unlock", promptInfo.getTitle());
+        assertEquals("Vault", promptInfo.getSubtitle());
+        assertEquals("Confirm", promptInfo.getDescription());
+        assertEquals("PIN", promptInfo.getFallbackButtonTitle());
+        assertEquals("Stop", promptInfo.getCancelButtonTitle());
+        assertFalse(promptInfo.getConfirmationRequired());
+        assertTrue(promptInfo.invalidateOnEnrollment());
+        assertEquals("s3cr3t", promptInfo.getSecret());
+        assertEquals("token", promptInfo.getSlot());
+        assertEquals(3, promptInfo.getMaxAttempts());
+        assertEquals(1000, promptInfo.getSessionTtlMs());
+        assertEquals(2000, promptInfo.getKeepUnlockedMs());
+        assertTrue(promptInfo.isInProcessPrompt());
+        assertTrue(promptInfo.preferStrongBox());
+        assertEquals(BiometricActivityType.REGISTER_SECRET, promptInfo.getType());
+    }
+
+    @Test
+    public void readsBatchesOfSlotsAndChallenges() {
+        PromptInfo load = build("{\"slots\":[\"a\",\"b\"]}", BiometricActivityType.LOAD_SECRET, true);
+        PromptInfo sign = build("{\"challenges\":[\"x\",\"y\"]}", BiometricActivityType.SIGN, true);
+
+        assertTrue(load.isBatch());
+        assertArrayEquals(new String[]{"a", "b"}, load.getSlots());
+        assertArrayEquals(new String[]{"x", "y"}, sign.getChallenges());
+        assertNull(sign.getChallenge());
+    }
+
+    @Test
+    public void plainAuthenticationPrefersStrongBiometricsAndAllowsTheCredential() {
+        assertEquals(Authenticators.BIOMETRIC_STRONG | Authenticators.DEVICE_CREDENTIAL,
+                build("{}", BiometricActivityType.JUST_AUTHENTICATE, true).getAuthenticators());
+        assertEquals(Authenticators.BIOMETRIC_WEAK | Authenticators.DEVICE_CREDENTIAL,
+                build("{}", BiometricActivityType.JUST_AUTHENTICATE, false).getAuthenticators());
+        assertEquals(Authenticators.BIOMETRIC_WEAK,
+                build("{\"disableBackup\":true}", BiometricActivityType.JUST_AUTHENTICATE, false).getAuthenticators());
+    }
+
+    @Test
+    public void cryptoPromptsOnlyAllowStrongBiometrics() {
+        for (BiometricActivityType type : BiometricActivityType.values()) {
+            if (type == BiometricActivityType.JUST_AUTHENTICATE) {
+                continue;
+            }
+            PromptInfo promptInfo = build("{}", type, false);
+            assertEquals(type.name(), Authenticators.BIOMETRIC_STRONG, promptInfo.getAuthenticators());
+            assertFalse(type.name(), promptInfo.isDeviceCredentialAllowed());
+        }
+        assertTrue(build("{}", BiometricActivityType.JUST_AUTHENTICATE, true).isDeviceCredentialAllowed());
+        assertFalse(build("{\"disableBackup\":true}", BiometricActivityType.JUST_AUTHENTICATE, true)
+                .isDeviceCredentialAllowed());
+    }
+
+    @Test
+    public void isClaimedOnceByRequestId() {
+        PromptInfo.Builder builder = new PromptInfo.Builder("Test App");
+        builder.parseArgs(new Args(new JSONArray("[{\"secret\":\"s3cr3t\"}]")), BiometricActivityType.REGISTER_SECRET);
+        builder.setRequestId(42);
+        PromptInfo promptInfo = builder.build();
+
+        PromptInfo.handOver(promptInfo);
+
+        assertNull(PromptInfo.claim(41));
+        assertSame(promptInfo, PromptInfo.claim(42));
+        assertNull(PromptInfo.claim(42));
+    }
+}
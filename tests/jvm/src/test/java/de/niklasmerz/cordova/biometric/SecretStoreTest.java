@@ -0,0 +1,143 @@
+package de.niklasmerz.cordova.biometric;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class SecretStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static EncryptedData data(int ciphertextLength, int ivLength) {
+        byte[] ciphertext = new byte[ciphertextLength];
+        byte[] iv = new byte[ivLength];
+        for (int i = 0; i < ciphertext.length; i++) {
+            ciphertext[i] = (byte) i;
+        }
+        for (int i = 0; i < iv.length; i++) {
+            iv[i] = (byte) (0x80 + i);
+        }
+        return new EncryptedData(ciphertext, iv);
+    }
+
+    @Test
+    public void readsNullBeforeFirstWrite() throws IOException {
+        assertNull(new SecretStore(new File(folder.getRoot(), "secrets")).read());
+    }
+
+    @Test
+    public void roundTripsRecordsInOrder() throws IOException {
+        File file = new File(folder.getRoot(), "secrets");
+        Map<String, EncryptedData> records = new LinkedHashMap<>();
+        records.put("__default", data(48, 16));
+        records.put("vault:token", data(0, 12));
+        records.put("vault:\u00fcn\u00efcode", data(300, 12));
+
+        new SecretStore(file).write(records);
+        Map<String, EncryptedData> read = new SecretStore(file).read();
+
+        assertEquals(new ArrayList<>(records.keySet()), new ArrayList<>(read.keySet()));
+        for (Map.Entry<String, EncryptedData> record : records.entrySet()) {
+            EncryptedData expected = record.getValue();
+            EncryptedData actual = read.get(record.getKey());
+            assertArrayEquals(expected.getCiphertext(), actual.getCiphertext());
+            assertArrayEquals(expected.getInitializationVector(), actual.getInitializationVector());
+        }
+    }
+
+    @Test
+    public void laterWritesReplaceTheFile() throws IOException {
+        File file = new File(folder.getRoot(), "secrets");
+        SecretStore store = new SecretStore(file);
+        Map<String, EncryptedData> records = new LinkedHashMap<>();
+        records.put("a", data(8, 12));
+        store.writeAsync(records);
+        records.put("b", data(8, 12));
+        SecretStore.await(store.writeQueued(records));
+
+        assertEquals(2, store.read().size());
+    }
+
+    @Test
+    public void rejectsForeignFile() throws IOException {
+        File file = new File(folder.getRoot(), "secrets");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(0x12345678);
+        }
+
+        try {
+            new SecretStore(file).read();
+            fail();
+        } catch (IOException e) {
+            assertEquals("Not a secret store file", e.getMessage());
+        }
+    }
+
+    @Test
+    public void quarantineKeepsUnreadableFile() throws IOException {
+        File file = new File(folder.getRoot(), "secrets");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(0x12345678);
+        }
+        SecretStore store = new SecretStore(file);
+        Map<String, EncryptedData> records = new LinkedHashMap<>();
+        records.put("a", data(8, 12));
+
+        File moved = store.quarantine();
+        store.write(records);
+
+        assertEquals(4, moved.length());
+        assertEquals(1, store.read().size());
+    }
+
+    @Test
+    public void refusesWritesIfQuarantineFails() throws IOException {
+        File missing = new File(folder.getRoot(), "missing");
+        SecretStore store = new SecretStore(missing);
+
+        try {
+            store.quarantine();
+            fail();
+        } catch (IOException expected) {
+        }
+        try {
+            store.write(new LinkedHashMap<String, EncryptedData>());
+            fail();
+        } catch (IOException expected) {
+        }
+        assertNull(store.read());
+    }
+
+    @Test
+    public void rejectsCorruptLengthField() throws IOException {
+        File file = new File(folder.getRoot(), "secrets");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(0x4241494F);
+            out.writeByte(1);
+            out.writeInt(1);
+            out.writeUTF("a");
+            out.writeInt(-1);
+        }
+
+        try {
+            new SecretStore(file).read();
+            fail();
+        } catch (IOException e) {
+            assertEquals("Corrupt secret store record", e.getMessage());
+        }
+    }
+}
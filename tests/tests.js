@@ -32,6 +32,117 @@ exports.defineAutoTests = function() {
         done();
       }, {allowBackup: true});
     });
+
+    it("isAvailable (reportKeyBacking) should return an result or error in callback", function (done) {
+      window.Fingerprint.isAvailable( function (result) {
+        expect(result).toBeDefined();
+        done();
+      }, function(result) {
+        expect(result).toBeDefined();
+        done();
+      }, {reportKeyBacking: true});
+    }, 15000);
+  });
+
+  describe("prepare", function () {
+    it("prepare should be defined", function () {
+      expect(window.Fingerprint.prepare).toBeDefined();
+    });
+
+    it("prepare should return an result or error in callback", function (done) {
+      window.Fingerprint.prepare({action: "authenticate"}, function (result) {
+        expect(result).toBeDefined();
+        done();
+      }, function(result) {
+        expect(result).toBeDefined();
+        done();
+      });
+    });
+  });
+
+  describe("encryptFile", function () {
+    it("encryptFile should be defined", function () {
+      expect(window.Fingerprint.encryptFile).toBeDefined();
+    });
+
+    it("decryptFile should be defined", function () {
+      expect(window.Fingerprint.decryptFile).toBeDefined();
+    });
+  });
+
+  describe("encryptRecords", function () {
+    it("encryptRecords should be defined", function () {
+      expect(window.Fingerprint.encryptRecords).toBeDefined();
+    });
+
+    it("lockDataKey should return a result", function (done) {
+      window.Fingerprint.lockDataKey(function (result) {
+        expect(result).toBe("locked");
+        done();
+      }, function(error) {
+        fail(error);
+        done();
+      });
+    });
+  });
+
+  describe("signChallenge", function () {
+    it("createSigningKey should be defined", function () {
+      expect(window.Fingerprint.createSigningKey).toBeDefined();
+    });
+
+    it("signChallenge should be defined", function () {
+      expect(window.Fingerprint.signChallenge).toBeDefined();
+    });
+  });
+
+  describe("rotateKeys", function () {
+    it("provisionKeys should be defined", function () {
+      expect(window.Fingerprint.provisionKeys).toBeDefined();
+    });
+
+    it("rotateKeys should be defined", function () {
+      expect(window.Fingerprint.rotateKeys).toBeDefined();
+    });
+  });
+
+  describe("checkSecrets", function () {
+    it("checkSecrets should be defined", function () {
+      expect(window.Fingerprint.checkSecrets).toBeDefined();
+    });
+
+    it("setEventListener should be defined", function () {
+      expect(window.Fingerprint.setEventListener).toBeDefined();
+    });
+
+    it("checkSecrets should return an array on Android", function (done) {
+      if (cordova.platformId !== "android") {
+        pending("Android only");
+      }
+      window.Fingerprint.checkSecrets(function (slots) {
+        expect(Array.isArray(slots)).toBe(true);
+        done();
+      }, function (error) {
+        fail(error);
+        done();
+      });
+    });
+  });
+
+  describe("getMetrics", function () {
+    it("getMetrics should be defined", function () {
+      expect(window.Fingerprint.getMetrics).toBeDefined();
+    });
+
+    it("getMetrics should return an array", function (done) {
+      window.Fingerprint.getMetrics(function (events) {
+        expect(Array.isArray(events)).toBe(true);
+        done();
+      }, function(error) {
+        fail(error);
+        done();
+      });
+    });
   });
 
   describe("show", function () {
@@ -39,6 +150,111 @@ exports.defineAutoTests = function() {
       expect(window.Fingerprint.show).toBeDefined();
     });
   });
+
+  // Calls that are answered natively without showing a prompt, so they run unattended
+  describe("Android argument validation", function () {
+    beforeEach(function () {
+      if (cordova.platformId !== "android") {
+        pending("Android only");
+      }
+    });
+
+    function expectError(code, done) {
+      return [function (result) {
+        fail("Expected error " + code + " but got " + JSON.stringify(result));
+        done();
+      }, function (error) {
+        expect(error.code).toBe(code);
+        done();
+      }];
+    }
+
+    it("encryptRecords without records should fail", function (done) {
+      var callbacks = expectError(window.Fingerprint.BIOMETRIC_ARGS_PARSING_FAILED, done);
+      window.Fingerprint.encryptRecords({}, callbacks[0], callbacks[1]);
+    });
+
+    it("encryptFile without paths should fail", function (done) {
+      var callbacks = expectError(window.Fingerprint.BIOMETRIC_ARGS_PARSING_FAILED, done);
+      window.Fingerprint.encryptFile({}, callbacks[0], callbacks[1]);
+    });
+
+    it("signChallenge without challenge should fail", function (done) {
+      var callbacks = expectError(window.Fingerprint.BIOMETRIC_ARGS_PARSING_FAILED, done);
+      window.Fingerprint.signChallenge({challenges: []}, callbacks[0], callbacks[1]);
+    });
+
+    it("prepare with an unknown action should fail", function (done) {
+      var callbacks = expectError(window.Fingerprint.BIOMETRIC_ARGS_PARSING_FAILED, done);
+      window.Fingerprint.prepare({action: "unknown"}, callbacks[0], callbacks[1]);
+    });
+
+    it("rotateKeys should fail while the data key is locked", function (done) {
+      var callbacks = expectError(window.Fingerprint.BIOMETRIC_DATA_KEY_LOCKED, done);
+      window.Fingerprint.lockDataKey(function () {
+        window.Fingerprint.rotateKeys({}, callbacks[0], callbacks[1]);
+      }, function (error) {
+        fail(error);
+        done();
+      });
+    });
+
+    it("show with an unknown option should fail before prompting", function (done) {
+      var callbacks = expectError(window.Fingerprint.BIOMETRIC_ARGS_PARSING_FAILED, done);
+      window.Fingerprint.show({titel: "Typo"}, callbacks[0], callbacks[1]);
+    });
+
+    it("show with a mistyped option should fail before prompting", function (done) {
+      var callbacks = expectError(window.Fingerprint.BIOMETRIC_ARGS_PARSING_FAILED, done);
+      window.Fingerprint.show({maxAttempts: "3"}, callbacks[0], callbacks[1]);
+    });
+  });
+
+  // Rough latency of the plugin itself, read from the native timing metrics. Only logged, device
+  // and emulator speeds vary too much for a fixed limit
+  describe("Android bridge latency", function () {
+    var CALLS = 20;
+
+    beforeEach(function () {
+      if (cordova.platformId !== "android") {
+        pending("Android only");
+      }
+    });
+
+    function median(values) {
+      var sorted = values.slice().sort(function (a, b) { return a - b; });
+      return sorted[Math.floor(sorted.length / 2)];
+    }
+
+    it("isAvailable should be answered quickly", function (done) {
+      window.Fingerprint.getMetrics(function () {
+        var remaining = CALLS;
+        var next = function () {
+          if (remaining-- === 0) {
+            window.Fingerprint.getMetrics(function (events) {
+              var durations = events.filter(function (e) {
+                return e.phase === "resultDelivered" && typeof e.sinceStart === "number";
+              }).map(function (e) {
+                return e.sinceStart;
+              });
+              expect(durations.length).toBe(CALLS);
+              console.log("isAvailable median native time: " + median(durations) + " ms");
+              done();
+            }, function (error) {
+              fail(error);
+              done();
+            }, {clear: true});
+            return;
+          }
+          window.Fingerprint.isAvailable(next, next);
+        };
+        next();
+      }, function (error) {
+        fail(error);
+        done();
+      }, {clear: true});
+    }, 15000);
+  });
 };
 
 exports.defineManualTests = function (contentEl, createActionButton) {
@@ -85,6 +301,24 @@ exports.defineManualTests = function (contentEl, createActionButton) {
     }
   });
 
+  createActionButton("show (log progress events)", function () {
+    var events = [];
+    Fingerprint.setEventListener(function (event) {
+      events.push(event.type + (event.attempt ? " " + event.attempt + "/" + event.limit : ""));
+    });
+    Fingerprint.show({
+      disableBackup: false
+    }, successCallback, errorCallback);
+
+    function successCallback() {
+      alert("Authentication successful, events: " + events.join(", "));
+    }
+
+    function errorCallback(err) {
+      alert("Authentication invalid " + JSON.stringify(err) + ", events: " + events.join(", "));
+    }
+  });
+
   createActionButton("show-disablebackup", function () {
     Fingerprint.show({
       disableBackup: true,
@@ -129,6 +363,87 @@ exports.defineManualTests = function (contentEl, createActionButton) {
     }
   });
 
+  createActionButton("Save secret (slot)", function () {
+    Fingerprint.registerBiometricSecret({
+      secret: "slot-secret",
+      slot: "refreshToken"
+    }, successCallback, errorCallback);
+
+    function successCallback() {
+      alert("Secret saved successfully");
+    }
+
+    function errorCallback(err) {
+      alert("Error while saving secret: " + JSON.stringify(err));
+    }
+  });
+
+  createActionButton("Load secret (slot)", function () {
+    Fingerprint.loadBiometricSecret({
+      disableBackup: true,
+      slot: "refreshToken"
+    }, successCallback, errorCallback);
+
+    function successCallback(secret) {
+      alert("Secret loaded successfully: " + secret);
+    }
+
+    function errorCallback(err) {
+      alert("Error while loading secret: " + JSON.stringify(err));
+    }
+  });
+
+  createActionButton("Load secrets (batch)", function () {
+    Fingerprint.loadBiometricSecret({
+      disableBackup: true,
+      slots: ["refreshToken"]
+    }, successCallback, errorCallback);
+
+    function successCallback(secrets) {
+      alert("Secrets loaded successfully: " + JSON.stringify(secrets));
+    }
+
+    function errorCallback(err) {
+      alert("Error while loading secrets: " + JSON.stringify(err));
+    }
+  });
+
+  createActionButton("Encrypt records", function () {
+    Fingerprint.encryptRecords({
+      records: ["first record", "second record"],
+      keepUnlockedMs: 60000
+    }, function (encrypted) {
+      Fingerprint.decryptRecords({
+        records: encrypted
+      }, successCallback, errorCallback);
+    }, errorCallback);
+
+    function successCallback(records) {
+      alert("Records decrypted without second prompt: " + JSON.stringify(records));
+    }
+
+    function errorCallback(err) {
+      alert("Error while encrypting records: " + JSON.stringify(err));
+    }
+  });
+
+  createActionButton("Sign challenge", function () {
+    Fingerprint.createSigningKey({}, function (publicKey) {
+      console.log("Public key: " + publicKey);
+      Fingerprint.signChallenge({
+        challenge: "nonce-" + Date.now()
+      }, successCallback, errorCallback);
+    }, errorCallback);
+
+    function successCallback(signature) {
+      alert("Challenge signed successfully: " + signature);
+    }
+
+    function errorCallback(err) {
+      alert("Error while signing challenge: " + JSON.stringify(err));
+    }
+  });
+
   createActionButton("Load secret", function () {
     Fingerprint.loadBiometricSecret({
       disableBackup: true,
@@ -10,13 +10,92 @@ export interface FingerprintOptions {
   fallbackButtonTitle?: string;
   cancelButtonTitle?: string;
   maxAttempts?: number; // Android: default 5
+  secret?: string;
+  slot?: string;
+  slots?: string[]; // Android only
+  sessionTtlMs?: number; // Android only, default 0
+  inProcessPrompt?: boolean; // Android only, default false
+  keepUnlockedMs?: number; // Android only, default 0
+  preferStrongBox?: boolean; // Android only, default false
+  invalidateOnEnrollment?: boolean;
+}
+
+export interface PrepareOptions extends FingerprintOptions {
+  action?: 'authenticate' | 'registerBiometricSecret' | 'loadBiometricSecret' | 'encryptFile' | 'decryptFile'
+    | 'encryptRecords' | 'decryptRecords' | 'unlockDataKey' | 'rotateKeys';
+}
+
+export interface FileOptions extends FingerprintOptions {
+  inputPath: string; // path or file:// URL
+  outputPath: string; // path or file:// URL
+}
+
+export interface RecordsOptions extends FingerprintOptions {
+  records: string[];
+}
+
+export interface SigningKeyOptions {
+  invalidateOnEnrollment?: boolean;
+  preferStrongBox?: boolean;
+}
+
+export interface ProvisionOptions {
+  invalidateOnEnrollment?: boolean;
+  preferStrongBox?: boolean;
+}
+
+export type KeyBacking = 'strongBox' | 'tee' | 'software';
+
+export interface KeyBackingReport {
+  type: string;
+  strongBox: boolean;
+  keys: { secret?: KeyBacking; vault?: KeyBacking; signing?: KeyBacking };
+  latency: { tee?: { decryptMs: number; signMs: number }; strongBox?: { decryptMs: number; signMs: number } };
+}
+
+export interface SignOptions extends FingerprintOptions {
+  challenge?: string;
+  challenges?: string[]; // signed together in one prompt
+}
+
+export interface MetricsEvent {
+  requestId: number;
+  phase: string;
+  time: number; // ms since boot
+  sinceStart?: number; // ms since the call reached the plugin
+  detail?: string;
+}
+
+export interface PluginEvent {
+  type: string; // "secretsInvalidated", "promptShown", "attemptFailed", "fallbackScheduled", "keyguardOpened" or "cryptoDone"
+  time: number; // ms since boot
+  slots?: string[]; // secretsInvalidated: removed slots, "__default" for the default slot
+  requestId?: number; // progress events: the call, same id as in getMetrics
+  attempt?: number; // attemptFailed: failures so far
+  limit?: number; // attemptFailed: maxAttempts
+  detail?: string;
 }
 
 export interface FingerprintPlugin {
+  isAvailable(success: (report: KeyBackingReport) => void, error: (err: any) => void, opts: { reportKeyBacking: true; requireStrongBiometrics?: boolean }): void; // Android only
   isAvailable(success: (type: string) => void, error?: (err: any) => void, opts?: any): void;
   show(options: FingerprintOptions, success: () => void, error?: (err: any) => void): void;
   registerBiometricSecret(options: FingerprintOptions, success: () => void, error?: (err: any) => void): void;
-  loadBiometricSecret(options: FingerprintOptions, success: (secret: string) => void, error?: (err: any) => void): void;
+  loadBiometricSecret(options: FingerprintOptions, success: (secret: string | { [slot: string]: string }) => void, error?: (err: any) => void): void;
+  prepare(options: PrepareOptions, success: () => void, error?: (err: any) => void): void;
+  encryptFile(options: FileOptions, success: (outputPath: string) => void, error?: (err: any) => void): void; // Android only
+  decryptFile(options: FileOptions, success: (outputPath: string) => void, error?: (err: any) => void): void; // Android only
+  unlockDataKey(options: FingerprintOptions, success: () => void, error?: (err: any) => void): void; // Android only
+  lockDataKey(success?: () => void, error?: (err: any) => void): void; // Android only
+  encryptRecords(options: RecordsOptions, success: (records: string[]) => void, error?: (err: any) => void): void; // Android only
+  decryptRecords(options: RecordsOptions, success: (records: string[]) => void, error?: (err: any) => void): void; // Android only
+  createSigningKey(options: SigningKeyOptions, success: (publicKey: string) => void, error?: (err: any) => void): void; // Android only
+  signChallenge(options: SignOptions, success: (signature: string) => void, error?: (err: any) => void): void; // Android only
+  provisionKeys(options: ProvisionOptions, success: () => void, error?: (err: any) => void): void; // Android only
+  rotateKeys(options: FingerprintOptions, success: () => void, error?: (err: any) => void): void; // Android only
+  checkSecrets(success: (removedSlots: string[]) => void, error?: (err: any) => void): void; // Android only
+  setEventListener(listener: (event: PluginEvent) => void, error?: (err: any) => void): void; // Android only
+  getMetrics(success: (events: MetricsEvent[]) => void, error?: (err: any) => void, opts?: { clear?: boolean }): void;
 
   BIOMETRIC_UNKNOWN_ERROR: number;
   BIOMETRIC_UNAVAILABLE: number;
@@ -32,6 +111,8 @@ export interface FingerprintPlugin {
   BIOMETRIC_LOCKED_OUT: number;
   BIOMETRIC_LOCKED_OUT_PERMANENT: number;
   BIOMETRIC_NO_SECRET_FOUND: number;
+  BIOMETRIC_ARGS_PARSING_FAILED: number;
+  BIOMETRIC_DATA_KEY_LOCKED: number;
 }
 
 declare const Fingerprint: FingerprintPlugin;
@@ -33,6 +33,8 @@ Fingerprint.prototype.BIOMETRIC_SCREEN_GUARD_UNSECURED = -110;
 Fingerprint.prototype.BIOMETRIC_LOCKED_OUT = -111;
 Fingerprint.prototype.BIOMETRIC_LOCKED_OUT_PERMANENT = -112;
 Fingerprint.prototype.BIOMETRIC_NO_SECRET_FOUND = -113;
+Fingerprint.prototype.BIOMETRIC_ARGS_PARSING_FAILED = -115;
+Fingerprint.prototype.BIOMETRIC_DATA_KEY_LOCKED = -116;
 
 // Biometric types
 Fingerprint.prototype.BIOMETRIC_TYPE_FINGERPRINT = "finger";
@@ -82,4 +84,152 @@ Fingerprint.prototype.loadBiometricSecret = function (params, successCallback, e
   );
 };
 
+Fingerprint.prototype.prepare = function (params, successCallback, errorCallback) {
+  params = prepareParams(params);
+  cordova.exec(
+      successCallback,
+      errorCallback,
+      "Fingerprint",
+      "prepare",
+      [params]
+  );
+};
+
+Fingerprint.prototype.encryptFile = function (params, successCallback, errorCallback) {
+  params = prepareParams(params);
+  cordova.exec(
+      successCallback,
+      errorCallback,
+      "Fingerprint",
+      "encryptFile",
+      [params]
+  );
+};
+
+Fingerprint.prototype.decryptFile = function (params, successCallback, errorCallback) {
+  params = prepareParams(params);
+  cordova.exec(
+      successCallback,
+      errorCallback,
+      "Fingerprint",
+      "decryptFile",
+      [params]
+  );
+};
+
+Fingerprint.prototype.unlockDataKey = function (params, successCallback, errorCallback) {
+  params = prepareParams(params);
+  cordova.exec(
+      successCallback,
+      errorCallback,
+      "Fingerprint",
+      "unlockDataKey",
+      [params]
+  );
+};
+
+Fingerprint.prototype.lockDataKey = function (successCallback, errorCallback) {
+  cordova.exec(
+      successCallback,
+      errorCallback,
+      "Fingerprint",
+      "lockDataKey",
+      []
+  );
+};
+
+Fingerprint.prototype.encryptRecords = function (params, successCallback, errorCallback) {
+  params = prepareParams(params);
+  cordova.exec(
+      successCallback,
+      errorCallback,
+      "Fingerprint",
+      "encryptRecords",
+      [params]
+  );
+};
+
+Fingerprint.prototype.decryptRecords = function (params, successCallback, errorCallback) {
+  params = prepareParams(params);
+  cordova.exec(
+      successCallback,
+      errorCallback,
+      "Fingerprint",
+      "decryptRecords",
+      [params]
+  );
+};
+
+Fingerprint.prototype.createSigningKey = function (params, successCallback, errorCallback) {
+  cordova.exec(
+      successCallback,
+      errorCallback,
+      "Fingerprint",
+      "createSigningKey",
+      [params || {}]
+  );
+};
+
+Fingerprint.prototype.signChallenge = function (params, successCallback, errorCallback) {
+  params = prepareParams(params);
+  cordova.exec(
+      successCallback,
+      errorCallback,
+      "Fingerprint",
+      "signChallenge",
+      [params]
+  );
+};
+
+Fingerprint.prototype.provisionKeys = function (params, successCallback, errorCallback) {
+  cordova.exec(
+      successCallback,
+      errorCallback,
+      "Fingerprint",
+      "provisionKeys",
+      [params || {}]
+  );
+};
+
+Fingerprint.prototype.rotateKeys = function (params, successCallback, errorCallback) {
+  params = prepareParams(params);
+  cordova.exec(
+      successCallback,
+      errorCallback,
+      "Fingerprint",
+      "rotateKeys",
+      [params]
+  );
+};
+
+Fingerprint.prototype.checkSecrets = function (successCallback, errorCallback) {
+  cordova.exec(
+      successCallback,
+      errorCallback,
+      "Fingerprint",
+      "checkSecrets",
+      []
+  );
+};
+
+Fingerprint.prototype.setEventListener = function (listener, errorCallback) {
+  cordova.exec(
+      listener,
+      errorCallback,
+      "Fingerprint",
+      "setEventListener",
+      []
+  );
+};
+
+Fingerprint.prototype.getMetrics = function (successCallback, errorCallback, optionalParams) {
+  cordova.exec(
+      successCallback,
+      errorCallback,
+      "Fingerprint",
+      "getMetrics",
+      [optionalParams]
+  );
+};
+
 module.exports = new Fingerprint();